@@ -40,6 +40,20 @@ java {
     withSourcesJar()
 }
 
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+val jmhImplementation by configurations.getting {
+    extendsFrom(configurations.implementation.get())
+}
+val jmhRuntimeOnly by configurations.getting {
+    extendsFrom(configurations.runtimeOnly.get())
+}
+
 repositories {
     if((version as String).endsWith("-SNAPSHOT")) {
         maven {
@@ -60,12 +74,27 @@ dependencies {
     runtimeOnly("org.apache.logging.log4j:log4j-core:2.13.1")
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.6.2")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.6.2")
+    jmhImplementation("org.openjdk.jmh:jmh-core:1.23")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.23")
 }
 
 tasks.named<Test>("test") {
     useJUnitPlatform()
 }
 
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks, pass -PjmhArgs=... to override the defaults."
+    dependsOn("jmhClasses")
+    classpath = sourceSets["jmh"].runtimeClasspath
+    main = "org.openjdk.jmh.Main"
+    val jmhArgs: String? by project
+    args = (jmhArgs ?: "-prof gc -rf json -rff ${buildDir}/reports/jmh/results.json").split(" ")
+    doFirst {
+        file("${buildDir}/reports/jmh").mkdirs()
+    }
+}
+
 publishing {
     publications {
         create<MavenPublication>("mavenJava") {
@@ -0,0 +1,215 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.xfs.api.XfsMessage;
+import at.o2xfs.xfs.cdm.CdmExecuteCommand;
+import at.o2xfs.xfs.cdm.CdmMessage;
+import at.o2xfs.xfs.service.api.ExecuteCommand;
+import at.o2xfs.xfs.service.api.cdm.CdmService;
+import at.o2xfs.xfs.service.api.event.IntermediateListener;
+import at.o2xfs.xfs.service.std.loopback.LoopbackMessageLoop;
+import at.o2xfs.xfs.service.std.loopback.LoopbackXfsApi;
+
+/**
+ * Drives {@link EventDispatcher#windowProc(int, byte[])} with synthetic results for one request per open service.
+ * <p>
+ * Every operation submits an execute request to each of the {@code services} logical services, hands the matching
+ * messages to the window procedure and waits until every future returned. Events per second are the operation
+ * throughput multiplied by {@code services}. Run with {@code ./gradlew jmh}, which also enables the GC profiler for
+ * allocation rates.
+ * <p>
+ * {@code intermediateRoundTrip} samples a whole request, from submit to completion. The time from handing an
+ * intermediate event to the window procedure until its listener runs is reported by {@code intermediateThroughput}
+ * as the counters {@code deliveryNanos} and {@code deliveries}, whose quotient is the mean delivery latency.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+
+	@State(Scope.Thread)
+	public static class Requests {
+
+		private StdXfsFuture<?>[] futures;
+		private long[] sent;
+		private IntermediateListener[] listeners;
+		private final AtomicInteger intermediateEvents = new AtomicInteger();
+		private final LongAdder deliveryNanos = new LongAdder();
+
+		@Setup(Level.Trial)
+		public void setUp(DispatchBenchmark benchmark) {
+			futures = new StdXfsFuture<?>[benchmark.services];
+			sent = new long[benchmark.services];
+			listeners = new IntermediateListener[benchmark.services];
+			for (int i = 0; i < listeners.length; i++) {
+				int index = i;
+				listeners[i] = wfsResult -> {
+					deliveryNanos.add(System.nanoTime() - sent[index]);
+					intermediateEvents.incrementAndGet();
+				};
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Delivery {
+
+		private Requests requests;
+		private long deliveries;
+		private long deliveryNanos;
+
+		@Setup(Level.Iteration)
+		public void setUp(Requests requests) {
+			this.requests = requests;
+			requests.deliveryNanos.reset();
+			deliveries = 0L;
+			deliveryNanos = 0L;
+		}
+
+		private void delivered(int events) {
+			deliveries += events;
+			deliveryNanos = requests.deliveryNanos.sum();
+		}
+
+		public long deliveries() {
+			return deliveries;
+		}
+
+		public long deliveryNanos() {
+			return deliveryNanos;
+		}
+	}
+
+	private static final ExecuteCommand<CdmExecuteCommand> DISPENSE = new ExecuteCommand.Builder<>(
+			CdmExecuteCommand.DISPENSE).build();
+
+	private static final int EXECUTE_EVENT = (int) XfsMessage.EXECUTE_EVENT.getValue();
+	private static final int EXECUTE_COMPLETE = (int) XfsMessage.EXECUTE_COMPLETE.getValue();
+	private static final int NOTE_ERROR = (int) CdmMessage.EXEE_NOTEERROR.getValue();
+
+	@Param({ "1", "8", "64" })
+	private int services;
+
+	private LoopbackMessageLoop messageLoop;
+	private LoopbackXfsApi xfsApi;
+	private DispatchEngine engine;
+	private EventDispatcher eventDispatcher;
+	private StdXfsService[] openServices;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		messageLoop = new LoopbackMessageLoop();
+		xfsApi = new LoopbackXfsApi.Builder(messageLoop).respondToCommands(false).build();
+		engine = new DispatchEngine(xfsApi, DispatcherConfig.defaults());
+		eventDispatcher = new EventDispatcher(xfsApi, engine);
+		eventDispatcher.start();
+		messageLoop.start(eventDispatcher);
+		eventDispatcher.setWindowHandle(messageLoop.getWindowHandle());
+		openServices = new StdXfsService[services];
+		for (int i = 0; i < services; i++) {
+			openServices[i] = (StdXfsService) eventDispatcher
+					.open(new OpenParam.Builder("CDM" + i).build(), CdmService.class).get();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		eventDispatcher.stop();
+		engine.shutdown();
+		messageLoop.stop();
+		if (xfsApi.getOutstandingResults() != 0 || xfsApi.getInvalidFrees() != 0) {
+			throw new IllegalStateException("Leaked results: outstanding=" + xfsApi.getOutstandingResults()
+					+ ",invalidFrees=" + xfsApi.getInvalidFrees());
+		}
+	}
+
+	private void windowProc(int msg, StdXfsService service, StdXfsFuture<?> future, int eventId) {
+		Address address = xfsApi.allocateResult(service.getId(), future.getRequestId(), 0, eventId, null);
+		eventDispatcher.windowProc(msg, address.getValue());
+	}
+
+	private void submit(Requests requests, IntermediateListener[] listeners) throws Exception {
+		for (int i = 0; i < services; i++) {
+			requests.futures[i] = (StdXfsFuture<?>) openServices[i].execute(DISPENSE,
+					listeners == null ? null : listeners[i], null);
+		}
+	}
+
+	private Object complete(Requests requests) throws Exception {
+		for (int i = 0; i < services; i++) {
+			windowProc(EXECUTE_COMPLETE, openServices[i], requests.futures[i], 0);
+		}
+		Object result = null;
+		for (int i = 0; i < services; i++) {
+			result = requests.futures[i].get();
+			requests.futures[i] = null;
+		}
+		return result;
+	}
+
+	private Object intermediate(Requests requests) throws Exception {
+		requests.intermediateEvents.set(0);
+		submit(requests, requests.listeners);
+		for (int i = 0; i < services; i++) {
+			requests.sent[i] = System.nanoTime();
+			windowProc(EXECUTE_EVENT, openServices[i], requests.futures[i], NOTE_ERROR);
+		}
+		while (requests.intermediateEvents.get() < services) {
+			Thread.onSpinWait();
+		}
+		return complete(requests);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Object completionThroughput(Requests requests) throws Exception {
+		submit(requests, null);
+		return complete(requests);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Object completionLatency(Requests requests) throws Exception {
+		submit(requests, null);
+		return complete(requests);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public Object intermediateThroughput(Requests requests, Delivery delivery) throws Exception {
+		Object result = intermediate(requests);
+		delivery.delivered(services);
+		return result;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public Object intermediateRoundTrip(Requests requests) throws Exception {
+		return intermediate(requests);
+	}
+}
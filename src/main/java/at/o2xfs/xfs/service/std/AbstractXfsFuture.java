@@ -0,0 +1,139 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import at.o2xfs.xfs.api.XfsException;
+import at.o2xfs.xfs.service.api.XfsFuture;
+
+/**
+ * {@link XfsFuture} backed by a {@link CompletableFuture}.
+ * <p>
+ * Besides the blocking {@link #get()}, the outcome can be awaited with a timeout or consumed asynchronously through
+ * {@link #toCompletionStage()}. A failed request completes the stage exceptionally with the {@link XfsException}.
+ */
+public abstract class AbstractXfsFuture<T> implements XfsFuture<T> {
+
+	private static final AtomicInteger WAITER_NUMBER = new AtomicInteger();
+
+	/**
+	 * Waits for futures of other implementations, which offer no callback. Each wait blocks its thread until the
+	 * request completes, so the threads are not taken from the common pool.
+	 */
+	private static final Executor FOREIGN_FUTURE_WAITERS = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "xfs-future-waiter-" + WAITER_NUMBER.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final CompletableFuture<T> completion;
+
+	protected AbstractXfsFuture() {
+		completion = new CompletableFuture<>();
+	}
+
+	private T unwrap(ExecutionException e) throws XfsException {
+		Throwable cause = e.getCause();
+		if (cause instanceof XfsException) {
+			throw (XfsException) cause;
+		} else if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		} else if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw new CompletionException(cause);
+	}
+
+	protected boolean complete(T value) {
+		return completion.complete(value);
+	}
+
+	protected boolean completeExceptionally(Throwable exception) {
+		return completion.completeExceptionally(exception);
+	}
+
+	protected void completeWith(CompletionStage<? extends T> stage) {
+		stage.whenComplete((value, exception) -> {
+			if (exception == null) {
+				complete(value);
+			} else {
+				completeExceptionally(exception instanceof CompletionException ? exception.getCause() : exception);
+			}
+		});
+	}
+
+	@Override
+	public T get() throws InterruptedException, XfsException {
+		try {
+			return completion.get();
+		} catch (ExecutionException e) {
+			return unwrap(e);
+		}
+	}
+
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, XfsException, TimeoutException {
+		try {
+			return completion.get(timeout, unit);
+		} catch (ExecutionException e) {
+			return unwrap(e);
+		}
+	}
+
+	public boolean isDone() {
+		return completion.isDone();
+	}
+
+	public <U> CompletionStage<U> thenApply(Function<? super T, ? extends U> fn) {
+		return completion.thenApply(fn);
+	}
+
+	public <U> CompletionStage<U> thenCompose(Function<? super T, ? extends CompletionStage<U>> fn) {
+		return completion.thenCompose(fn);
+	}
+
+	public CompletableFuture<T> toCompletableFuture() {
+		return completion.copy();
+	}
+
+	public CompletionStage<T> toCompletionStage() {
+		return completion.minimalCompletionStage();
+	}
+
+	/**
+	 * Returns a stage completed with the outcome of the future. Other {@link XfsFuture} implementations can only be
+	 * awaited with the blocking {@link XfsFuture#get()}, which occupies a thread of a dedicated, unbounded pool for as
+	 * long as the request takes.
+	 */
+	public static <T> CompletionStage<T> toCompletionStage(XfsFuture<T> future) {
+		return toCompletionStage(future, FOREIGN_FUTURE_WAITERS);
+	}
+
+	/**
+	 * Returns a stage completed with the outcome of the future, waiting on the given executor for futures of other
+	 * implementations. The executor needs a thread for every such future that is pending at the same time.
+	 */
+	public static <T> CompletionStage<T> toCompletionStage(XfsFuture<T> future, Executor executor) {
+		if (future instanceof AbstractXfsFuture) {
+			return ((AbstractXfsFuture<T>) future).toCompletionStage();
+		}
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException(e.getMessage());
+			} catch (XfsException e) {
+				throw new CompletionException(e);
+			}
+		}, executor);
+	}
+}
@@ -0,0 +1,80 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+import at.o2xfs.xfs.api.XfsException;
+import at.o2xfs.xfs.service.api.XfsFuture;
+
+/**
+ * Completes with a {@link BatchResult} once every command of a {@link CommandBatch} completed, so all results are
+ * awaited with a single {@link #get()}. The future itself never fails; the individual futures stay available through
+ * {@link #getFutures()}.
+ */
+public class BatchFuture extends AbstractXfsFuture<BatchResult> {
+
+	private static final Logger LOG = LogManager.getLogger(BatchFuture.class);
+
+	private final XfsFuture<?>[] futures;
+	private final Object[] values;
+	private final Throwable[] failures;
+	private final AtomicInteger remaining;
+
+	BatchFuture(int size) {
+		futures = new XfsFuture<?>[size];
+		values = new Object[size];
+		failures = new Throwable[size];
+		remaining = new AtomicInteger(size);
+		if (size == 0) {
+			complete(new BatchResult(values, failures));
+		}
+	}
+
+	private void done() {
+		if (remaining.decrementAndGet() == 0) {
+			complete(new BatchResult(values, failures));
+		}
+	}
+
+	void failed(int index, Throwable failure) {
+		failures[index] = failure;
+		done();
+	}
+
+	<T> void submitted(int index, XfsFuture<T> future) {
+		futures[index] = future;
+		toCompletionStage(future).whenComplete((value, exception) -> {
+			if (exception == null) {
+				values[index] = value;
+			} else {
+				failures[index] = exception instanceof CompletionException ? exception.getCause() : exception;
+			}
+			done();
+		});
+	}
+
+	public List<XfsFuture<?>> getFutures() {
+		return Collections.unmodifiableList(Arrays.asList(futures));
+	}
+
+	@Override
+	public void cancel() {
+		for (int i = 0; i < futures.length; i++) {
+			XfsFuture<?> future = futures[i];
+			if (future != null) {
+				try {
+					future.cancel();
+				} catch (XfsException e) {
+					LOG.error(new ParameterizedMessage("Error cancelling command {}", i), e);
+				}
+			}
+		}
+	}
+}
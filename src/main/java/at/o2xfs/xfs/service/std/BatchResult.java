@@ -0,0 +1,52 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.Optional;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Outcome of every command of a {@link CommandBatch}, indexed in the order the commands were added.
+ */
+public final class BatchResult {
+
+	private final Object[] values;
+	private final Throwable[] failures;
+
+	BatchResult(Object[] values, Throwable[] failures) {
+		this.values = values;
+		this.failures = failures;
+	}
+
+	public int size() {
+		return values.length;
+	}
+
+	public boolean isSuccess(int index) {
+		return failures[index] == null;
+	}
+
+	public boolean isAllSuccessful() {
+		for (Throwable each : failures) {
+			if (each != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public <T> T getValue(int index, Class<T> valueType) {
+		if (failures[index] != null) {
+			throw new IllegalStateException("Command " + index + " failed", failures[index]);
+		}
+		return valueType.cast(values[index]);
+	}
+
+	public Optional<Throwable> getFailure(int index) {
+		return Optional.ofNullable(failures[index]);
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("values", values).append("failures", failures).toString();
+	}
+}
@@ -0,0 +1,54 @@
+package at.o2xfs.xfs.service.std;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+public final class CloseAllResult {
+
+	private final List<String> closed;
+	private final Map<String, Throwable> failures;
+	private final List<String> timedOut;
+	private final Duration elapsed;
+
+	CloseAllResult(List<String> closed, Map<String, Throwable> failures, List<String> timedOut, Duration elapsed) {
+		this.closed = List.copyOf(closed);
+		this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+		this.timedOut = List.copyOf(timedOut);
+		this.elapsed = Objects.requireNonNull(elapsed);
+	}
+
+	public List<String> getClosed() {
+		return closed;
+	}
+
+	public Map<String, Throwable> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Logical names of the services that were still closing when the deadline passed.
+	 */
+	public List<String> getTimedOut() {
+		return timedOut;
+	}
+
+	public boolean isAllClosed() {
+		return failures.isEmpty() && timedOut.isEmpty();
+	}
+
+	public Duration getElapsed() {
+		return elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("closed", closed).append("failures", failures)
+				.append("timedOut", timedOut).append("elapsed", elapsed).toString();
+	}
+}
@@ -8,12 +8,11 @@ import at.o2xfs.xfs.api.XfsException;
 import at.o2xfs.xfs.api.XfsExceptionFactory;
 import at.o2xfs.xfs.service.api.XfsFuture;
 
-public class CloseFuture implements XfsFuture<Void>, XfsEventNotification {
+public class CloseFuture extends AbstractXfsFuture<Void> implements XfsEventNotification {
 
 	private final StdXfsService service;
-	private RequestId requestId;
-	private XfsFuture<Void> closeFuture;
-	private XfsException exception;
+	private final RequestId requestId;
+	private volatile XfsFuture<Void> closeFuture;
 
 	public CloseFuture(StdXfsService service, RequestId requestId) {
 		this.service = Objects.requireNonNull(service);
@@ -22,7 +21,12 @@ public class CloseFuture implements XfsFuture<Void>, XfsEventNotification {
 
 	@Override
 	public void cancel() throws XfsException {
-		service.cancelAsyncRequest(requestId);
+		XfsFuture<Void> future = closeFuture;
+		if (future != null) {
+			future.cancel();
+		} else {
+			service.cancelAsyncRequest(requestId);
+		}
 	}
 
 	@Override
@@ -33,29 +37,14 @@ public class CloseFuture implements XfsFuture<Void>, XfsEventNotification {
 	@Override
 	public void fireOperationCompleteEvent(WfsResult wfsResult) {
 		if (wfsResult.getErrorCode() != 0) {
-			exception = XfsExceptionFactory.create(wfsResult.getErrorCode());
+			completeExceptionally(XfsExceptionFactory.create(wfsResult.getErrorCode()));
 		} else {
 			try {
 				closeFuture = service.getDispatcher().close();
+				completeWith(toCompletionStage(closeFuture));
 			} catch (XfsException e) {
-				exception = e;
+				completeExceptionally(e);
 			}
 		}
-		synchronized (this) {
-			notifyAll();
-		}
-	}
-
-	@Override
-	public Void get() throws InterruptedException, XfsException {
-		synchronized (this) {
-			if (exception == null && closeFuture == null) {
-				wait();
-			}
-		}
-		if (exception != null) {
-			throw exception;
-		}
-		return closeFuture.get();
 	}
 }
@@ -0,0 +1,92 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import at.o2xfs.xfs.api.XfsException;
+import at.o2xfs.xfs.service.api.ExecuteCommand;
+import at.o2xfs.xfs.service.api.InfoCommand;
+import at.o2xfs.xfs.service.api.XfsFuture;
+import at.o2xfs.xfs.service.api.event.IntermediateListener;
+
+/**
+ * Independent info and execute commands submitted together through {@link StdXfsService#submit(CommandBatch)}.
+ */
+public final class CommandBatch {
+
+	public static class Builder {
+
+		private final List<Entry<?>> entries;
+
+		public Builder() {
+			entries = new ArrayList<>();
+		}
+
+		public <T> Builder getInfo(InfoCommand<?> command, Class<T> valueType) {
+			Objects.requireNonNull(command);
+			entries.add(new Entry<>(command, valueType, service -> service.getInfo(command, valueType)));
+			return this;
+		}
+
+		public <T> Builder execute(ExecuteCommand<?> command, IntermediateListener listener, Class<T> valueType) {
+			Objects.requireNonNull(command);
+			entries.add(new Entry<>(command, valueType, service -> service.execute(command, listener, valueType)));
+			return this;
+		}
+
+		public CommandBatch build() {
+			return new CommandBatch(this);
+		}
+	}
+
+	@FunctionalInterface
+	interface Submission<T> {
+
+		XfsFuture<T> submit(StdXfsService service) throws XfsException;
+	}
+
+	static final class Entry<T> {
+
+		private final Object command;
+		private final Class<T> valueType;
+		private final Submission<T> submission;
+
+		private Entry(Object command, Class<T> valueType, Submission<T> submission) {
+			this.command = command;
+			this.valueType = valueType;
+			this.submission = submission;
+		}
+
+		XfsFuture<T> submit(StdXfsService service) throws XfsException {
+			return submission.submit(service);
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringBuilder(this).append("command", command).append("valueType", valueType).toString();
+		}
+	}
+
+	private final List<Entry<?>> entries;
+
+	private CommandBatch(Builder builder) {
+		entries = Collections.unmodifiableList(new ArrayList<>(builder.entries));
+	}
+
+	List<Entry<?>> getEntries() {
+		return entries;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("entries", entries).toString();
+	}
+}
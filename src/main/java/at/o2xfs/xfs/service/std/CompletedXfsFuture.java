@@ -0,0 +1,12 @@
+package at.o2xfs.xfs.service.std;
+
+public final class CompletedXfsFuture<T> extends AbstractXfsFuture<T> {
+
+	public CompletedXfsFuture(T value) {
+		complete(value);
+	}
+
+	@Override
+	public void cancel() {
+	}
+}
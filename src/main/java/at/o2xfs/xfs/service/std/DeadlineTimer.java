@@ -0,0 +1,277 @@
+package at.o2xfs.xfs.service.std;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Hashed timer wheel shared by all services of an engine.
+ * <p>
+ * Scheduling and cancelling only enqueue the timeout; the wheel itself is touched by {@link #expireTimeouts()}
+ * alone, which the timer thread calls once per tick. Timeouts expire at the first tick at or after their deadline,
+ * so they are accurate to one tick. Their tasks are run on the task executor once the wheel has been advanced, never
+ * while holding the timer's lock. Time is read from the given clock, so with a manual clock and without
+ * {@link #start()} expiry can be driven by calling {@link #expireTimeouts()} directly.
+ */
+public final class DeadlineTimer {
+
+	private static final Logger LOG = LogManager.getLogger(DeadlineTimer.class);
+
+	private static final int PENDING = 0;
+	private static final int CANCELLED = 1;
+	private static final int EXPIRED = 2;
+
+	public final class Timeout {
+
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state;
+
+		private long remainingRounds;
+		private Bucket bucket;
+		private Timeout prev;
+		private Timeout next;
+
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+			state = new AtomicInteger(PENDING);
+		}
+
+		/**
+		 * Returns {@code false} if the timeout has already expired or been cancelled.
+		 */
+		public boolean cancel() {
+			if (state.compareAndSet(PENDING, CANCELLED)) {
+				cancelled.add(this);
+				return true;
+			}
+			return false;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state.get() == EXPIRED;
+		}
+	}
+
+	private static final class Bucket {
+
+		private Timeout head;
+		private Timeout tail;
+
+		private void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = timeout;
+				tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		private Timeout remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = next;
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			return next;
+		}
+	}
+
+	private final LongSupplier clock;
+	private final long tickNanos;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final long startTime;
+	private final Queue<Timeout> added;
+	private final Queue<Timeout> cancelled;
+	private final Executor taskExecutor;
+
+	private long tick = 0L;
+	private volatile boolean running = false;
+	private Thread thread = null;
+
+	/**
+	 * Creates a timer that runs expired tasks on the thread calling {@link #expireTimeouts()}.
+	 */
+	public DeadlineTimer(LongSupplier clock, Duration tickDuration, int wheelSize) {
+		this(clock, tickDuration, wheelSize, Runnable::run);
+	}
+
+	public DeadlineTimer(LongSupplier clock, Duration tickDuration, int wheelSize, Executor taskExecutor) {
+		this.clock = Objects.requireNonNull(clock);
+		this.taskExecutor = Objects.requireNonNull(taskExecutor);
+		tickNanos = tickDuration.toNanos();
+		if (tickNanos <= 0L) {
+			throw new IllegalArgumentException("tickDuration: " + tickDuration);
+		}
+		if (wheelSize < 1 || Integer.bitCount(wheelSize) != 1) {
+			throw new IllegalArgumentException("wheelSize must be a power of 2: " + wheelSize);
+		}
+		wheel = new Bucket[wheelSize];
+		for (int i = 0; i < wheel.length; i++) {
+			wheel[i] = new Bucket();
+		}
+		mask = wheelSize - 1;
+		startTime = clock.getAsLong();
+		added = new ConcurrentLinkedQueue<>();
+		cancelled = new ConcurrentLinkedQueue<>();
+	}
+
+	private void transferAdded() {
+		Timeout timeout;
+		while ((timeout = added.poll()) != null) {
+			if (timeout.state.get() != PENDING) {
+				continue;
+			}
+			// the tick whose end is the first one at or after the deadline
+			long calculated = (Math.max(0L, timeout.deadline - startTime) + tickNanos - 1L) / tickNanos - 1L;
+			timeout.remainingRounds = Math.max(0L, calculated - tick) / wheel.length;
+			wheel[(int) (Math.max(calculated, tick) & mask)].add(timeout);
+		}
+	}
+
+	private void removeCancelled() {
+		Timeout timeout;
+		while ((timeout = cancelled.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	private List<Runnable> expire(Bucket bucket, List<Runnable> tasks) {
+		List<Runnable> result = tasks;
+		Timeout timeout = bucket.head;
+		while (timeout != null) {
+			if (timeout.state.get() != PENDING) {
+				timeout = bucket.remove(timeout);
+			} else if (timeout.remainingRounds > 0L) {
+				timeout.remainingRounds--;
+				timeout = timeout.next;
+			} else {
+				Timeout expired = timeout;
+				timeout = bucket.remove(timeout);
+				if (expired.state.compareAndSet(PENDING, EXPIRED)) {
+					if (result.isEmpty()) {
+						result = new ArrayList<>();
+					}
+					result.add(expired.task);
+				}
+			}
+		}
+		return result;
+	}
+
+	private void run() {
+		while (running) {
+			long sleepNanos;
+			synchronized (this) {
+				sleepNanos = startTime + (tick + 1L) * tickNanos - clock.getAsLong();
+			}
+			if (sleepNanos > 0L) {
+				LockSupport.parkNanos(this, sleepNanos);
+			} else {
+				expireTimeouts();
+			}
+		}
+	}
+
+	private static void runTask(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			LOG.error("Error running timeout task", e);
+		}
+	}
+
+	private synchronized List<Runnable> advance() {
+		long now = clock.getAsLong();
+		List<Runnable> result = Collections.emptyList();
+		removeCancelled();
+		transferAdded();
+		while (now - startTime >= (tick + 1L) * tickNanos) {
+			result = expire(wheel[(int) (tick & mask)], result);
+			tick++;
+			transferAdded();
+		}
+		return result;
+	}
+
+	/**
+	 * Expires all timeouts whose tick has passed, hands their tasks to the task executor and returns their number.
+	 */
+	public int expireTimeouts() {
+		List<Runnable> tasks = advance();
+		for (Runnable each : tasks) {
+			try {
+				taskExecutor.execute(() -> runTask(each));
+			} catch (RejectedExecutionException e) {
+				runTask(each);
+			}
+		}
+		return tasks.size();
+	}
+
+	public Timeout schedule(Runnable task, Duration delay) {
+		Timeout result = new Timeout(Objects.requireNonNull(task), clock.getAsLong() + delay.toNanos());
+		added.add(result);
+		return result;
+	}
+
+	public synchronized void start() {
+		if (thread != null) {
+			throw new IllegalStateException("Already started");
+		}
+		running = true;
+		thread = new Thread(this::run, "DeadlineTimer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the timer thread. Timeouts still pending never expire.
+	 */
+	public void stop() throws InterruptedException {
+		Thread current;
+		synchronized (this) {
+			current = thread;
+			running = false;
+		}
+		if (current != null) {
+			LockSupport.unpark(current);
+			current.join(TimeUnit.SECONDS.toMillis(1L));
+		}
+	}
+}
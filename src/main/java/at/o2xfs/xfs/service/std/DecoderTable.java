@@ -0,0 +1,74 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.memory.core.MemorySystem;
+
+/**
+ * Maps a requested result type to the reader that decodes it. A table is built once per service, when the
+ * negotiated version is known, so decoding a result is a single identity lookup. Types without an entry are read
+ * as requested.
+ */
+public final class DecoderTable {
+
+	public static class Builder {
+
+		private final Map<Class<?>, ResultDecoder<?>> decoders;
+
+		public Builder() {
+			decoders = new IdentityHashMap<>();
+		}
+
+		public Builder(DecoderTable table) {
+			decoders = new IdentityHashMap<>(table.decoders);
+		}
+
+		public <T> Builder register(Class<T> valueType, ResultDecoder<? extends T> decoder) {
+			decoders.put(Objects.requireNonNull(valueType), Objects.requireNonNull(decoder));
+			return this;
+		}
+
+		public <T> Builder readAs(Class<T> valueType, Class<? extends T> implementationType) {
+			return register(valueType, ResultDecoder.reading(implementationType));
+		}
+
+		public Builder read(Class<?>... valueTypes) {
+			for (Class<?> each : valueTypes) {
+				decoders.put(each, ResultDecoder.reading(each));
+			}
+			return this;
+		}
+
+		public DecoderTable build() {
+			return new DecoderTable(this);
+		}
+	}
+
+	private final Map<Class<?>, ResultDecoder<?>> decoders;
+
+	private DecoderTable(Builder builder) {
+		decoders = new IdentityHashMap<>(builder.decoders);
+	}
+
+	public <T> T decode(MemorySystem memorySystem, Address address, Class<T> valueType) {
+		ResultDecoder<?> decoder = decoders.get(valueType);
+		if (decoder == null) {
+			return memorySystem.read(address, valueType);
+		}
+		return valueType.cast(decoder.decode(memorySystem, address));
+	}
+
+	public boolean contains(Class<?> valueType) {
+		return decoders.containsKey(valueType);
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("decoders", decoders.keySet()).toString();
+	}
+}
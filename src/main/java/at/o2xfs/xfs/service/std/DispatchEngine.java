@@ -0,0 +1,123 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import at.o2xfs.xfs.api.XfsApi;
+import at.o2xfs.xfs.service.std.metrics.DispatchMetrics;
+
+/**
+ * Worker pool shared by all {@link ServiceDispatcher}s of a service manager.
+ * <p>
+ * Each dispatcher drains its own queue on at most one worker at a time, so events of a service stay in FIFO order
+ * while different services are dispatched in parallel.
+ */
+public class DispatchEngine {
+
+	private static final Logger LOG = LogManager.getLogger(DispatchEngine.class);
+
+	private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+	private final DispatcherConfig config;
+	private final Executor executor;
+	private final Optional<ExecutorService> ownedExecutor;
+	private final DispatchRecorder recorder;
+	private final DispatchMetrics metrics;
+	private final ResultReclaimer reclaimer;
+	private final ListenerDelivery listenerDelivery;
+	private final DeadlineTimer timer;
+
+	public DispatchEngine(XfsApi xfsApi, DispatcherConfig config) {
+		this.config = Objects.requireNonNull(config);
+		if (config.getExecutor().isPresent()) {
+			executor = config.getExecutor().get();
+			ownedExecutor = Optional.empty();
+		} else {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(config.getWorkerThreads(), config.getWorkerThreads(), 60L,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+					config.getThreadFactory().orElseGet(DispatchEngine::defaultThreadFactory));
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+			ownedExecutor = Optional.of(pool);
+		}
+		recorder = new DispatchRecorder(config.getRecorderCapacity());
+		metrics = new DispatchMetrics();
+		reclaimer = new ResultReclaimer(xfsApi, metrics, config.getReclaimCapacity(), config.getBatchSize());
+		metrics.bindReclaimBacklog(reclaimer::getBacklog);
+		listenerDelivery = new ListenerDelivery(config, metrics, reclaimer);
+		timer = new DeadlineTimer(config.getClock(), config.getTimerTick(), 512, executor);
+		timer.start();
+	}
+
+	public DispatcherConfig getConfig() {
+		return config;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	public DispatchMetrics getMetrics() {
+		return metrics;
+	}
+
+	public DeadlineTimer getTimer() {
+		return timer;
+	}
+
+	public ListenerDelivery getListenerDelivery() {
+		return listenerDelivery;
+	}
+
+	public ResultReclaimer getReclaimer() {
+		return reclaimer;
+	}
+
+	public DispatchRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Stops the owned worker pool, the deadline timer and listener delivery, then frees every result still waiting in
+	 * the {@link ResultReclaimer}.
+	 */
+	public void shutdown() throws InterruptedException {
+		try {
+			if (ownedExecutor.isPresent()) {
+				ExecutorService pool = ownedExecutor.get();
+				pool.shutdown();
+				if (!pool.awaitTermination(10L, TimeUnit.SECONDS)) {
+					LOG.warn("Dispatch workers did not terminate in time");
+					pool.shutdownNow();
+				}
+			}
+			timer.stop();
+		} finally {
+			try {
+				listenerDelivery.shutdown();
+			} finally {
+				reclaimer.shutdown();
+			}
+		}
+	}
+
+	private static ThreadFactory defaultThreadFactory() {
+		String prefix = "xfs-dispatch-" + POOL_NUMBER.incrementAndGet() + "-";
+		AtomicInteger threadNumber = new AtomicInteger();
+		return r -> {
+			Thread thread = new Thread(r, prefix + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
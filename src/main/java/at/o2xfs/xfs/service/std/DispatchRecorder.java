@@ -0,0 +1,131 @@
+package at.o2xfs.xfs.service.std;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.api.XfsMessage;
+
+/**
+ * Keeps the most recent dispatcher events as fixed size binary records.
+ * <p>
+ * Recording does not allocate or take locks: a writer claims a slot from a shared cursor and overwrites the oldest
+ * record. Each slot carries its sequence, which is cleared while the slot is written, so {@link #dump(Appendable)}
+ * skips records that are overwritten while being read.
+ */
+public final class DispatchRecorder {
+
+	public enum Stage {
+		RECEIVED, ROUTED, DELIVERED, DEFERRED, DROPPED, FAILED
+	}
+
+	private static final XfsMessage[] MESSAGES = XfsMessage.values();
+	private static final Stage[] STAGES = Stage.values();
+
+	private final int mask;
+	private final AtomicLong cursor;
+	private final AtomicLongArray sequences;
+	private final long[] timestamps;
+	private final byte[] stages;
+	private final byte[] messages;
+	private final long[] requestIds;
+	private final int[] serviceIds;
+	private final int[] errorCodes;
+
+	private final long epochMillis;
+	private final long epochNanos;
+
+	public DispatchRecorder(int capacity) {
+		if (capacity < 0 || Integer.bitCount(capacity) > 1) {
+			throw new IllegalArgumentException("capacity must be 0 or a power of 2: " + capacity);
+		}
+		mask = capacity - 1;
+		cursor = new AtomicLong();
+		sequences = new AtomicLongArray(capacity);
+		timestamps = new long[capacity];
+		stages = new byte[capacity];
+		messages = new byte[capacity];
+		requestIds = new long[capacity];
+		serviceIds = new int[capacity];
+		errorCodes = new int[capacity];
+		for (int i = 0; i < capacity; i++) {
+			sequences.set(i, -1L);
+		}
+		epochMillis = System.currentTimeMillis();
+		epochNanos = System.nanoTime();
+	}
+
+	public boolean isEnabled() {
+		return mask >= 0;
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+
+	public void record(Stage stage, XfsMessage message, WfsResult wfsResult) {
+		if (wfsResult == null) {
+			record(stage, message, -1L, -1, 0);
+		} else {
+			record(stage, message, wfsResult.getRequestId().getValue(), wfsResult.getServiceId().getValue(),
+					wfsResult.getErrorCode());
+		}
+	}
+
+	public void record(Stage stage, XfsMessage message, long requestId, int serviceId, int errorCode) {
+		if (mask < 0) {
+			return;
+		}
+		long sequence = cursor.getAndIncrement();
+		int index = (int) sequence & mask;
+		sequences.set(index, -1L);
+		// a volatile store does not keep the plain stores below from moving ahead of it
+		VarHandle.storeStoreFence();
+		timestamps[index] = System.nanoTime();
+		stages[index] = (byte) stage.ordinal();
+		messages[index] = (byte) (message == null ? -1 : message.ordinal());
+		requestIds[index] = requestId;
+		serviceIds[index] = serviceId;
+		errorCodes[index] = errorCode;
+		sequences.set(index, sequence);
+	}
+
+	public void dump(Appendable out) throws IOException {
+		long end = cursor.get();
+		for (long sequence = Math.max(0L, end - capacity()); sequence < end; sequence++) {
+			int index = (int) sequence & mask;
+			if (sequences.get(index) != sequence) {
+				continue;
+			}
+			long timestamp = timestamps[index];
+			int stage = stages[index];
+			int message = messages[index];
+			long requestId = requestIds[index];
+			int serviceId = serviceIds[index];
+			int errorCode = errorCodes[index];
+			VarHandle.loadLoadFence();
+			if (sequences.get(index) != sequence) {
+				continue;
+			}
+			Instant time = Instant.ofEpochMilli(epochMillis).plusNanos(timestamp - epochNanos);
+			out.append(time.toString()).append(' ').append(STAGES[stage].name()).append(' ')
+					.append(message < 0 ? "-" : MESSAGES[message].name()).append(" hService=")
+					.append(Integer.toString(serviceId)).append(" requestId=").append(Long.toString(requestId))
+					.append(" hResult=").append(Integer.toString(errorCode)).append('\n');
+		}
+	}
+
+	public String dump() {
+		StringBuilder result = new StringBuilder();
+		try {
+			dump(result);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return result.toString();
+	}
+}
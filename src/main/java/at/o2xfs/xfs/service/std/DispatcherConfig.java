@@ -0,0 +1,392 @@
+package at.o2xfs.xfs.service.std;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import at.o2xfs.xfs.service.std.queue.BlockingWaitStrategy;
+import at.o2xfs.xfs.service.std.queue.WaitStrategy;
+
+public final class DispatcherConfig {
+
+	public static class Builder {
+
+		private int queueCapacity;
+		private Supplier<WaitStrategy> waitStrategy;
+		private int workerThreads;
+		private int batchSize;
+		private Optional<ThreadFactory> threadFactory;
+		private Optional<Executor> executor;
+		private Duration infoCacheStaleness;
+		private int recorderCapacity;
+		private boolean jmxEnabled;
+		private int reclaimCapacity;
+		private int serviceQueueCapacity;
+		private OverflowPolicy overflowPolicy;
+		private int spillCapacity;
+		private ListenerDeliveryMode listenerDelivery;
+		private Optional<Executor> listenerExecutor;
+		private Duration slowListenerThreshold;
+		private int mailboxCapacity;
+		private Duration requestDeadline;
+		private Duration orphanGracePeriod;
+		private Duration timerTick;
+		private LongSupplier clock;
+		private Duration shutdownDeadline;
+
+		public Builder() {
+			queueCapacity = 1024;
+			waitStrategy = BlockingWaitStrategy::new;
+			workerThreads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+			batchSize = 64;
+			threadFactory = Optional.empty();
+			executor = Optional.empty();
+			infoCacheStaleness = Duration.ZERO;
+			recorderCapacity = 4096;
+			jmxEnabled = true;
+			reclaimCapacity = 4096;
+			serviceQueueCapacity = 1024;
+			overflowPolicy = OverflowPolicy.BLOCK;
+			spillCapacity = 4096;
+			listenerDelivery = ListenerDeliveryMode.EXECUTOR;
+			listenerExecutor = Optional.empty();
+			slowListenerThreshold = Duration.ofMillis(100L);
+			mailboxCapacity = 256;
+			requestDeadline = Duration.ZERO;
+			orphanGracePeriod = Duration.ofSeconds(30L);
+			timerTick = Duration.ofMillis(10L);
+			clock = System::nanoTime;
+			shutdownDeadline = Duration.ofSeconds(30L);
+		}
+
+		public Builder queueCapacity(int queueCapacity) {
+			if (queueCapacity < 1 || Integer.bitCount(queueCapacity) != 1) {
+				throw new IllegalArgumentException("queueCapacity must be a power of 2: " + queueCapacity);
+			}
+			this.queueCapacity = queueCapacity;
+			return this;
+		}
+
+		public Builder waitStrategy(Supplier<WaitStrategy> waitStrategy) {
+			this.waitStrategy = Objects.requireNonNull(waitStrategy);
+			return this;
+		}
+
+		public Builder workerThreads(int workerThreads) {
+			if (workerThreads < 1) {
+				throw new IllegalArgumentException("workerThreads: " + workerThreads);
+			}
+			this.workerThreads = workerThreads;
+			return this;
+		}
+
+		public Builder batchSize(int batchSize) {
+			if (batchSize < 1) {
+				throw new IllegalArgumentException("batchSize: " + batchSize);
+			}
+			this.batchSize = batchSize;
+			return this;
+		}
+
+		public Builder threadFactory(ThreadFactory threadFactory) {
+			this.threadFactory = Optional.of(threadFactory);
+			return this;
+		}
+
+		public Builder executor(Executor executor) {
+			this.executor = Optional.of(executor);
+			return this;
+		}
+
+		public Builder infoCacheStaleness(Duration infoCacheStaleness) {
+			if (infoCacheStaleness.isNegative()) {
+				throw new IllegalArgumentException("infoCacheStaleness: " + infoCacheStaleness);
+			}
+			this.infoCacheStaleness = infoCacheStaleness;
+			return this;
+		}
+
+		public Builder recorderCapacity(int recorderCapacity) {
+			if (recorderCapacity < 0 || Integer.bitCount(recorderCapacity) > 1) {
+				throw new IllegalArgumentException("recorderCapacity must be 0 or a power of 2: " + recorderCapacity);
+			}
+			this.recorderCapacity = recorderCapacity;
+			return this;
+		}
+
+		public Builder jmxEnabled(boolean jmxEnabled) {
+			this.jmxEnabled = jmxEnabled;
+			return this;
+		}
+
+		public Builder reclaimCapacity(int reclaimCapacity) {
+			if (reclaimCapacity < 1) {
+				throw new IllegalArgumentException("reclaimCapacity: " + reclaimCapacity);
+			}
+			this.reclaimCapacity = reclaimCapacity;
+			return this;
+		}
+
+		public Builder serviceQueueCapacity(int serviceQueueCapacity) {
+			if (serviceQueueCapacity < 1 || Integer.bitCount(serviceQueueCapacity) != 1) {
+				throw new IllegalArgumentException(
+						"serviceQueueCapacity must be a power of 2: " + serviceQueueCapacity);
+			}
+			this.serviceQueueCapacity = serviceQueueCapacity;
+			return this;
+		}
+
+		public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+			this.overflowPolicy = Objects.requireNonNull(overflowPolicy);
+			return this;
+		}
+
+		public Builder spillCapacity(int spillCapacity) {
+			if (spillCapacity < 0) {
+				throw new IllegalArgumentException("spillCapacity: " + spillCapacity);
+			}
+			this.spillCapacity = spillCapacity;
+			return this;
+		}
+
+		public Builder listenerDelivery(ListenerDeliveryMode listenerDelivery) {
+			this.listenerDelivery = Objects.requireNonNull(listenerDelivery);
+			return this;
+		}
+
+		public Builder listenerExecutor(Executor listenerExecutor) {
+			this.listenerExecutor = Optional.of(listenerExecutor);
+			return this;
+		}
+
+		public Builder slowListenerThreshold(Duration slowListenerThreshold) {
+			if (slowListenerThreshold.isNegative() || slowListenerThreshold.isZero()) {
+				throw new IllegalArgumentException("slowListenerThreshold: " + slowListenerThreshold);
+			}
+			this.slowListenerThreshold = slowListenerThreshold;
+			return this;
+		}
+
+		/**
+		 * How many callbacks a listener may have pending before the overflow policy applies to its mailbox.
+		 */
+		public Builder mailboxCapacity(int mailboxCapacity) {
+			if (mailboxCapacity < 1) {
+				throw new IllegalArgumentException("mailboxCapacity: " + mailboxCapacity);
+			}
+			this.mailboxCapacity = mailboxCapacity;
+			return this;
+		}
+
+		/**
+		 * Default deadline of execute and get info requests, {@link Duration#ZERO} for none.
+		 */
+		public Builder requestDeadline(Duration requestDeadline) {
+			if (requestDeadline.isNegative()) {
+				throw new IllegalArgumentException("requestDeadline: " + requestDeadline);
+			}
+			this.requestDeadline = requestDeadline;
+			return this;
+		}
+
+		public Builder orphanGracePeriod(Duration orphanGracePeriod) {
+			if (orphanGracePeriod.isNegative()) {
+				throw new IllegalArgumentException("orphanGracePeriod: " + orphanGracePeriod);
+			}
+			this.orphanGracePeriod = orphanGracePeriod;
+			return this;
+		}
+
+		public Builder timerTick(Duration timerTick) {
+			if (timerTick.isNegative() || timerTick.isZero()) {
+				throw new IllegalArgumentException("timerTick: " + timerTick);
+			}
+			this.timerTick = timerTick;
+			return this;
+		}
+
+		/**
+		 * Nanosecond clock of the deadline timer.
+		 */
+		public Builder clock(LongSupplier clock) {
+			this.clock = Objects.requireNonNull(clock);
+			return this;
+		}
+
+		/**
+		 * How long shutdown waits for all services to close before cleaning up regardless.
+		 */
+		public Builder shutdownDeadline(Duration shutdownDeadline) {
+			if (shutdownDeadline.isNegative()) {
+				throw new IllegalArgumentException("shutdownDeadline: " + shutdownDeadline);
+			}
+			this.shutdownDeadline = shutdownDeadline;
+			return this;
+		}
+
+		public DispatcherConfig build() {
+			return new DispatcherConfig(this);
+		}
+	}
+
+	private final int queueCapacity;
+	private final Supplier<WaitStrategy> waitStrategy;
+	private final int workerThreads;
+	private final int batchSize;
+	private final Optional<ThreadFactory> threadFactory;
+	private final Optional<Executor> executor;
+	private final Duration infoCacheStaleness;
+	private final int recorderCapacity;
+	private final boolean jmxEnabled;
+	private final int reclaimCapacity;
+	private final int serviceQueueCapacity;
+	private final OverflowPolicy overflowPolicy;
+	private final int spillCapacity;
+	private final ListenerDeliveryMode listenerDelivery;
+	private final Optional<Executor> listenerExecutor;
+	private final Duration slowListenerThreshold;
+	private final int mailboxCapacity;
+	private final Duration requestDeadline;
+	private final Duration orphanGracePeriod;
+	private final Duration timerTick;
+	private final LongSupplier clock;
+	private final Duration shutdownDeadline;
+
+	private DispatcherConfig(Builder builder) {
+		queueCapacity = builder.queueCapacity;
+		waitStrategy = builder.waitStrategy;
+		workerThreads = builder.workerThreads;
+		batchSize = builder.batchSize;
+		threadFactory = builder.threadFactory;
+		executor = builder.executor;
+		infoCacheStaleness = builder.infoCacheStaleness;
+		recorderCapacity = builder.recorderCapacity;
+		jmxEnabled = builder.jmxEnabled;
+		reclaimCapacity = builder.reclaimCapacity;
+		serviceQueueCapacity = builder.serviceQueueCapacity;
+		overflowPolicy = builder.overflowPolicy;
+		spillCapacity = builder.spillCapacity;
+		listenerDelivery = builder.listenerDelivery;
+		listenerExecutor = builder.listenerExecutor;
+		slowListenerThreshold = builder.slowListenerThreshold;
+		mailboxCapacity = builder.mailboxCapacity;
+		requestDeadline = builder.requestDeadline;
+		orphanGracePeriod = builder.orphanGracePeriod;
+		timerTick = builder.timerTick;
+		clock = builder.clock;
+		shutdownDeadline = builder.shutdownDeadline;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	public Supplier<WaitStrategy> getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public Optional<ThreadFactory> getThreadFactory() {
+		return threadFactory;
+	}
+
+	public Optional<Executor> getExecutor() {
+		return executor;
+	}
+
+	public Duration getInfoCacheStaleness() {
+		return infoCacheStaleness;
+	}
+
+	public int getRecorderCapacity() {
+		return recorderCapacity;
+	}
+
+	public boolean isJmxEnabled() {
+		return jmxEnabled;
+	}
+
+	public int getReclaimCapacity() {
+		return reclaimCapacity;
+	}
+
+	public int getServiceQueueCapacity() {
+		return serviceQueueCapacity;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public int getSpillCapacity() {
+		return spillCapacity;
+	}
+
+	public ListenerDeliveryMode getListenerDelivery() {
+		return listenerDelivery;
+	}
+
+	public Optional<Executor> getListenerExecutor() {
+		return listenerExecutor;
+	}
+
+	public Duration getSlowListenerThreshold() {
+		return slowListenerThreshold;
+	}
+
+	public int getMailboxCapacity() {
+		return mailboxCapacity;
+	}
+
+	public Duration getRequestDeadline() {
+		return requestDeadline;
+	}
+
+	public Duration getOrphanGracePeriod() {
+		return orphanGracePeriod;
+	}
+
+	public Duration getTimerTick() {
+		return timerTick;
+	}
+
+	public LongSupplier getClock() {
+		return clock;
+	}
+
+	public Duration getShutdownDeadline() {
+		return shutdownDeadline;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("queueCapacity", queueCapacity).append("waitStrategy", waitStrategy)
+				.append("workerThreads", workerThreads).append("batchSize", batchSize)
+				.append("threadFactory", threadFactory).append("executor", executor)
+				.append("infoCacheStaleness", infoCacheStaleness).append("recorderCapacity", recorderCapacity)
+				.append("jmxEnabled", jmxEnabled).append("reclaimCapacity", reclaimCapacity)
+				.append("serviceQueueCapacity", serviceQueueCapacity).append("overflowPolicy", overflowPolicy)
+				.append("spillCapacity", spillCapacity).append("listenerDelivery", listenerDelivery)
+				.append("listenerExecutor", listenerExecutor).append("slowListenerThreshold", slowListenerThreshold)
+				.append("mailboxCapacity", mailboxCapacity).append("requestDeadline", requestDeadline)
+				.append("orphanGracePeriod", orphanGracePeriod)
+				.append("timerTick", timerTick).append("shutdownDeadline", shutdownDeadline).toString();
+	}
+
+	public static DispatcherConfig defaults() {
+		return new Builder().build();
+	}
+}
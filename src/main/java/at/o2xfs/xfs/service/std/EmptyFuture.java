@@ -8,16 +8,13 @@ import at.o2xfs.xfs.api.ServiceId;
 import at.o2xfs.xfs.api.WfsResult;
 import at.o2xfs.xfs.api.XfsException;
 import at.o2xfs.xfs.api.XfsExceptionFactory;
-import at.o2xfs.xfs.service.api.XfsFuture;
 
-public class EmptyFuture implements XfsFuture<Void>, XfsEventNotification {
+public class EmptyFuture extends AbstractXfsFuture<Void> implements XfsEventNotification {
 
 	private static final Logger LOG = LogManager.getLogger(EmptyFuture.class);
 
 	private final StdXfsService service;
 	private final RequestId requestId;
-	private boolean complete = false;
-	private XfsException exception = null;
 
 	public EmptyFuture(StdXfsService service, RequestId requestId) {
 		this.service = service;
@@ -29,20 +26,6 @@ public class EmptyFuture implements XfsFuture<Void>, XfsEventNotification {
 		service.cancelAsyncRequest(requestId);
 	}
 
-	@Override
-	public Void get() throws InterruptedException, XfsException {
-		synchronized (this) {
-			while (!complete) {
-				LOG.debug("Waiting for completion, RequestId: {}", requestId);
-				wait();
-			}
-		}
-		if (exception != null) {
-			throw exception;
-		}
-		return null;
-	}
-
 	public RequestId getRequestId() {
 		return requestId;
 	}
@@ -60,11 +43,9 @@ public class EmptyFuture implements XfsFuture<Void>, XfsEventNotification {
 	public void fireOperationCompleteEvent(WfsResult wfsResult) {
 		LOG.debug("wfsResult={}", wfsResult);
 		if (wfsResult.getErrorCode() != 0) {
-			exception = XfsExceptionFactory.create(wfsResult.getErrorCode());
-		}
-		synchronized (this) {
-			complete = true;
-			notifyAll();
+			completeExceptionally(XfsExceptionFactory.create(wfsResult.getErrorCode()));
+		} else {
+			complete(null);
 		}
 	}
 }
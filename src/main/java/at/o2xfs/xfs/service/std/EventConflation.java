@@ -0,0 +1,135 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.memory.core.MemorySystem;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.api.XfsConstant;
+import at.o2xfs.xfs.api.XfsMessage;
+
+/**
+ * Selects events that only matter at their latest value. While such an event is still waiting to be delivered, a
+ * newer one of the same message, event id and key replaces it before it is decoded.
+ */
+public final class EventConflation {
+
+	@FunctionalInterface
+	public interface KeyExtractor {
+
+		/**
+		 * Returns the key which distinguishes events of the same event id, e.g. the cash unit number. Called on the
+		 * dispatch thread, so it should read no more than necessary.
+		 */
+		Object extractKey(MemorySystem memorySystem, Address buffer);
+	}
+
+	public static class Builder {
+
+		private final Map<XfsMessage, Map<Long, KeyExtractor>> keyExtractors;
+
+		public Builder() {
+			keyExtractors = new EnumMap<>(XfsMessage.class);
+		}
+
+		public Builder conflate(XfsMessage message, XfsConstant eventId) {
+			return conflate(message, eventId, (memorySystem, buffer) -> null);
+		}
+
+		public Builder conflate(XfsMessage message, XfsConstant eventId, KeyExtractor keyExtractor) {
+			switch (message) {
+			case SERVICE_EVENT:
+			case USER_EVENT:
+			case SYSTEM_EVENT:
+				break;
+			default:
+				throw new IllegalArgumentException("Not an unsolicited event: " + message);
+			}
+			keyExtractors.computeIfAbsent(message, k -> new HashMap<>()).put(Long.valueOf(eventId.getValue()),
+					Objects.requireNonNull(keyExtractor));
+			return this;
+		}
+
+		public EventConflation build() {
+			return new EventConflation(this);
+		}
+	}
+
+	static final class Key {
+
+		private final XfsMessage message;
+		private final int eventId;
+		private final Object key;
+
+		private Key(XfsMessage message, int eventId, Object key) {
+			this.message = message;
+			this.eventId = eventId;
+			this.key = key;
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * message.hashCode() + eventId) * 31 + Objects.hashCode(key);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof Key) {
+				Key other = (Key) obj;
+				return message.equals(other.message) && eventId == other.eventId && Objects.equals(key, other.key);
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringBuilder(this).append("message", message).append("eventId", eventId)
+					.append("key", key).toString();
+		}
+	}
+
+	private static final EventConflation NONE = new Builder().build();
+
+	private final Map<XfsMessage, Map<Long, KeyExtractor>> keyExtractors;
+
+	private EventConflation(Builder builder) {
+		keyExtractors = new EnumMap<>(XfsMessage.class);
+		for (Map.Entry<XfsMessage, Map<Long, KeyExtractor>> each : builder.keyExtractors.entrySet()) {
+			keyExtractors.put(each.getKey(), Collections.unmodifiableMap(new HashMap<>(each.getValue())));
+		}
+	}
+
+	boolean isEmpty() {
+		return keyExtractors.isEmpty();
+	}
+
+	/**
+	 * Returns the conflation key of the event, or {@code null} if it has to be delivered as is.
+	 */
+	Key keyOf(MemorySystem memorySystem, XfsMessage message, WfsResult wfsResult) {
+		Map<Long, KeyExtractor> byEventId = keyExtractors.get(message);
+		if (byEventId == null) {
+			return null;
+		}
+		KeyExtractor keyExtractor = byEventId.get(Long.valueOf(wfsResult.getEventId()));
+		if (keyExtractor == null) {
+			return null;
+		}
+		return new Key(message, wfsResult.getEventId(), keyExtractor.extractKey(memorySystem, wfsResult.getBuffer()));
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("keyExtractors", keyExtractors.keySet()).toString();
+	}
+
+	public static EventConflation none() {
+		return NONE;
+	}
+}
@@ -0,0 +1,11 @@
+package at.o2xfs.xfs.service.std;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("at.o2xfs.xfs.EventDequeued")
+@Label("Event Dequeued")
+@Description("WFSRESULT taken from the queue of its service by a dispatch worker")
+final class EventDequeuedEvent extends XfsDispatchEvent {
+}
@@ -1,10 +1,18 @@
 package at.o2xfs.xfs.service.std;
 
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -14,7 +22,6 @@ import at.o2xfs.memory.core.Address;
 import at.o2xfs.memory.core.MemorySystem;
 import at.o2xfs.xfs.api.OpenRequest;
 import at.o2xfs.xfs.api.OpenResponse;
-import at.o2xfs.xfs.api.RequestId;
 import at.o2xfs.xfs.api.ServiceId;
 import at.o2xfs.xfs.api.VersionError;
 import at.o2xfs.xfs.api.WfsResult;
@@ -24,82 +31,214 @@ import at.o2xfs.xfs.api.XfsMessage;
 import at.o2xfs.xfs.api.XfsSystemEvent;
 import at.o2xfs.xfs.databind.XfsEnum32Wrapper;
 import at.o2xfs.xfs.service.api.OpenFuture;
+import at.o2xfs.xfs.service.api.XfsFuture;
 import at.o2xfs.xfs.service.api.XfsService;
+import at.o2xfs.xfs.service.std.DispatchRecorder.Stage;
+import at.o2xfs.xfs.service.std.journal.JournalRecorder;
+import at.o2xfs.xfs.service.std.metrics.DispatchMetrics;
 
 public class EventDispatcher implements WindowProcCallback {
 
 	private static final Logger LOG = LogManager.getLogger(EventDispatcher.class);
 
+	private static final int MESSAGE_OFFSET;
+	private static final XfsMessage[] MESSAGES;
+
+	static {
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (XfsMessage each : XfsMessage.values()) {
+			min = Math.min(min, each.getValue());
+			max = Math.max(max, each.getValue());
+		}
+		MESSAGE_OFFSET = (int) min;
+		MESSAGES = new XfsMessage[(int) (max - min) + 1];
+		for (XfsMessage each : XfsMessage.values()) {
+			MESSAGES[(int) each.getValue() - MESSAGE_OFFSET] = each;
+		}
+	}
+
 	private final XfsApi xfsApi;
 
 	private final MemorySystem memorySystem;
 
 	private final Map<ServiceId, StdXfsService> services;
 
-	private final Map<RequestId, XfsEventNotification> requests;
+	private final RequestRegistry requests;
 
-	private final List<XfsEvent> eventQueue;
+	private final DispatchEngine engine;
+	private final boolean ownsEngine;
+
+	private final XfsEventQueue eventQueue;
+	private final DispatchRecorder recorder;
+	private final DispatchMetrics metrics;
+	private final ResultReclaimer reclaimer;
 
 	private Address hWnd;
+	private volatile JournalRecorder journal = null;
+	private volatile boolean stopped = false;
 
 	private Thread thread = null;
 
+	/**
+	 * Creates a dispatcher with an engine of its own, which {@link #stop(Duration)} shuts down.
+	 */
 	public EventDispatcher(XfsApi xfsApi) {
+		this(xfsApi, new DispatchEngine(xfsApi, DispatcherConfig.defaults()), true);
+	}
+
+	/**
+	 * Creates a dispatcher on a shared engine, which the caller shuts down after {@link #stop(Duration)}.
+	 */
+	public EventDispatcher(XfsApi xfsApi, DispatchEngine engine) {
+		this(xfsApi, engine, false);
+	}
+
+	private EventDispatcher(XfsApi xfsApi, DispatchEngine engine, boolean ownsEngine) {
 		this.xfsApi = Objects.requireNonNull(xfsApi);
+		this.engine = Objects.requireNonNull(engine);
+		this.ownsEngine = ownsEngine;
+		DispatcherConfig config = engine.getConfig();
 		memorySystem = Objects.requireNonNull(xfsApi.getMemorySystem());
-		services = new HashMap<>();
-		requests = new HashMap<>();
-		eventQueue = new ArrayList<>();
+		services = new ConcurrentHashMap<>();
+		requests = new RequestRegistry(engine.getReclaimer(), engine.getTimer(), config.getOrphanGracePeriod());
+		recorder = engine.getRecorder();
+		metrics = engine.getMetrics();
+		reclaimer = engine.getReclaimer();
+		eventQueue = new XfsEventQueue(config.getQueueCapacity(), config.getWaitStrategy().get(),
+				pumpPolicy(config.getOverflowPolicy()), config.getSpillCapacity(), reclaimer, metrics.getOverflow(),
+				wfsResult -> true);
+		metrics.bindEventQueue(eventQueue::size, eventQueue::oldestAgeNanos);
 	}
 
-	private void closeAllServices() {
+	/**
+	 * Nothing but the message is known on the pump, so it cannot tell which events may be lost: dropping and
+	 * conflation are left to the service queues.
+	 */
+	private static OverflowPolicy pumpPolicy(OverflowPolicy policy) {
+		return OverflowPolicy.BLOCK.equals(policy) ? policy : OverflowPolicy.SPILL;
+	}
+
+	/**
+	 * Deregisters and closes all services concurrently and waits for them until the deadline has passed. Services
+	 * still closing by then are cancelled and reported as timed out.
+	 */
+	private CloseAllResult closeAllServices(Duration deadline) {
+		long started = System.nanoTime();
+		List<String> closed = new ArrayList<>();
+		Map<String, Throwable> failures = new LinkedHashMap<>();
+		List<String> timedOut = new ArrayList<>();
+		Map<String, XfsFuture<Void>> closing = new LinkedHashMap<>();
 		for (StdXfsService service : services.values()) {
 			try {
-				LOG.info("Closing service {} ...", service.getId());
-				service.close().get();
-			} catch (InterruptedException | XfsException e) {
-				LOG.error("Error closing service", e);
+				closing.put(service.getLogicalName(), service.close());
+			} catch (XfsException | RuntimeException e) {
+				failures.put(service.getLogicalName(), e);
 			}
 		}
+		List<CompletableFuture<Void>> completions = new ArrayList<>();
+		for (XfsFuture<Void> each : closing.values()) {
+			completions.add(AbstractXfsFuture.toCompletionStage(each).toCompletableFuture());
+		}
+		try {
+			CompletableFuture.allOf(completions.toArray(new CompletableFuture<?>[0])).get(deadline.toNanos(),
+					TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			LOG.debug("Not all services closed", e);
+		}
+		int i = 0;
+		for (Map.Entry<String, XfsFuture<Void>> each : closing.entrySet()) {
+			CompletableFuture<Void> completion = completions.get(i++);
+			if (!completion.isDone()) {
+				timedOut.add(each.getKey());
+				try {
+					each.getValue().cancel();
+				} catch (XfsException | RuntimeException e) {
+					LOG.debug(new ParameterizedMessage("Error cancelling close: {}", each.getKey()), e);
+				}
+			} else {
+				try {
+					completion.join();
+					closed.add(each.getKey());
+				} catch (CompletionException e) {
+					failures.put(each.getKey(), e.getCause());
+				}
+			}
+		}
+		CloseAllResult result = new CloseAllResult(closed, failures, timedOut,
+				Duration.ofNanos(System.nanoTime() - started));
+		if (!result.isAllClosed()) {
+			LOG.warn("Services not closed: failed={},timedOut={}", failures.keySet(), timedOut);
+		}
+		return result;
+	}
+
+	private void commit(XfsDispatchEvent jfrEvent, XfsMessage message, WfsResult wfsResult) {
+		ServiceId serviceId = wfsResult.getServiceId();
+		if (serviceId != null) {
+			StdXfsService service = services.get(serviceId);
+			jfrEvent.logicalName = service == null ? null : service.getLogicalName();
+			jfrEvent.serviceId = serviceId.getValue();
+		}
+		jfrEvent.command = message.name();
+		jfrEvent.requestId = wfsResult.getRequestId().getValue();
+		jfrEvent.errorCode = wfsResult.getErrorCode();
+		jfrEvent.commit();
 	}
 
 	private void dispatch() throws InterruptedException {
-		XfsEvent event;
-		synchronized (eventQueue) {
-			while (eventQueue.isEmpty()) {
-				LOG.debug("Waiting for events...");
-				eventQueue.wait();
+		XfsEvent event = eventQueue.take();
+		try {
+			event.setWfsResult(memorySystem.read(event.getAddress(), WfsResult.class));
+			recorder.record(Stage.RECEIVED, event.getMessage(), event.getWfsResult());
+			MessageReceivedEvent received = new MessageReceivedEvent();
+			if (received.shouldCommit()) {
+				commit(received, event.getMessage(), event.getWfsResult());
 			}
-			event = eventQueue.remove(0);
-		}
-		LOG.info("{}", event);
-		switch (event.getMessage()) {
-		case OPEN_COMPLETE:
-			notifyOperationComplete(event);
-			break;
-		case CLOSE_COMPLETE:
-		case LOCK_COMPLETE:
-		case UNLOCK_COMPLETE:
-		case REGISTER_COMPLETE:
-		case DEREGISTER_COMPLETE:
-		case GETINFO_COMPLETE:
-		case EXECUTE_COMPLETE:
-		case EXECUTE_EVENT:
-		case SERVICE_EVENT:
-		case USER_EVENT:
-			dispatchServiceEvent(event);
-			break;
-		case SYSTEM_EVENT:
-			dispatchSystemEvent(event);
-			break;
-		case TIMER_EVENT:
-			break;
+			JournalRecorder current = journal;
+			if (current != null) {
+				current.record(event.getMessage(), event.getEnqueued(), event.getWfsResult());
+			}
+			switch (event.getMessage()) {
+			case OPEN_COMPLETE:
+				notifyOperationComplete(event);
+				break;
+			case CLOSE_COMPLETE:
+			case LOCK_COMPLETE:
+			case UNLOCK_COMPLETE:
+			case REGISTER_COMPLETE:
+			case DEREGISTER_COMPLETE:
+			case GETINFO_COMPLETE:
+			case EXECUTE_COMPLETE:
+			case EXECUTE_EVENT:
+			case SERVICE_EVENT:
+			case USER_EVENT:
+				dispatchServiceEvent(event);
+				break;
+			case SYSTEM_EVENT:
+				dispatchSystemEvent(event);
+				break;
+			case TIMER_EVENT:
+				break;
+			}
+		} catch (RuntimeException e) {
+			recorder.record(Stage.FAILED, event.getMessage(), event.getWfsResult());
+			LOG.error(new ParameterizedMessage("Error dispatching event: {}, recent events:\n{}", event,
+					recorder.dump()), e);
+			if (event.getWfsResult() == null) {
+				// the result could not be read, so nothing downstream took it over
+				reclaimer.free(event.getAddress());
+			}
+		} finally {
+			eventQueue.release(event);
 		}
 	}
 
 	private void doRun() {
 		try {
-			while (!thread.isInterrupted()) {
+			while (!Thread.currentThread().isInterrupted()) {
 				dispatch();
 			}
 		} catch (InterruptedException e) {
@@ -109,18 +248,13 @@ public class EventDispatcher implements WindowProcCallback {
 	}
 
 	private void dispatchServiceEvent(XfsEvent event) {
-		synchronized (services) {
-			StdXfsService service = services.get(event.getWfsResult().getServiceId());
-			if (service == null) {
-				LOG.warn("Unknown service: msg={},wfsResult={}", event.getMessage(), event.getWfsResult());
-				try {
-					xfsApi.freeResult(event.getAddress());
-				} catch (XfsException e) {
-					LOG.error(new ParameterizedMessage("Error freeing WfsResult: {}", event.getAddress()), e);
-				}
-			} else {
-				service.getDispatcher().offer(event);
-			}
+		StdXfsService service = services.get(event.getWfsResult().getServiceId());
+		if (service == null) {
+			recorder.record(Stage.DROPPED, event.getMessage(), event.getWfsResult());
+			LOG.warn("Unknown service: msg={},wfsResult={}", event.getMessage(), event.getWfsResult());
+			reclaimer.free(event.getAddress());
+		} else {
+			service.getDispatcher().offer(event.getMessage(), event.getAddress(), event.getWfsResult());
 		}
 	}
 
@@ -131,93 +265,146 @@ public class EventDispatcher implements WindowProcCallback {
 				VersionError versionError = memorySystem.read(event.getWfsResult().getBuffer(), VersionError.class);
 				LOG.info(versionError);
 			} finally {
-				try {
-					xfsApi.freeResult(event.getAddress());
-				} catch (XfsException e) {
-					LOG.error(new ParameterizedMessage("Error freeing WfsResult: {}", event.getAddress()), e);
-				}
+				reclaimer.free(event.getAddress());
 			}
 		} else {
 			dispatchServiceEvent(event);
 		}
 	}
 
-	private void offer(XfsEvent event) {
-		synchronized (eventQueue) {
-			eventQueue.add(event);
-			eventQueue.notifyAll();
-			if (thread == null || !thread.isAlive()) {
-				thread = new Thread(() -> doRun());
-				thread.start();
-			}
-		}
-	}
-
 	private void notifyOperationComplete(XfsEvent event) {
-		XfsEventNotification listener;
-		LOG.debug("notifyOperationComplete: event={},requests={}", event, requests);
+		LOG.debug("notifyOperationComplete: event={}", event);
+		boolean free = true;
 		try {
-			synchronized (requests) {
-				listener = requests.remove(event.getWfsResult().getRequestId());
-			}
-			LOG.debug("listener: {}", listener);
-			listener.fireOperationCompleteEvent(event.getWfsResult());
+			free = requests.fireOperationCompleteEvent(event.getAddress(), event.getWfsResult());
 		} finally {
-			try {
-				xfsApi.freeResult(event.getAddress());
-			} catch (XfsException e) {
-				LOG.error(new ParameterizedMessage("Error freeing WfsResult: {}", event), e);
+			if (free) {
+				reclaimer.free(event.getAddress());
 			}
 		}
 		if (XfsMessage.CLOSE_COMPLETE.equals(event.getMessage())) {
-			synchronized (services) {
-				services.remove(event.getWfsResult().getServiceId());
-			}
+			services.remove(event.getWfsResult().getServiceId());
 		}
 	}
 
 	public <E extends XfsService> OpenFuture<E> open(OpenParam request, Class<E> serviceClass) throws XfsException {
-		StdOpenFuture<?> result = null;
-		StdXfsService service;
-		OpenResponse response;
-		synchronized (requests) {
-			response = xfsApi.asyncOpen(new OpenRequest.Builder(request.getLogicalName(), hWnd)
-					.appHandle(request.getAppHandle()).appId(request.getAppId()).traceLevel(request.getTraceLevel())
-					.timeOut(request.getTimeOut()).srvcVersionsRequired(request.getSrvcVersionsRequired()).build());
-			service = new XfsServiceFactory(xfsApi, hWnd).create(request.getLogicalName(), serviceClass, response);
-			result = new StdOpenFuture<>(service, response.getRequestId());
-			requests.put(response.getRequestId(), result);
-			requests.notifyAll();
-			synchronized (services) {
-				services.put(response.getServiceId(), service);
-			}
-		}
-		return (OpenFuture<E>) result;
+		return (OpenFuture<E>) openService(request, serviceClass);
+	}
+
+	StdOpenFuture<?> openService(OpenParam request, Class<? extends XfsService> serviceClass) throws XfsException {
+		long submitted = System.nanoTime();
+		RequestTrace trace = RequestTrace.begin(metrics.service(request.getLogicalName()), "OPEN");
+		OpenResponse response = xfsApi.asyncOpen(new OpenRequest.Builder(request.getLogicalName(), hWnd)
+				.appHandle(request.getAppHandle()).appId(request.getAppId()).traceLevel(request.getTraceLevel())
+				.timeOut(request.getTimeOut()).srvcVersionsRequired(request.getSrvcVersionsRequired()).build());
+		StdXfsService service = new XfsServiceFactory(xfsApi, hWnd, engine).create(request.getLogicalName(),
+				serviceClass, response);
+		StdOpenFuture<?> result = new StdOpenFuture<>(service, response.getRequestId(), submitted);
+		services.put(response.getServiceId(), service);
+		requests.register(response.getRequestId(), trace.submitted(response.getRequestId(), result));
+		return result;
+	}
+
+	/**
+	 * Records every message received from now on, or stops recording if {@code null}. Returns the previous recorder,
+	 * which the caller has to close.
+	 */
+	public JournalRecorder setJournal(JournalRecorder journal) {
+		JournalRecorder result = this.journal;
+		this.journal = journal;
+		return result;
 	}
 
 	public void setWindowHandle(Address hWnd) {
 		this.hWnd = hWnd;
 	}
 
+	public void start() {
+		synchronized (this) {
+			if (thread == null || !thread.isAlive()) {
+				thread = new Thread(() -> doRun(), "EventDispatcher");
+				thread.start();
+			}
+		}
+	}
+
 	public void stop() throws InterruptedException {
-		closeAllServices();
-		if (thread != null) {
-			thread.interrupt();
-			thread.join();
+		stop(engine.getConfig().getShutdownDeadline());
+	}
+
+	/**
+	 * Returns the result factory of the open service with the given id.
+	 */
+	public Optional<XfsResultFactory> getResultFactory(ServiceId serviceId) {
+		return Optional.ofNullable(services.get(serviceId)).map(StdXfsService::getResultFactory);
+	}
+
+	/**
+	 * Closes all services, waiting at most the given deadline for them, then stops dispatching. Events not dispatched
+	 * by then are handed to the {@link ResultReclaimer}, so they are freed once the engine shuts down; so are messages
+	 * received afterwards.
+	 */
+	public CloseAllResult stop(Duration deadline) throws InterruptedException {
+		CloseAllResult result = closeAllServices(deadline);
+		Thread current;
+		synchronized (this) {
+			current = thread;
+			thread = null;
+			stopped = true;
+		}
+		if (current != null) {
+			current.interrupt();
+			current.join();
+		}
+		discardQueued();
+		for (StdXfsService each : services.values()) {
+			each.getDispatcher().discard();
 		}
+		if (ownsEngine) {
+			engine.shutdown();
+		}
+		return result;
 	}
 
+	/**
+	 * Frees the events received but not dispatched, once the dispatch thread is gone. Synchronized, as both
+	 * {@link #stop(Duration)} and the message pump may call it.
+	 */
+	private synchronized void discardQueued() {
+		int discarded = eventQueue.discard();
+		if (discarded > 0) {
+			LOG.info("Discarded {} undispatched event(s)", discarded);
+		}
+	}
+
+	private static XfsMessage toMessage(int msg) {
+		int index = msg - MESSAGE_OFFSET;
+		if (index < 0 || index >= MESSAGES.length) {
+			return null;
+		}
+		return MESSAGES[index];
+	}
+
+	/**
+	 * Runs on the message pump thread and therefore only resolves the message and hands the {@code WFSRESULT}
+	 * address over to the dispatch thread. The result is read there, its payload by the owning service's worker.
+	 */
 	@Override
 	public boolean windowProc(int msg, byte[] lParam) {
-		XfsMessage message = XfsEnum32Wrapper.of(msg, XfsMessage.class);
-		Address address = Address.build(lParam);
-		LOG.debug("message={},address={}", message, address);
+		XfsMessage message = toMessage(msg);
 		if (message == null || XfsMessage.TIMER_EVENT.equals(message)) {
 			LOG.warn("Unexpected message: msg={},lParam={}", msg, lParam);
 			return false;
 		}
-		WfsResult wfsResult = memorySystem.read(address, WfsResult.class);
-		offer(XfsEvent.build(message, address, wfsResult));
+		Address address = Address.build(lParam);
+		if (stopped) {
+			reclaimer.free(address);
+			return true;
+		}
+		eventQueue.offer(message, address, null);
+		if (stopped) {
+			discardQueued();
+		}
 		return true;
 	}
 }
@@ -0,0 +1,11 @@
+package at.o2xfs.xfs.service.std;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("at.o2xfs.xfs.EventEnqueued")
+@Label("Event Enqueued")
+@Description("WFSRESULT routed into the queue of its service")
+final class EventEnqueuedEvent extends XfsDispatchEvent {
+}
@@ -0,0 +1,89 @@
+package at.o2xfs.xfs.service.std;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import at.o2xfs.xfs.api.XfsException;
+import at.o2xfs.xfs.service.api.XfsFuture;
+
+/**
+ * Caches the result of a single info command. A cached value is served while it is younger than the maximum
+ * staleness and no {@link #invalidate()} happened since the query was submitted; results of queries overtaken by an
+ * invalidation are handed to the caller but not cached.
+ */
+public final class InfoCache<T> {
+
+	@FunctionalInterface
+	public interface Loader<T> {
+
+		XfsFuture<? extends T> load() throws XfsException;
+	}
+
+	private static final class Entry<T> {
+
+		private final T value;
+		private final long loadedAt;
+		private final long generation;
+
+		private Entry(T value, long loadedAt, long generation) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+			this.generation = generation;
+		}
+	}
+
+	private final AtomicLong generation;
+	private volatile long maxStalenessNanos;
+	private volatile Entry<T> entry;
+
+	public InfoCache(Duration maxStaleness) {
+		generation = new AtomicLong();
+		setMaxStaleness(maxStaleness);
+	}
+
+	public void setMaxStaleness(Duration maxStaleness) {
+		if (maxStaleness.isNegative()) {
+			throw new IllegalArgumentException("maxStaleness: " + maxStaleness);
+		}
+		maxStalenessNanos = maxStaleness.toNanos();
+		invalidate();
+	}
+
+	public boolean isEnabled() {
+		return maxStalenessNanos > 0L;
+	}
+
+	public XfsFuture<? extends T> get(Loader<T> loader) throws XfsException {
+		Objects.requireNonNull(loader);
+		if (!isEnabled()) {
+			return loader.load();
+		}
+		long now = System.nanoTime();
+		Entry<T> current = entry;
+		if (current != null && current.generation == generation.get() && now - current.loadedAt < maxStalenessNanos) {
+			return new CompletedXfsFuture<>(current.value);
+		}
+		long expected = generation.get();
+		XfsFuture<? extends T> result = loader.load();
+		AbstractXfsFuture.toCompletionStage(result).thenAccept(value -> {
+			if (generation.get() == expected) {
+				entry = new Entry<>(value, now, expected);
+			}
+		});
+		return result;
+	}
+
+	public void invalidate() {
+		generation.incrementAndGet();
+		entry = null;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("maxStalenessNanos", maxStalenessNanos)
+				.append("generation", generation.get()).append("cached", entry != null).toString();
+	}
+}
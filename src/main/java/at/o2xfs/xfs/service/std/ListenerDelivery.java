@@ -0,0 +1,150 @@
+package at.o2xfs.xfs.service.std;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import at.o2xfs.xfs.service.std.metrics.DispatchMetrics;
+
+/**
+ * Runs listener callbacks off the dispatch workers, according to the configured {@link ListenerDeliveryMode}.
+ */
+public final class ListenerDelivery {
+
+	private static final Logger LOG = LogManager.getLogger(ListenerDelivery.class);
+
+	private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+	private final ListenerDeliveryMode mode;
+	private final Executor executor;
+	private final Optional<ExecutorService> ownedExecutor;
+	private final long slowThresholdNanos;
+	private final int batchSize;
+	private final int mailboxCapacity;
+	private final OverflowPolicy overflowPolicy;
+	private final DispatchMetrics metrics;
+	private final ResultReclaimer reclaimer;
+
+	ListenerDelivery(DispatcherConfig config, DispatchMetrics metrics, ResultReclaimer reclaimer) {
+		this.metrics = Objects.requireNonNull(metrics);
+		this.reclaimer = Objects.requireNonNull(reclaimer);
+		slowThresholdNanos = config.getSlowListenerThreshold().toNanos();
+		batchSize = config.getBatchSize();
+		mailboxCapacity = config.getMailboxCapacity();
+		overflowPolicy = config.getOverflowPolicy();
+		Optional<ExecutorService> virtualThreads = Optional.empty();
+		if (ListenerDeliveryMode.VIRTUAL_THREAD.equals(config.getListenerDelivery())) {
+			virtualThreads = newVirtualThreadPerTaskExecutor();
+		}
+		if (ListenerDeliveryMode.INLINE.equals(config.getListenerDelivery())) {
+			mode = ListenerDeliveryMode.INLINE;
+			executor = Runnable::run;
+			ownedExecutor = Optional.empty();
+		} else if (virtualThreads.isPresent()) {
+			mode = ListenerDeliveryMode.VIRTUAL_THREAD;
+			executor = virtualThreads.get();
+			ownedExecutor = virtualThreads;
+		} else if (config.getListenerExecutor().isPresent()) {
+			mode = ListenerDeliveryMode.EXECUTOR;
+			executor = config.getListenerExecutor().get();
+			ownedExecutor = Optional.empty();
+		} else {
+			mode = ListenerDeliveryMode.EXECUTOR;
+			ExecutorService pool = Executors.newCachedThreadPool(defaultThreadFactory());
+			executor = pool;
+			ownedExecutor = Optional.of(pool);
+		}
+	}
+
+	/**
+	 * Looks up {@code Executors.newVirtualThreadPerTaskExecutor()} at runtime, as the library is compiled for a
+	 * release without virtual threads.
+	 */
+	private static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return Optional.of((ExecutorService) method.invoke(null));
+		} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			LOG.warn("Virtual threads not available, delivering to listeners on a thread pool: {}", e.toString());
+			return Optional.empty();
+		}
+	}
+
+	private static ThreadFactory defaultThreadFactory() {
+		String prefix = "xfs-listener-" + POOL_NUMBER.incrementAndGet() + "-";
+		AtomicInteger threadNumber = new AtomicInteger();
+		return r -> {
+			Thread thread = new Thread(r, prefix + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	Executor getExecutor() {
+		return executor;
+	}
+
+	int getBatchSize() {
+		return batchSize;
+	}
+
+	int getMailboxCapacity() {
+		return mailboxCapacity;
+	}
+
+	OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	DispatchMetrics getMetrics() {
+		return metrics;
+	}
+
+	ResultReclaimer getReclaimer() {
+		return reclaimer;
+	}
+
+	long getSlowThresholdNanos() {
+		return slowThresholdNanos;
+	}
+
+	boolean isInline() {
+		return ListenerDeliveryMode.INLINE.equals(mode);
+	}
+
+	public ListenerDeliveryMode getMode() {
+		return mode;
+	}
+
+	public <L> ListenerMailbox<L> mailbox(L listener) {
+		return new ListenerMailbox<>(this, listener);
+	}
+
+	public <L> Listeners<L> listeners() {
+		return new Listeners<>(this);
+	}
+
+	/**
+	 * Stops the owned executor after the callbacks already delivered have run.
+	 */
+	void shutdown() throws InterruptedException {
+		if (ownedExecutor.isPresent()) {
+			ExecutorService pool = ownedExecutor.get();
+			pool.shutdown();
+			if (!pool.awaitTermination(10L, TimeUnit.SECONDS)) {
+				LOG.warn("Listener delivery did not terminate in time");
+				pool.shutdownNow();
+			}
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package at.o2xfs.xfs.service.std;
+
+/**
+ * Where listener callbacks run. Apart from {@link #INLINE}, each registered listener has its own serial mailbox, so
+ * it sees its events in order, but never holds up completions or other listeners.
+ */
+public enum ListenerDeliveryMode {
+
+	/**
+	 * On the dispatch worker of the service, as part of dispatching the event.
+	 */
+	INLINE,
+
+	/**
+	 * On the configured listener executor, or on a pool of daemon threads owned by the engine.
+	 */
+	EXECUTOR,
+
+	/**
+	 * On a new virtual thread per mailbox drain. Requires a runtime with virtual threads and falls back to
+	 * {@link #EXECUTOR} otherwise.
+	 */
+	VIRTUAL_THREAD
+}
@@ -0,0 +1,213 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+import at.o2xfs.memory.core.Address;
+
+/**
+ * Serial mailbox of a single listener. Callbacks are run one at a time, in the order they were delivered, on the
+ * executor of the {@link ListenerDelivery}.
+ * <p>
+ * The mailbox holds about {@link DispatcherConfig#getMailboxCapacity()} callbacks. Once full, callbacks that must
+ * not be lost, such as intermediate events, completions and system errors, wait for the listener to catch up, which
+ * in turn backs up the dispatch queues. Other notifications, such as device status changes, are dropped unless the
+ * overflow policy is {@link OverflowPolicy#BLOCK}.
+ * Callbacks delivered by the listener itself, from within a callback, never wait.
+ */
+public final class ListenerMailbox<L> implements Runnable {
+
+	private static final Logger LOG = LogManager.getLogger(ListenerMailbox.class);
+
+	private static final class Delivery<L> {
+
+		private final Consumer<? super L> callback;
+		private final Address owned;
+
+		private Delivery(Consumer<? super L> callback, Address owned) {
+			this.callback = callback;
+			this.owned = owned;
+		}
+	}
+
+	private final ListenerDelivery delivery;
+	private final L listener;
+	private final Queue<Delivery<L>> pending;
+	private final AtomicInteger backlog;
+	private final AtomicBoolean scheduled;
+
+	private boolean slow = false;
+	private volatile Thread runner = null;
+	private volatile int waiting = 0;
+
+	ListenerMailbox(ListenerDelivery delivery, L listener) {
+		this.delivery = Objects.requireNonNull(delivery);
+		this.listener = Objects.requireNonNull(listener);
+		pending = new ConcurrentLinkedQueue<>();
+		backlog = new AtomicInteger();
+		scheduled = new AtomicBoolean(false);
+	}
+
+	private void invoke(Consumer<? super L> callback, Address owned) {
+		long start = System.nanoTime();
+		try {
+			callback.accept(listener);
+		} catch (RuntimeException e) {
+			LOG.error(new ParameterizedMessage("Error delivering to listener: {}", listener), e);
+		} finally {
+			if (owned != null) {
+				delivery.getReclaimer().free(owned);
+			}
+			checkSlow(System.nanoTime() - start);
+		}
+	}
+
+	private void checkSlow(long elapsed) {
+		if (elapsed < delivery.getSlowThresholdNanos()) {
+			slow = false;
+			return;
+		}
+		delivery.getMetrics().slowListenerCall();
+		if (!slow) {
+			slow = true;
+			LOG.warn("Slow listener: listener={},elapsed={}ms,backlog={}", listener,
+					TimeUnit.NANOSECONDS.toMillis(elapsed), backlog.get());
+		}
+	}
+
+	/**
+	 * Returns {@code false} if the callback is to be dropped.
+	 */
+	private boolean awaitCapacity(boolean droppable) {
+		if (backlog.get() < delivery.getMailboxCapacity() || Thread.currentThread() == runner) {
+			return true;
+		} else if (droppable && !OverflowPolicy.BLOCK.equals(delivery.getOverflowPolicy())) {
+			return false;
+		}
+		delivery.getMetrics().getOverflow().blocked();
+		boolean interrupted = false;
+		synchronized (this) {
+			waiting++;
+			try {
+				while (backlog.get() >= delivery.getMailboxCapacity()) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			} finally {
+				waiting--;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return true;
+	}
+
+	private void enqueue(Delivery<L> each) {
+		backlog.incrementAndGet();
+		delivery.getMetrics().listenerBacklog(1, each.owned != null);
+		pending.add(each);
+		schedule();
+	}
+
+	private Delivery<L> dequeue() {
+		Delivery<L> result = pending.poll();
+		if (result != null) {
+			delivery.getMetrics().listenerBacklog(-1, result.owned != null);
+			if (backlog.decrementAndGet() < delivery.getMailboxCapacity() && waiting > 0) {
+				synchronized (this) {
+					notifyAll();
+				}
+			}
+		}
+		return result;
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			try {
+				delivery.getExecutor().execute(this);
+			} catch (RejectedExecutionException e) {
+				LOG.warn("Listener delivery rejected, delivering on the caller: listener={}", listener);
+				run();
+			}
+		}
+	}
+
+	public L getListener() {
+		return listener;
+	}
+
+	/**
+	 * Delivers a callback that must not be lost, waiting while the mailbox is full.
+	 */
+	public void deliver(Consumer<? super L> callback) {
+		deliver(callback, null);
+	}
+
+	/**
+	 * Delivers a callback that reads from the given {@code WFSRESULT}, which is freed once the callback has run.
+	 */
+	void deliver(Consumer<? super L> callback, Address owned) {
+		Objects.requireNonNull(callback);
+		if (delivery.isInline()) {
+			invoke(callback, owned);
+			return;
+		}
+		awaitCapacity(false);
+		enqueue(new Delivery<>(callback, owned));
+	}
+
+	/**
+	 * Delivers a notification, which is dropped if the mailbox is full and the overflow policy does not block.
+	 *
+	 * @return {@code false} if the notification was dropped
+	 */
+	boolean offer(Consumer<? super L> callback) {
+		Objects.requireNonNull(callback);
+		if (delivery.isInline()) {
+			invoke(callback, null);
+			return true;
+		} else if (!awaitCapacity(true)) {
+			delivery.getMetrics().getOverflow().dropped();
+			return false;
+		}
+		enqueue(new Delivery<>(callback, null));
+		return true;
+	}
+
+	int getBacklog() {
+		return backlog.get();
+	}
+
+	@Override
+	public void run() {
+		runner = Thread.currentThread();
+		try {
+			int remaining = delivery.getBatchSize();
+			Delivery<L> each;
+			while (remaining-- > 0 && (each = dequeue()) != null) {
+				invoke(each.callback, each.owned);
+			}
+		} finally {
+			runner = null;
+		}
+		scheduled.set(false);
+		if (!pending.isEmpty()) {
+			schedule();
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Copy-on-write list of listeners, each with its own {@link ListenerMailbox}.
+ */
+public final class Listeners<L> {
+
+	private final ListenerDelivery delivery;
+	private final List<ListenerMailbox<L>> mailboxes;
+
+	Listeners(ListenerDelivery delivery) {
+		this.delivery = Objects.requireNonNull(delivery);
+		mailboxes = new CopyOnWriteArrayList<>();
+	}
+
+	public void add(L listener) {
+		mailboxes.add(delivery.mailbox(listener));
+	}
+
+	public void remove(L listener) {
+		for (ListenerMailbox<L> each : mailboxes) {
+			if (each.getListener().equals(listener)) {
+				mailboxes.remove(each);
+				return;
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		return mailboxes.isEmpty();
+	}
+
+	/**
+	 * Notifies every listener of an event that must not be lost, waiting while a listener's mailbox is full.
+	 */
+	public void deliver(Consumer<? super L> callback) {
+		for (ListenerMailbox<L> each : mailboxes) {
+			each.deliver(callback);
+		}
+	}
+
+	/**
+	 * Notifies every listener. A listener whose mailbox is full misses the notification, unless the overflow policy is
+	 * {@link OverflowPolicy#BLOCK}.
+	 */
+	public void fire(Consumer<? super L> callback) {
+		for (ListenerMailbox<L> each : mailboxes) {
+			each.offer(callback);
+		}
+	}
+}
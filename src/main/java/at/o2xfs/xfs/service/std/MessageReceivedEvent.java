@@ -0,0 +1,11 @@
+package at.o2xfs.xfs.service.std;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("at.o2xfs.xfs.MessageReceived")
+@Label("Message Received")
+@Description("XFS message read by the event dispatcher")
+final class MessageReceivedEvent extends XfsDispatchEvent {
+}
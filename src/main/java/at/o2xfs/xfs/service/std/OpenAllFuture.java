@@ -0,0 +1,82 @@
+package at.o2xfs.xfs.service.std;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+import at.o2xfs.xfs.api.XfsException;
+import at.o2xfs.xfs.service.api.XfsService;
+
+/**
+ * Completes with an {@link OpenAllResult} once every service of an {@code openAll} is open or failed. The future
+ * itself never fails, failures of single services are reported in the result.
+ */
+public class OpenAllFuture extends AbstractXfsFuture<OpenAllResult> {
+
+	private static final Logger LOG = LogManager.getLogger(OpenAllFuture.class);
+
+	private final long started;
+	private final Map<String, ServiceOpenResult> results;
+	private final Map<String, StdOpenFuture<?>> pending;
+	private final AtomicInteger remaining;
+	private final Iterable<String> logicalNames;
+
+	OpenAllFuture(Iterable<String> logicalNames, int count) {
+		this.logicalNames = logicalNames;
+		started = System.nanoTime();
+		results = new ConcurrentHashMap<>();
+		pending = new ConcurrentHashMap<>();
+		remaining = new AtomicInteger(count);
+		if (count == 0) {
+			complete(new OpenAllResult(Map.of(), Duration.ZERO));
+		}
+	}
+
+	private void done(ServiceOpenResult result) {
+		results.put(result.getLogicalName(), result);
+		if (remaining.decrementAndGet() == 0) {
+			Map<String, ServiceOpenResult> ordered = new LinkedHashMap<>();
+			for (String each : logicalNames) {
+				ordered.put(each, results.get(each));
+			}
+			complete(new OpenAllResult(ordered, Duration.ofNanos(System.nanoTime() - started)));
+		}
+	}
+
+	void failed(String logicalName, Throwable failure) {
+		done(new ServiceOpenResult(logicalName, Optional.empty(), Optional.of(failure), Optional.empty(),
+				Optional.empty()));
+	}
+
+	void submitted(String logicalName, StdOpenFuture<?> future) {
+		pending.put(logicalName, future);
+		future.toCompletionStage().whenComplete((service, exception) -> {
+			pending.remove(logicalName);
+			Throwable failure = exception instanceof CompletionException ? exception.getCause() : exception;
+			done(new ServiceOpenResult(logicalName, Optional.<XfsService>ofNullable(service),
+					Optional.ofNullable(failure), future.getOpenDuration(), future.getRegisterDuration()));
+		});
+	}
+
+	/**
+	 * Cancels every open that is still pending.
+	 */
+	@Override
+	public void cancel() {
+		for (Map.Entry<String, StdOpenFuture<?>> each : pending.entrySet()) {
+			try {
+				each.getValue().cancel();
+			} catch (XfsException e) {
+				LOG.error(new ParameterizedMessage("Error cancelling open: {}", each.getKey()), e);
+			}
+		}
+	}
+}
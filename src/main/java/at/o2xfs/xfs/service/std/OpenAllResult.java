@@ -0,0 +1,58 @@
+package at.o2xfs.xfs.service.std;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import at.o2xfs.xfs.service.api.XfsService;
+
+public final class OpenAllResult {
+
+	private final Map<String, ServiceOpenResult> results;
+	private final Duration elapsed;
+
+	OpenAllResult(Map<String, ServiceOpenResult> results, Duration elapsed) {
+		this.results = Collections.unmodifiableMap(new LinkedHashMap<>(results));
+		this.elapsed = Objects.requireNonNull(elapsed);
+	}
+
+	public Map<String, ServiceOpenResult> getResults() {
+		return results;
+	}
+
+	public Map<String, XfsService> getServices() {
+		Map<String, XfsService> result = new LinkedHashMap<>();
+		for (ServiceOpenResult each : results.values()) {
+			each.getService().ifPresent(service -> result.put(each.getLogicalName(), service));
+		}
+		return result;
+	}
+
+	public Map<String, Throwable> getFailures() {
+		Map<String, Throwable> result = new LinkedHashMap<>();
+		for (ServiceOpenResult each : results.values()) {
+			each.getFailure().ifPresent(failure -> result.put(each.getLogicalName(), failure));
+		}
+		return result;
+	}
+
+	public boolean isAllOpen() {
+		return results.values().stream().allMatch(ServiceOpenResult::isOpen);
+	}
+
+	/**
+	 * Time from submitting the first {@code WFSAsyncOpen} until the last service was open or failed.
+	 */
+	public Duration getElapsed() {
+		return elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("results", results).append("elapsed", elapsed).toString();
+	}
+}
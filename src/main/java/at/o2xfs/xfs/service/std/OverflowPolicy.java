@@ -0,0 +1,32 @@
+package at.o2xfs.xfs.service.std;
+
+/**
+ * What a dispatcher queue does with an event that arrives while the queue is full.
+ * <p>
+ * Completions, intermediate events, system events and the service and user events a service marks as critical are
+ * never dropped or conflated: unless the policy is {@link #BLOCK}, they are spilled to the overflow buffer, and the
+ * producer waits only if that is full as well. The message pump cannot tell events apart, so it only blocks or spills.
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Wait until the consumer frees a slot, stalling the producer (the message pump or the event dispatcher).
+	 */
+	BLOCK,
+
+	/**
+	 * Free non-critical events right away.
+	 */
+	DROP,
+
+	/**
+	 * Replace a non-critical event still waiting in the overflow buffer with a newer one of the same kind, spill
+	 * otherwise.
+	 */
+	CONFLATE,
+
+	/**
+	 * Keep events in a bounded overflow buffer; non-critical events are dropped only if that is full.
+	 */
+	SPILL
+}
@@ -0,0 +1,11 @@
+package at.o2xfs.xfs.service.std;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("at.o2xfs.xfs.RequestCompleted")
+@Label("Request Completed")
+@Description("XFS request from submission until its future was completed")
+final class RequestCompletedEvent extends XfsDispatchEvent {
+}
@@ -0,0 +1,214 @@
+package at.o2xfs.xfs.service.std;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.xfs.api.RequestId;
+import at.o2xfs.xfs.api.WfsResult;
+
+/**
+ * Lock-free map of outstanding requests.
+ * <p>
+ * The asynchronous XFS call returns the {@link RequestId} only after the request has been submitted, so its events
+ * may be dispatched before the caller had a chance to {@link #register(RequestId, XfsEventNotification)} it. Such
+ * events are parked together with their {@code WFSRESULT} and replayed in order by the registering thread, outside of
+ * any lock; events arriving during the replay are parked as well and replayed after the earlier ones. The
+ * {@code fire} methods return {@code false} in that case, meaning the buffer must not be freed by the caller. The
+ * same applies to intermediate events handed over to a listener mailbox.
+ * <p>
+ * Parked events of a request that is never registered, e.g. the late completion of a request that was already
+ * reaped, are freed after the grace period.
+ */
+final class RequestRegistry {
+
+	private static final Logger LOG = LogManager.getLogger(RequestRegistry.class);
+
+	private static final class EarlyEvent {
+
+		private final boolean completion;
+		private final Address address;
+		private final WfsResult wfsResult;
+
+		private EarlyEvent(boolean completion, Address address, WfsResult wfsResult) {
+			this.completion = completion;
+			this.address = address;
+			this.wfsResult = wfsResult;
+		}
+	}
+
+	private final class EarlyEvents {
+
+		private List<EarlyEvent> events = new ArrayList<>(2);
+		private boolean replaying = false;
+		private boolean closed = false;
+
+		synchronized boolean add(boolean completion, Address address, WfsResult wfsResult) {
+			if (closed) {
+				return false;
+			}
+			events.add(new EarlyEvent(completion, address, wfsResult));
+			return true;
+		}
+
+		synchronized void reap(RequestId requestId) {
+			if (closed || replaying) {
+				return;
+			}
+			LOG.warn("Reaping {} unclaimed event(s): requestId={}", events.size(), requestId);
+			for (EarlyEvent each : events) {
+				reclaimer.free(each.address);
+			}
+			events.clear();
+			closed = true;
+			entries.remove(requestId, this);
+		}
+
+		/**
+		 * Claims the parked events for replay, so the reap leaves them alone. Fails if they were reaped already.
+		 */
+		synchronized boolean claim() {
+			if (closed) {
+				return false;
+			}
+			replaying = true;
+			return true;
+		}
+
+		/**
+		 * Takes the events parked so far, or hands the request over to the notification if there are none left.
+		 */
+		private synchronized List<EarlyEvent> next(RequestId requestId, XfsEventNotification notification,
+				boolean complete) {
+			replaying = true;
+			if (events.isEmpty()) {
+				closed = true;
+				if (complete) {
+					entries.remove(requestId, this);
+				} else {
+					entries.replace(requestId, this, notification);
+				}
+				return null;
+			}
+			List<EarlyEvent> result = events;
+			events = new ArrayList<>(2);
+			return result;
+		}
+
+		void replay(RequestId requestId, XfsEventNotification notification) {
+			boolean complete = false;
+			List<EarlyEvent> batch;
+			while ((batch = next(requestId, notification, complete)) != null) {
+				for (EarlyEvent each : batch) {
+					boolean free = true;
+					try {
+						if (each.completion) {
+							complete = true;
+							notification.fireOperationCompleteEvent(each.wfsResult);
+						} else {
+							free = notification.fireIntermediateEvent(each.address, each.wfsResult);
+						}
+					} catch (RuntimeException e) {
+						LOG.error(new ParameterizedMessage("Error replaying event: requestId={}", requestId), e);
+					} finally {
+						if (free) {
+							reclaimer.free(each.address);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private final ResultReclaimer reclaimer;
+	private final DeadlineTimer timer;
+	private final Duration gracePeriod;
+	private final ConcurrentMap<RequestId, Object> entries;
+
+	RequestRegistry(ResultReclaimer reclaimer, DeadlineTimer timer, Duration gracePeriod) {
+		this.reclaimer = Objects.requireNonNull(reclaimer);
+		this.timer = Objects.requireNonNull(timer);
+		this.gracePeriod = Objects.requireNonNull(gracePeriod);
+		entries = new ConcurrentHashMap<>();
+	}
+
+	private boolean defer(RequestId requestId, Object entry, boolean completion, Address address,
+			WfsResult wfsResult) {
+		EarlyEvents earlyEvents;
+		if (entry == null) {
+			earlyEvents = new EarlyEvents();
+			if (entries.putIfAbsent(requestId, earlyEvents) != null) {
+				return false;
+			}
+			EarlyEvents unclaimed = earlyEvents;
+			timer.schedule(() -> unclaimed.reap(requestId), gracePeriod);
+		} else {
+			earlyEvents = (EarlyEvents) entry;
+		}
+		return earlyEvents.add(completion, address, wfsResult);
+	}
+
+	boolean fireIntermediateEvent(Address address, WfsResult wfsResult) {
+		RequestId requestId = wfsResult.getRequestId();
+		while (true) {
+			Object entry = entries.get(requestId);
+			if (entry instanceof XfsEventNotification) {
+				return ((XfsEventNotification) entry).fireIntermediateEvent(address, wfsResult);
+			} else if (defer(requestId, entry, false, address, wfsResult)) {
+				return false;
+			}
+		}
+	}
+
+	boolean fireOperationCompleteEvent(Address address, WfsResult wfsResult) {
+		RequestId requestId = wfsResult.getRequestId();
+		while (true) {
+			Object entry = entries.get(requestId);
+			if (entry instanceof XfsEventNotification) {
+				if (entries.remove(requestId, entry)) {
+					((XfsEventNotification) entry).fireOperationCompleteEvent(wfsResult);
+					return true;
+				}
+			} else if (defer(requestId, entry, true, address, wfsResult)) {
+				return false;
+			}
+		}
+	}
+
+	void register(RequestId requestId, XfsEventNotification notification) {
+		Objects.requireNonNull(notification);
+		while (true) {
+			Object previous = entries.putIfAbsent(requestId, notification);
+			if (previous == null) {
+				return;
+			} else if (!(previous instanceof EarlyEvents)) {
+				throw new IllegalStateException("Duplicate RequestId: " + requestId);
+			}
+			EarlyEvents earlyEvents = (EarlyEvents) previous;
+			if (earlyEvents.claim()) {
+				earlyEvents.replay(requestId, notification);
+				return;
+			}
+			// reaped in the meantime, which removed the entry along with its events
+		}
+	}
+
+	/**
+	 * Removes the request if it is still registered with the given notification, and returns whether it was.
+	 */
+	boolean reap(RequestId requestId, XfsEventNotification notification) {
+		return entries.remove(requestId, notification);
+	}
+
+	int size() {
+		return entries.size();
+	}
+}
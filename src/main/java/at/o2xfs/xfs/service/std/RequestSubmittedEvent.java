@@ -0,0 +1,11 @@
+package at.o2xfs.xfs.service.std;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("at.o2xfs.xfs.RequestSubmitted")
+@Label("Request Submitted")
+@Description("Asynchronous XFS request handed to the XFS manager")
+final class RequestSubmittedEvent extends XfsDispatchEvent {
+}
@@ -0,0 +1,108 @@
+package at.o2xfs.xfs.service.std;
+
+import jdk.jfr.EventType;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.xfs.api.RequestId;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.service.std.metrics.LatencyHistogram;
+import at.o2xfs.xfs.service.std.metrics.ServiceMetrics;
+
+/**
+ * Wraps the notification of a submitted request to account its latency in the {@link ServiceMetrics} and to emit
+ * {@link RequestSubmittedEvent} and {@link RequestCompletedEvent}. The flight recorder events are only allocated
+ * while either of them is enabled.
+ */
+final class RequestTrace implements XfsEventNotification {
+
+	private static final EventType SUBMITTED = EventType.getEventType(RequestSubmittedEvent.class);
+	private static final EventType COMPLETED = EventType.getEventType(RequestCompletedEvent.class);
+
+	private final ServiceMetrics metrics;
+	private final LatencyHistogram latency;
+	private final String command;
+	private final long started;
+	private final RequestCompletedEvent completed;
+	private XfsEventNotification notification;
+	private volatile DeadlineTimer.Timeout deadline = null;
+
+	private RequestTrace(ServiceMetrics metrics, String command) {
+		this.metrics = metrics;
+		this.command = command;
+		latency = metrics.command(command);
+		if (SUBMITTED.isEnabled() || COMPLETED.isEnabled()) {
+			completed = new RequestCompletedEvent();
+			completed.begin();
+		} else {
+			completed = null;
+		}
+		started = System.nanoTime();
+	}
+
+	@Override
+	public void fireIntermediateEvent(WfsResult wfsResult) {
+		notification.fireIntermediateEvent(wfsResult);
+	}
+
+	@Override
+	public boolean fireIntermediateEvent(Address address, WfsResult wfsResult) {
+		return notification.fireIntermediateEvent(address, wfsResult);
+	}
+
+	@Override
+	public void fireOperationCompleteEvent(WfsResult wfsResult) {
+		DeadlineTimer.Timeout timeout = deadline;
+		if (timeout != null) {
+			timeout.cancel();
+		}
+		try {
+			notification.fireOperationCompleteEvent(wfsResult);
+		} finally {
+			metrics.requestCompleted(latency, System.nanoTime() - started, wfsResult.getErrorCode() == 0);
+			if (completed != null) {
+				completed.end();
+				if (completed.shouldCommit()) {
+					completed.logicalName = metrics.getLogicalName();
+					completed.command = command;
+					completed.requestId = wfsResult.getRequestId().getValue();
+					completed.errorCode = wfsResult.getErrorCode();
+					completed.commit();
+				}
+			}
+		}
+	}
+
+	XfsEventNotification submitted(RequestId requestId, XfsEventNotification notification) {
+		this.notification = notification;
+		metrics.requestStarted();
+		if (completed != null) {
+			RequestSubmittedEvent submitted = new RequestSubmittedEvent();
+			if (submitted.shouldCommit()) {
+				submitted.logicalName = metrics.getLogicalName();
+				submitted.command = command;
+				submitted.requestId = requestId.getValue();
+				submitted.commit();
+			}
+		}
+		return this;
+	}
+
+	void setDeadline(DeadlineTimer.Timeout deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Accounts for a request that was removed without ever completing.
+	 */
+	void reaped() {
+		metrics.requestCompleted(latency, System.nanoTime() - started, false);
+	}
+
+	static RequestTrace begin(ServiceMetrics metrics, Enum<?> command) {
+		return begin(metrics, command.name());
+	}
+
+	static RequestTrace begin(ServiceMetrics metrics, String command) {
+		return new RequestTrace(metrics, command);
+	}
+}
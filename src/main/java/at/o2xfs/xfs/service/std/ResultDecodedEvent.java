@@ -0,0 +1,11 @@
+package at.o2xfs.xfs.service.std;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("at.o2xfs.xfs.ResultDecoded")
+@Label("Result Decoded")
+@Description("Completion payload decoded by the result factory")
+final class ResultDecodedEvent extends XfsDispatchEvent {
+}
@@ -0,0 +1,14 @@
+package at.o2xfs.xfs.service.std;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.memory.core.MemorySystem;
+
+@FunctionalInterface
+public interface ResultDecoder<T> {
+
+	T decode(MemorySystem memorySystem, Address address);
+
+	static <T> ResultDecoder<T> reading(Class<T> valueType) {
+		return (memorySystem, address) -> memorySystem.read(address, valueType);
+	}
+}
@@ -0,0 +1,119 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.xfs.api.XfsApi;
+import at.o2xfs.xfs.api.XfsException;
+import at.o2xfs.xfs.service.std.metrics.DispatchMetrics;
+
+/**
+ * Frees {@code WFSRESULT} buffers on a dedicated thread once they have been decoded.
+ * <p>
+ * Addresses are collected in a bounded queue and freed in batches. If the queue is full, or the reclaimer is shut
+ * down, the caller frees the buffer itself. {@link #shutdown()} returns only after every address handed to
+ * {@link #free(Address)} has been freed.
+ */
+public final class ResultReclaimer {
+
+	private static final Logger LOG = LogManager.getLogger(ResultReclaimer.class);
+
+	private final XfsApi xfsApi;
+	private final DispatchMetrics metrics;
+	private final int batchSize;
+	private final BlockingQueue<Address> queue;
+	private final LongAdder freed;
+	private final LongAdder callerFreed;
+	private final Thread thread;
+
+	private volatile boolean closed = false;
+
+	public ResultReclaimer(XfsApi xfsApi, DispatchMetrics metrics, int capacity, int batchSize) {
+		this.xfsApi = Objects.requireNonNull(xfsApi);
+		this.metrics = Objects.requireNonNull(metrics);
+		this.batchSize = batchSize;
+		queue = new ArrayBlockingQueue<>(capacity);
+		freed = new LongAdder();
+		callerFreed = new LongAdder();
+		thread = new Thread(this::doRun, "ResultReclaimer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void doRun() {
+		List<Address> batch = new ArrayList<>(batchSize);
+		try {
+			while (!closed || !queue.isEmpty()) {
+				Address first = queue.poll(100L, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				for (Address each : batch) {
+					freeNow(each);
+				}
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			LOG.debug("Interrupted", e);
+		}
+	}
+
+	private void freeNow(Address address) {
+		try {
+			xfsApi.freeResult(address);
+			freed.increment();
+		} catch (XfsException | RuntimeException e) {
+			metrics.freeResultFailed();
+			LOG.error(new ParameterizedMessage("Error freeing WfsResult: {}", address), e);
+		}
+	}
+
+	public void free(Address address) {
+		if (closed || !queue.offer(address)) {
+			callerFreed.increment();
+			freeNow(address);
+		} else if (closed && queue.remove(address)) {
+			callerFreed.increment();
+			freeNow(address);
+		}
+	}
+
+	public int getBacklog() {
+		return queue.size();
+	}
+
+	public long getFreed() {
+		return freed.sum();
+	}
+
+	public long getCallerFreed() {
+		return callerFreed.sum();
+	}
+
+	public void shutdown() throws InterruptedException {
+		closed = true;
+		thread.join(TimeUnit.SECONDS.toMillis(10L));
+		if (thread.isAlive()) {
+			LOG.warn("ResultReclaimer did not terminate in time, freeing {} results on the caller", queue.size());
+			thread.interrupt();
+			// the batch in flight is still being freed, which must not overlap with WFSCleanUp
+			thread.join();
+		}
+		Address address;
+		while ((address = queue.poll()) != null) {
+			freeNow(address);
+		}
+	}
+}
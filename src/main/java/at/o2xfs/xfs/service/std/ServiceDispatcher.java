@@ -1,13 +1,15 @@
 package at.o2xfs.xfs.service.std;
 
-import java.util.ArrayList;
+import java.time.Duration;
 import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.OptionalInt;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -31,39 +33,104 @@ import at.o2xfs.xfs.service.api.ExecuteCommand;
 import at.o2xfs.xfs.service.api.InfoCommand;
 import at.o2xfs.xfs.service.api.XfsFuture;
 import at.o2xfs.xfs.service.api.event.IntermediateListener;
+import at.o2xfs.xfs.service.std.DispatchRecorder.Stage;
+import at.o2xfs.xfs.service.std.metrics.ServiceMetrics;
 
 public class ServiceDispatcher {
 
+	private static final class Pending {
+
+		private Address address;
+		private WfsResult wfsResult;
+
+		private Pending(Address address, WfsResult wfsResult) {
+			this.address = address;
+			this.wfsResult = wfsResult;
+		}
+	}
+
 	private static final Logger LOG = LogManager.getLogger(ServiceDispatcher.class);
 
 	private final XfsApi xfsApi;
 	private final Address hWnd;
 	private final StdXfsService service;
 
-	private final List<XfsEvent> eventQueue;
+	private final Executor executor;
+	private final int batchSize;
+
+	private final XfsEventQueue eventQueue;
+	private final DispatchRecorder recorder;
+	private final ResultReclaimer reclaimer;
+	private final ServiceMetrics metrics;
+
+	private final RequestRegistry requests;
+	private final DeadlineTimer timer;
+	private final Duration gracePeriod;
 
-	private final Map<RequestId, XfsEventNotification> requests;
+	private final AtomicBoolean scheduled;
+	private final Runnable drainTask;
 
-	private Thread thread = null;
+	private final ConcurrentMap<EventConflation.Key, Pending> pending;
+	private volatile EventConflation conflation;
+	private volatile boolean discarding = false;
 
-	public ServiceDispatcher(XfsApi xfsApi, Address hWnd, StdXfsService service) {
+	public ServiceDispatcher(XfsApi xfsApi, Address hWnd, StdXfsService service, DispatchEngine engine) {
 		this.xfsApi = Objects.requireNonNull(xfsApi);
 		this.hWnd = Objects.requireNonNull(hWnd);
 		this.service = Objects.requireNonNull(service);
-		eventQueue = new ArrayList<>();
-		requests = new HashMap<>();
+		executor = engine.getExecutor();
+		DispatcherConfig config = engine.getConfig();
+		batchSize = config.getBatchSize();
+		recorder = engine.getRecorder();
+		reclaimer = engine.getReclaimer();
+		metrics = engine.getMetrics().service(service.getLogicalName());
+		eventQueue = new XfsEventQueue(config.getServiceQueueCapacity(), config.getWaitStrategy().get(),
+				config.getOverflowPolicy(), config.getSpillCapacity(), reclaimer, metrics.getOverflow(),
+				service::isCriticalEvent);
+		metrics.bindQueue(eventQueue::size, eventQueue::oldestAgeNanos);
+		timer = engine.getTimer();
+		gracePeriod = config.getOrphanGracePeriod();
+		requests = new RequestRegistry(reclaimer, timer, gracePeriod);
+		scheduled = new AtomicBoolean(false);
+		drainTask = () -> drain();
+		pending = new ConcurrentHashMap<>();
+		conflation = EventConflation.none();
 	}
 
-	private void notifyCloseComplete(WfsResult wfsResult) {
-		notifyOperationCompleteEvent(wfsResult);
-		thread.interrupt();
+	private EventConflation.Key conflationKey(XfsMessage message, WfsResult wfsResult) {
+		EventConflation current = conflation;
+		if (current.isEmpty()) {
+			return null;
+		}
+		try {
+			return current.keyOf(xfsApi.getMemorySystem(), message, wfsResult);
+		} catch (RuntimeException e) {
+			LOG.error(new ParameterizedMessage("Error extracting conflation key: {}", wfsResult), e);
+			return null;
+		}
 	}
 
-	private void dispatchExecuteEvent(XfsMessage msg, WfsResult wfsResult) {
-		synchronized (requests) {
-			XfsEventNotification notification = requests.get(wfsResult.getRequestId());
-			notification.fireIntermediateEvent(wfsResult);
+	/**
+	 * Stores the event as the latest one of its key. Returns {@code false} if an earlier one is still waiting in the
+	 * queue, which then delivers this one instead.
+	 */
+	private boolean conflate(EventConflation.Key key, Address address, WfsResult wfsResult) {
+		Address[] superseded = new Address[1];
+		pending.compute(key, (k, v) -> {
+			if (v == null) {
+				return new Pending(address, wfsResult);
+			}
+			superseded[0] = v.address;
+			v.address = address;
+			v.wfsResult = wfsResult;
+			return v;
+		});
+		if (superseded[0] == null) {
+			return true;
 		}
+		metrics.getOverflow().conflated();
+		reclaimer.free(superseded[0]);
+		return false;
 	}
 
 	private void dispatchSystemEvent(WfsResult wfsResult) {
@@ -100,159 +167,253 @@ public class ServiceDispatcher {
 		}
 	}
 
-	private void doRun() {
-		try {
-			while (!thread.isInterrupted()) {
-				XfsEvent event;
-				synchronized (eventQueue) {
-					while (eventQueue.isEmpty()) {
-						LOG.debug("Waiting...");
-						eventQueue.wait();
-					}
-					event = eventQueue.remove(0);
-				}
-				LOG.info("Processing: {}", event);
-				try {
-					XfsMessage msg = event.getMessage();
-					switch (msg) {
-					case CLOSE_COMPLETE:
-						notifyCloseComplete(event.getWfsResult());
-						break;
-					case LOCK_COMPLETE:
-					case UNLOCK_COMPLETE:
-					case REGISTER_COMPLETE:
-					case DEREGISTER_COMPLETE:
-					case GETINFO_COMPLETE:
-					case EXECUTE_COMPLETE:
-						notifyOperationCompleteEvent(event.getWfsResult());
-						break;
-					case EXECUTE_EVENT:
-						dispatchExecuteEvent(msg, event.getWfsResult());
-						break;
-					case SERVICE_EVENT:
-						service.fireServiceEvent(event.getWfsResult());
-						break;
-					case USER_EVENT:
-						service.fireUserEvent(event.getWfsResult());
-						break;
-					case SYSTEM_EVENT:
-						dispatchSystemEvent(event.getWfsResult());
-						break;
-					default:
-						throw new IllegalArgumentException(msg.name());
-					}
-				} finally {
-					try {
-						xfsApi.freeResult(event.getAddress());
-					} catch (XfsException e) {
-						LOG.error(new ParameterizedMessage("Error freeing WfsResult: {}", event.getAddress()), e);
-					}
-				}
+	private void discardQueued() {
+		XfsEvent event;
+		int discarded = 0;
+		while ((event = eventQueue.poll()) != null) {
+			Address address = event.getAddress();
+			if (event.getConflationKey() != null) {
+				address = pending.remove(event.getConflationKey()).address;
 			}
-			LOG.info("Stopped.");
-		} catch (InterruptedException e) {
-			LOG.info("Interrupted.");
+			reclaimer.free(address);
+			eventQueue.release(event);
+			discarded++;
+		}
+		if (discarded > 0) {
+			LOG.info("Discarded {} undelivered event(s): service={}", discarded, service.getLogicalName());
 		}
 	}
 
-	private void notifyOperationCompleteEvent(WfsResult wfsResult) {
-		synchronized (requests) {
-			XfsEventNotification notification = requests.remove(wfsResult.getRequestId());
-			notification.fireOperationCompleteEvent(wfsResult);
+	private void drain() {
+		if (discarding) {
+			discardQueued();
+			scheduled.set(false);
+			return;
+		}
+		int remaining = batchSize;
+		XfsEvent event;
+		while (remaining-- > 0 && (event = eventQueue.poll()) != null) {
+			process(event);
 		}
+		scheduled.set(false);
+		if (!eventQueue.isEmpty()) {
+			schedule();
+		}
+	}
+
+	private void process(XfsEvent event) {
+		boolean free = true;
+		try {
+			if (event.getConflationKey() != null) {
+				Pending latest = pending.remove(event.getConflationKey());
+				event.set(event.getMessage(), latest.address, latest.wfsResult);
+			}
+			XfsMessage msg = event.getMessage();
+			EventDequeuedEvent dequeued = new EventDequeuedEvent();
+			if (dequeued.shouldCommit()) {
+				commit(dequeued, msg, event.getWfsResult());
+			}
+			switch (msg) {
+			case CLOSE_COMPLETE:
+			case LOCK_COMPLETE:
+			case UNLOCK_COMPLETE:
+			case REGISTER_COMPLETE:
+			case DEREGISTER_COMPLETE:
+			case GETINFO_COMPLETE:
+			case EXECUTE_COMPLETE:
+				free = requests.fireOperationCompleteEvent(event.getAddress(), event.getWfsResult());
+				break;
+			case EXECUTE_EVENT:
+				metrics.intermediateEvent();
+				free = requests.fireIntermediateEvent(event.getAddress(), event.getWfsResult());
+				break;
+			case SERVICE_EVENT:
+				service.fireServiceEvent(event.getWfsResult());
+				break;
+			case USER_EVENT:
+				service.fireUserEvent(event.getWfsResult());
+				break;
+			case SYSTEM_EVENT:
+				dispatchSystemEvent(event.getWfsResult());
+				break;
+			default:
+				throw new IllegalArgumentException(msg.name());
+			}
+			recorder.record(free ? Stage.DELIVERED : Stage.DEFERRED, msg, event.getWfsResult());
+		} catch (RuntimeException e) {
+			recorder.record(Stage.FAILED, event.getMessage(), event.getWfsResult());
+			LOG.error(new ParameterizedMessage("Error processing event: {}, recent events:\n{}", event,
+					recorder.dump()), e);
+		} finally {
+			if (free) {
+				reclaimer.free(event.getAddress());
+			}
+			eventQueue.release(event);
+		}
+	}
+
+	private void commit(XfsDispatchEvent jfrEvent, XfsMessage message, WfsResult wfsResult) {
+		jfrEvent.logicalName = service.getLogicalName();
+		jfrEvent.serviceId = service.getId().getValue();
+		jfrEvent.command = message.name();
+		jfrEvent.requestId = wfsResult.getRequestId().getValue();
+		jfrEvent.errorCode = wfsResult.getErrorCode();
+		jfrEvent.commit();
 	}
 
 	private <T> T read(Address address, Class<T> type) {
 		return xfsApi.getMemorySystem().read(address, type);
 	}
 
-	private void start() {
-		if (thread == null || !thread.isAlive()) {
-			thread = new Thread(() -> doRun());
-			thread.start();
+	private void scheduleDeadline(RequestTrace trace, RequestId requestId, StdXfsFuture<?> result,
+			Duration deadline) {
+		if (!deadline.isZero()) {
+			trace.setDeadline(timer.schedule(() -> expire(trace, requestId, result), deadline));
 		}
 	}
 
+	/**
+	 * Fails the request, asks the service provider to cancel it and removes it if its completion does not arrive
+	 * within the grace period.
+	 */
+	private void expire(RequestTrace trace, RequestId requestId, StdXfsFuture<?> result) {
+		if (!result.expire()) {
+			return;
+		}
+		LOG.warn("Request timed out: service={},requestId={}", service.getLogicalName(), requestId);
+		try {
+			service.cancelAsyncRequest(requestId);
+		} catch (XfsException | RuntimeException e) {
+			LOG.error(new ParameterizedMessage("Error cancelling request: service={},requestId={}",
+					service.getLogicalName(), requestId), e);
+		}
+		timer.schedule(() -> {
+			if (requests.reap(requestId, trace)) {
+				LOG.warn("Reaped orphaned request: service={},requestId={}", service.getLogicalName(), requestId);
+				trace.reaped();
+			}
+		}, gracePeriod);
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(drainTask);
+			} catch (RejectedExecutionException e) {
+				scheduled.set(false);
+				LOG.error(new ParameterizedMessage("Dispatch rejected: service={}", service.getLogicalName()), e);
+				if (discarding) {
+					discardQueued();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Frees the events still queued instead of delivering them, on the worker that would have delivered them. Used on
+	 * shutdown, once no more events are routed to this service.
+	 */
+	void discard() {
+		discarding = true;
+		schedule();
+	}
+
+	EventConflation getConflation() {
+		return conflation;
+	}
+
+	void setConflation(EventConflation conflation) {
+		this.conflation = Objects.requireNonNull(conflation);
+	}
+
 	public XfsFuture<Void> close() throws XfsException {
-		EmptyFuture result;
-		synchronized (requests) {
-			RequestId requestId = xfsApi.asyncClose(service.getId(), hWnd);
-			result = new EmptyFuture(service, requestId);
-			requests.put(requestId, result);
+		RequestTrace trace = RequestTrace.begin(metrics, "CLOSE");
+		RequestId requestId = xfsApi.asyncClose(service.getId(), hWnd);
+		EmptyFuture result = new EmptyFuture(service, requestId);
+		requests.register(requestId, trace.submitted(requestId, result));
+		return result;
+	}
+
+	public XfsFuture<Void> deregister(Set<XfsEventClass> eventClasses) throws XfsException {
+		if (eventClasses.isEmpty()) {
+			throw new IllegalArgumentException("An empty set would deregister all event classes");
 		}
+		RequestTrace trace = RequestTrace.begin(metrics, "DEREGISTER");
+		RequestId requestId = xfsApi.asyncDeregister(service.getId(), eventClasses, hWnd, hWnd);
+		EmptyFuture result = new EmptyFuture(service, requestId);
+		requests.register(requestId, trace.submitted(requestId, result));
 		return result;
 	}
 
 	public XfsFuture<Void> deregisterAndClose() throws XfsException {
-		CloseFuture result;
-		synchronized (requests) {
-			RequestId requestId = xfsApi.asyncDeregister(service.getId(), EnumSet.noneOf(XfsEventClass.class), hWnd,
-					hWnd);
-			result = new CloseFuture(service, requestId);
-			requests.put(requestId, result);
-		}
+		RequestTrace trace = RequestTrace.begin(metrics, "DEREGISTER");
+		RequestId requestId = xfsApi.asyncDeregister(service.getId(), EnumSet.noneOf(XfsEventClass.class), hWnd,
+				hWnd);
+		CloseFuture result = new CloseFuture(service, requestId);
+		requests.register(requestId, trace.submitted(requestId, result));
 		return result;
 	}
 
 	public <E extends Enum<E> & XfsConstant, T> XfsFuture<T> execute(ExecuteCommand<E> command,
-			IntermediateListener intermediateListener, Class<T> valueType) throws XfsException {
-		StdXfsFuture<T> result;
-		synchronized (requests) {
-			RequestId requestId = xfsApi.asyncExecute(service.getId(), command.getCommand(), command.getCmdData(),
-					command.getTimeOut(), hWnd);
-			result = new StdXfsFuture<>(service, requestId, intermediateListener, valueType);
-			requests.put(requestId, result);
-		}
+			IntermediateListener intermediateListener, Class<T> valueType, Duration deadline) throws XfsException {
+		RequestTrace trace = RequestTrace.begin(metrics, command.getCommand());
+		RequestId requestId = xfsApi.asyncExecute(service.getId(), command.getCommand(), command.getCmdData(),
+				command.getTimeOut(), hWnd);
+		StdXfsFuture<T> result = new StdXfsFuture<>(service, requestId, intermediateListener, valueType);
+		requests.register(requestId, trace.submitted(requestId, result));
+		scheduleDeadline(trace, requestId, result, deadline);
 		return result;
 	}
 
-	public <E extends Enum<E> & XfsConstant, T> XfsFuture<T> getInfo(InfoCommand<E> command, Class<T> valueType)
-			throws XfsException {
-		StdXfsFuture<T> result = null;
-		synchronized (requests) {
-			RequestId requestId = xfsApi.asyncGetInfo(service.getId(), command.getCategory(), command.getQueryDetails(),
-					command.getTimeOut(), hWnd);
-			result = new StdXfsFuture<>(service, requestId, null, valueType);
-			requests.put(requestId, result);
-		}
+	public <E extends Enum<E> & XfsConstant, T> XfsFuture<T> getInfo(InfoCommand<E> command, Class<T> valueType,
+			Duration deadline) throws XfsException {
+		RequestTrace trace = RequestTrace.begin(metrics, command.getCategory());
+		RequestId requestId = xfsApi.asyncGetInfo(service.getId(), command.getCategory(), command.getQueryDetails(),
+				command.getTimeOut(), hWnd);
+		StdXfsFuture<T> result = new StdXfsFuture<>(service, requestId, null, valueType);
+		requests.register(requestId, trace.submitted(requestId, result));
+		scheduleDeadline(trace, requestId, result, deadline);
 		return result;
 	}
 
 	public XfsFuture<Void> lock(OptionalInt timeOut) throws XfsException {
-		EmptyFuture result;
-		synchronized (requests) {
-			RequestId requestId = xfsApi.asyncLock(service.getId(), timeOut, hWnd);
-			result = new EmptyFuture(service, requestId);
-			requests.put(requestId, result);
-		}
+		RequestTrace trace = RequestTrace.begin(metrics, "LOCK");
+		RequestId requestId = xfsApi.asyncLock(service.getId(), timeOut, hWnd);
+		EmptyFuture result = new EmptyFuture(service, requestId);
+		requests.register(requestId, trace.submitted(requestId, result));
 		return result;
 	}
 
 	public XfsFuture<Void> register(Set<XfsEventClass> eventClasses) throws XfsException {
-		EmptyFuture result;
-		synchronized (requests) {
-			RequestId requestId = xfsApi.asyncRegister(service.getId(), eventClasses, hWnd, hWnd);
-			result = new EmptyFuture(service, requestId);
-			requests.put(requestId, result);
-		}
+		RequestTrace trace = RequestTrace.begin(metrics, "REGISTER");
+		RequestId requestId = xfsApi.asyncRegister(service.getId(), eventClasses, hWnd, hWnd);
+		EmptyFuture result = new EmptyFuture(service, requestId);
+		requests.register(requestId, trace.submitted(requestId, result));
 		return result;
 	}
 
-	public void offer(XfsEvent event) {
-		synchronized (eventQueue) {
-			eventQueue.add(event);
-			eventQueue.notifyAll();
-			start();
+	public void offer(XfsMessage message, Address address, WfsResult wfsResult) {
+		recorder.record(Stage.ROUTED, message, wfsResult);
+		EventConflation.Key key = conflationKey(message, wfsResult);
+		if (key == null) {
+			eventQueue.offer(message, address, wfsResult);
+		} else if (conflate(key, address, wfsResult)) {
+			eventQueue.offer(message, address, wfsResult, key);
+		} else {
+			return;
+		}
+		EventEnqueuedEvent enqueued = new EventEnqueuedEvent();
+		if (enqueued.shouldCommit()) {
+			commit(enqueued, message, wfsResult);
 		}
+		schedule();
 	}
 
 	public XfsFuture<Void> unlock() throws XfsException {
-		EmptyFuture result;
-		synchronized (requests) {
-			RequestId requestId = xfsApi.asyncUnlock(service.getId(), hWnd);
-			result = new EmptyFuture(service, requestId);
-			requests.put(requestId, result);
-		}
+		RequestTrace trace = RequestTrace.begin(metrics, "UNLOCK");
+		RequestId requestId = xfsApi.asyncUnlock(service.getId(), hWnd);
+		EmptyFuture result = new EmptyFuture(service, requestId);
+		requests.register(requestId, trace.submitted(requestId, result));
 		return result;
 	}
 }
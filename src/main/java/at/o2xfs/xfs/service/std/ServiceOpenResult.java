@@ -0,0 +1,64 @@
+package at.o2xfs.xfs.service.std;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import at.o2xfs.xfs.service.api.XfsService;
+
+public final class ServiceOpenResult {
+
+	private final String logicalName;
+	private final Optional<XfsService> service;
+	private final Optional<Throwable> failure;
+	private final Optional<Duration> openDuration;
+	private final Optional<Duration> registerDuration;
+
+	ServiceOpenResult(String logicalName, Optional<XfsService> service, Optional<Throwable> failure,
+			Optional<Duration> openDuration, Optional<Duration> registerDuration) {
+		this.logicalName = Objects.requireNonNull(logicalName);
+		this.service = Objects.requireNonNull(service);
+		this.failure = Objects.requireNonNull(failure);
+		this.openDuration = Objects.requireNonNull(openDuration);
+		this.registerDuration = Objects.requireNonNull(registerDuration);
+	}
+
+	public String getLogicalName() {
+		return logicalName;
+	}
+
+	public Optional<XfsService> getService() {
+		return service;
+	}
+
+	public Optional<Throwable> getFailure() {
+		return failure;
+	}
+
+	public boolean isOpen() {
+		return service.isPresent();
+	}
+
+	/**
+	 * Time from {@code WFSAsyncOpen} until {@code WFS_OPEN_COMPLETE}.
+	 */
+	public Optional<Duration> getOpenDuration() {
+		return openDuration;
+	}
+
+	/**
+	 * Time from {@code WFS_OPEN_COMPLETE} until {@code WFS_REGISTER_COMPLETE}.
+	 */
+	public Optional<Duration> getRegisterDuration() {
+		return registerDuration;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("logicalName", logicalName).append("service", service)
+				.append("failure", failure).append("openDuration", openDuration)
+				.append("registerDuration", registerDuration).toString();
+	}
+}
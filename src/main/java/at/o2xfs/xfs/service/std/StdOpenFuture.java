@@ -1,7 +1,8 @@
 package at.o2xfs.xfs.service.std;
 
-import java.util.EnumSet;
+import java.time.Duration;
 import java.util.Objects;
+import java.util.Optional;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,31 +11,39 @@ import at.o2xfs.xfs.api.RequestId;
 import at.o2xfs.xfs.api.ServiceId;
 import at.o2xfs.xfs.api.WfsResult;
 import at.o2xfs.xfs.api.WfsVersion;
-import at.o2xfs.xfs.api.XfsEventClass;
 import at.o2xfs.xfs.api.XfsException;
 import at.o2xfs.xfs.api.XfsExceptionFactory;
 import at.o2xfs.xfs.service.api.OpenFuture;
 import at.o2xfs.xfs.service.api.XfsFuture;
 
-public class StdOpenFuture<T extends StdXfsService> implements OpenFuture<T>, XfsEventNotification {
+public class StdOpenFuture<T extends StdXfsService> extends AbstractXfsFuture<T>
+		implements OpenFuture<T>, XfsEventNotification {
 
 	private static final Logger LOG = LogManager.getLogger(StdOpenFuture.class);
 
 	private final T service;
 	private final RequestId requestId;
+	private final long submitted;
 
-	private XfsFuture<Void> registerFuture = null;
-	private XfsException exception = null;
+	private volatile XfsFuture<Void> registerFuture = null;
+	private volatile long opened = 0L;
+	private volatile long registered = 0L;
 
 	public StdOpenFuture(T service, RequestId requestId) {
+		this(service, requestId, System.nanoTime());
+	}
+
+	public StdOpenFuture(T service, RequestId requestId, long submitted) {
 		this.service = Objects.requireNonNull(service);
 		this.requestId = Objects.requireNonNull(requestId);
+		this.submitted = submitted;
 	}
 
 	@Override
 	public void cancel() throws XfsException {
-		if (registerFuture != null) {
-			registerFuture.cancel();
+		XfsFuture<Void> future = registerFuture;
+		if (future != null) {
+			future.cancel();
 		} else {
 			service.cancelAsyncRequest(requestId);
 		}
@@ -47,33 +56,39 @@ public class StdOpenFuture<T extends StdXfsService> implements OpenFuture<T>, Xf
 
 	@Override
 	public void fireOperationCompleteEvent(WfsResult wfsResult) {
+		LOG.debug("Open complete: requestId={},errorCode={}", requestId, wfsResult.getErrorCode());
+		opened = System.nanoTime();
 		if (wfsResult.getErrorCode() != 0) {
-			exception = XfsExceptionFactory.create(wfsResult.getErrorCode());
+			completeExceptionally(XfsExceptionFactory.create(wfsResult.getErrorCode()));
 		} else {
 			try {
-				registerFuture = service.register(EnumSet.allOf(XfsEventClass.class));
+				registerFuture = service.openEventRegistration();
+				completeWith(toCompletionStage(registerFuture).thenApply(v -> {
+					registered = System.nanoTime();
+					return service;
+				}));
 			} catch (XfsException e) {
-				exception = e;
+				completeExceptionally(e);
 			}
 		}
-		synchronized (this) {
-			notifyAll();
-		}
 	}
 
-	@Override
-	public T get() throws InterruptedException, XfsException {
-		synchronized (this) {
-			while (registerFuture == null && exception == null) {
-				LOG.debug("Waiting for completion, RequestId: {}", requestId);
-				wait();
-			}
-		}
-		if (exception != null) {
-			throw exception;
-		}
-		registerFuture.get();
-		return service;
+	/**
+	 * Time from {@code WFSAsyncOpen} until {@code WFS_OPEN_COMPLETE}, empty while the open is pending.
+	 */
+	public Optional<Duration> getOpenDuration() {
+		long end = opened;
+		return end == 0L ? Optional.empty() : Optional.of(Duration.ofNanos(end - submitted));
+	}
+
+	/**
+	 * Time from {@code WFS_OPEN_COMPLETE} until {@code WFS_REGISTER_COMPLETE}, empty while the registration is
+	 * pending.
+	 */
+	public Optional<Duration> getRegisterDuration() {
+		long start = opened;
+		long end = registered;
+		return end == 0L ? Optional.empty() : Optional.of(Duration.ofNanos(end - start));
 	}
 
 	public RequestId getRequestId() {
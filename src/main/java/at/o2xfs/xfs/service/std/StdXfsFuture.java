@@ -3,34 +3,29 @@ package at.o2xfs.xfs.service.std;
 import java.util.Objects;
 import java.util.Optional;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
+import at.o2xfs.memory.core.Address;
 import at.o2xfs.xfs.api.RequestId;
 import at.o2xfs.xfs.api.ServiceId;
 import at.o2xfs.xfs.api.WfsResult;
 import at.o2xfs.xfs.api.XfsException;
 import at.o2xfs.xfs.api.XfsExceptionFactory;
-import at.o2xfs.xfs.service.api.XfsFuture;
 import at.o2xfs.xfs.service.api.event.IntermediateListener;
 
-public class StdXfsFuture<T> implements XfsFuture<T>, XfsEventNotification {
+public class StdXfsFuture<T> extends AbstractXfsFuture<T> implements XfsEventNotification {
 
-	private static final Logger LOG = LogManager.getLogger(StdXfsFuture.class);
+	private static final int WFS_ERR_TIMEOUT = -48;
 
 	private final StdXfsService service;
 	private final RequestId requestId;
-	private final Optional<IntermediateListener> intermediateListener;
+	private final Optional<ListenerMailbox<IntermediateListener>> intermediateListener;
 	private final Class<T> valueType;
-	private boolean done = false;
-	private T result = null;
-	private XfsException exception = null;
 
 	public StdXfsFuture(StdXfsService service, RequestId requestId, IntermediateListener intermediateListener,
 			Class<T> valueType) {
 		this.service = Objects.requireNonNull(service);
 		this.requestId = requestId;
-		this.intermediateListener = Optional.ofNullable(intermediateListener);
+		this.intermediateListener = Optional.ofNullable(intermediateListener)
+				.map(service.getListenerDelivery()::mailbox);
 		this.valueType = valueType;
 	}
 
@@ -39,40 +34,68 @@ public class StdXfsFuture<T> implements XfsFuture<T>, XfsEventNotification {
 		service.cancelAsyncRequest(requestId);
 	}
 
+	/**
+	 * Completes the future after all intermediate events delivered so far, so listeners never see an event of a
+	 * completed request.
+	 */
+	private void afterIntermediateEvents(Runnable completion) {
+		if (intermediateListener.isPresent()) {
+			intermediateListener.get().deliver(listener -> completion.run());
+		} else {
+			completion.run();
+		}
+	}
+
 	@Override
 	public void fireIntermediateEvent(WfsResult wfsResult) {
 		if (intermediateListener.isPresent()) {
-			intermediateListener.get().onIntermediateEvent(wfsResult);
+			intermediateListener.get().getListener().onIntermediateEvent(wfsResult);
 		}
 	}
 
 	@Override
-	public void fireOperationCompleteEvent(WfsResult wfsResult) {
-		synchronized (this) {
-			if (wfsResult.getErrorCode() == 0) {
-				if (valueType != null) {
-					result = service.getResultFactory().create(wfsResult.getBuffer(), valueType);
-					LOG.info("fireOperationCompleteEvent: wfsResult={},result={}", wfsResult, result);
-				}
-			} else {
-				exception = XfsExceptionFactory.create(wfsResult.getErrorCode());
-			}
-			done = true;
-			notifyAll();
+	public boolean fireIntermediateEvent(Address address, WfsResult wfsResult) {
+		if (intermediateListener.isPresent()) {
+			intermediateListener.get().deliver(listener -> listener.onIntermediateEvent(wfsResult), address);
+			return false;
 		}
+		return true;
 	}
 
 	@Override
-	public T get() throws InterruptedException, XfsException {
-		synchronized (this) {
-			if (!done) {
-				wait();
-			}
+	public void fireOperationCompleteEvent(WfsResult wfsResult) {
+		if (wfsResult.getErrorCode() != 0) {
+			XfsException exception = XfsExceptionFactory.create(wfsResult.getErrorCode());
+			afterIntermediateEvents(() -> completeExceptionally(exception));
+			return;
 		}
-		if (exception != null) {
-			throw exception;
+		T result = null;
+		try {
+			if (valueType != null) {
+				ResultDecodedEvent decoded = new ResultDecodedEvent();
+				decoded.begin();
+				result = service.getResultFactory().create(wfsResult.getBuffer(), valueType);
+				decoded.end();
+				if (decoded.shouldCommit()) {
+					decoded.logicalName = service.getLogicalName();
+					decoded.command = valueType.getName();
+					decoded.requestId = requestId.getValue();
+					decoded.commit();
+				}
+			}
+		} catch (RuntimeException e) {
+			afterIntermediateEvents(() -> completeExceptionally(e));
+			throw e;
 		}
-		return result;
+		T value = result;
+		afterIntermediateEvents(() -> complete(value));
+	}
+
+	/**
+	 * Fails the future with {@code WFS_ERR_TIMEOUT}, unless it is already done.
+	 */
+	boolean expire() {
+		return completeExceptionally(XfsExceptionFactory.create(WFS_ERR_TIMEOUT));
 	}
 
 	public RequestId getRequestId() {
@@ -1,13 +1,16 @@
 package at.o2xfs.xfs.service.std;
 
-import java.util.ArrayList;
+import java.time.Duration;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.OptionalInt;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
 
 import at.o2xfs.memory.core.Address;
 import at.o2xfs.memory.core.MemorySystem;
@@ -33,6 +36,8 @@ public abstract class StdXfsService implements XfsService {
 
 	private static final Logger LOG = LogManager.getLogger(StdXfsService.class);
 
+	private static final int MAX_REGISTRATION_RETRIES = 3;
+
 	private final XfsApi xfsApi;
 	private final MemorySystem memorySystem;
 	private final XfsResultFactory resultFactory;
@@ -41,10 +46,18 @@ public abstract class StdXfsService implements XfsService {
 	private final String logicalName;
 	private final WfsVersion version;
 	private final WfsVersion spiVersion;
-	private final List<SystemEventListener> systemEventListeners;
+	private final ListenerDelivery listenerDelivery;
+	private final Listeners<SystemEventListener> systemEventListeners;
+	private final AtomicInteger registrationUpdates;
+	private final AtomicInteger registrationFailures;
+	private final Duration requestDeadline;
+
+	private volatile boolean registrationOpen = false;
+	private volatile boolean registrationPending = false;
+	private volatile Set<XfsEventClass> registeredEventClasses = EnumSet.noneOf(XfsEventClass.class);
 
 	public StdXfsService(XfsApi xfsApi, XfsResultFactory resultFactory, Address hWnd, ServiceId serviceId,
-			String logicalName, WfsVersion version, WfsVersion spiVersion) {
+			String logicalName, WfsVersion version, WfsVersion spiVersion, DispatchEngine engine) {
 		this.xfsApi = Objects.requireNonNull(xfsApi);
 		this.memorySystem = xfsApi.getMemorySystem();
 		this.resultFactory = Objects.requireNonNull(resultFactory);
@@ -52,79 +65,203 @@ public abstract class StdXfsService implements XfsService {
 		this.logicalName = Objects.requireNonNull(logicalName);
 		this.version = Objects.requireNonNull(version);
 		this.spiVersion = Objects.requireNonNull(spiVersion);
-		dispatcher = new ServiceDispatcher(xfsApi, hWnd, this);
-		systemEventListeners = new ArrayList<>();
+		dispatcher = new ServiceDispatcher(xfsApi, hWnd, this, engine);
+		listenerDelivery = engine.getListenerDelivery();
+		systemEventListeners = listenerDelivery.listeners();
+		registrationUpdates = new AtomicInteger();
+		registrationFailures = new AtomicInteger();
+		requestDeadline = engine.getConfig().getRequestDeadline();
 	}
 
-	void fireAppDisconnect(AppDisconnect appDisconnect) {
-		LOG.info(appDisconnect);
-		synchronized (systemEventListeners) {
-			for (SystemEventListener each : systemEventListeners) {
-				each.onAppDisconnect(appDisconnect);
+	/**
+	 * Records the event classes once the service has confirmed the change, then reconciles again: with whatever the
+	 * demand has become meanwhile, or to retry a failed change a few times.
+	 */
+	private void registrationComplete(String operation, Set<XfsEventClass> eventClasses, boolean register,
+			Throwable exception) {
+		if (exception == null) {
+			Set<XfsEventClass> registered = EnumSet.copyOf(registeredEventClasses);
+			if (register) {
+				registered.addAll(eventClasses);
+			} else {
+				registered.removeAll(eventClasses);
 			}
+			registeredEventClasses = registered;
+			registrationFailures.set(0);
+		} else {
+			LOG.error(new ParameterizedMessage("{} failed: service={},eventClasses={}", operation, logicalName,
+					eventClasses), exception);
+		}
+		registrationPending = false;
+		if (exception == null || registrationFailures.incrementAndGet() <= MAX_REGISTRATION_RETRIES) {
+			updateEventRegistration();
+		} else {
+			LOG.warn("Giving up updating event classes after {} failures: service={},registered={}",
+					registrationFailures.get(), logicalName, registeredEventClasses);
 		}
 	}
 
-	void fireDeviceStatus(DeviceStatus deviceStatus) {
-		LOG.info(deviceStatus);
-		synchronized (systemEventListeners) {
-			for (SystemEventListener each : systemEventListeners) {
-				each.onDeviceStatus(deviceStatus);
+	private void submitRegistration(String operation, Set<XfsEventClass> eventClasses, boolean register)
+			throws XfsException {
+		registrationPending = true;
+		XfsFuture<Void> future;
+		try {
+			future = register ? dispatcher.register(eventClasses) : dispatcher.deregister(eventClasses);
+		} catch (XfsException | RuntimeException e) {
+			registrationPending = false;
+			throw e;
+		}
+		AbstractXfsFuture.toCompletionStage(future)
+				.whenComplete((v, e) -> registrationComplete(operation, eventClasses, register, e));
+	}
+
+	/**
+	 * Submits one change at a time, so the registered event classes are only ever updated with what the service has
+	 * confirmed. A change still pending reconciles again when it completes.
+	 */
+	private void reconcileEventClasses() {
+		if (registrationPending) {
+			return;
+		}
+		Set<XfsEventClass> demand = getEventClassDemand();
+		Set<XfsEventClass> registered = registeredEventClasses;
+		Set<XfsEventClass> added = EnumSet.copyOf(demand);
+		added.removeAll(registered);
+		Set<XfsEventClass> removed = EnumSet.copyOf(registered);
+		removed.removeAll(demand);
+		try {
+			if (!added.isEmpty()) {
+				submitRegistration("WFSAsyncRegister", added, true);
+			} else if (!removed.isEmpty()) {
+				submitRegistration("WFSAsyncDeregister", removed, false);
 			}
+		} catch (XfsException e) {
+			LOG.error(new ParameterizedMessage("Error updating event classes: service={},demand={}", logicalName,
+					demand), e);
 		}
 	}
 
-	void fireFraudAttempt(HardwareError hardwareError) {
-		LOG.info(hardwareError);
-		synchronized (systemEventListeners) {
-			for (SystemEventListener each : systemEventListeners) {
-				each.onFraudAttempt(hardwareError);
+	/**
+	 * Returns the event classes this service needs to be registered for. {@link XfsEventClass#EXECUTE_EVENTS} is
+	 * always included, because intermediate events are delivered to the request they belong to.
+	 */
+	protected Set<XfsEventClass> getEventClassDemand() {
+		Set<XfsEventClass> result = EnumSet.of(XfsEventClass.EXECUTE_EVENTS);
+		if (!systemEventListeners.isEmpty()) {
+			result.add(XfsEventClass.SYSTEM_EVENTS);
+		}
+		return result;
+	}
+
+	/**
+	 * Registers for the event classes in demand once the service is open. Called from the completion of
+	 * {@code WFSAsyncOpen}.
+	 */
+	XfsFuture<Void> openEventRegistration() throws XfsException {
+		Set<XfsEventClass> demand = getEventClassDemand();
+		registrationPending = true;
+		XfsFuture<Void> result;
+		try {
+			result = dispatcher.register(demand);
+		} catch (XfsException | RuntimeException e) {
+			registrationPending = false;
+			throw e;
+		}
+		registrationOpen = true;
+		AbstractXfsFuture.toCompletionStage(result).whenComplete((v, e) -> {
+			if (e == null) {
+				registrationComplete("WFSAsyncRegister", demand, true, null);
+			} else {
+				// fails the open, so there is nothing to retry
+				registrationOpen = false;
+				registrationPending = false;
 			}
+		});
+		return result;
+	}
+
+	/**
+	 * Brings the registered event classes in line with {@link #getEventClassDemand()}. Updates run on the calling
+	 * thread, or on the thread already updating, so no caller ever waits for another.
+	 */
+	protected void updateEventRegistration() {
+		if (!registrationOpen || registrationUpdates.getAndIncrement() != 0) {
+			return;
 		}
+		int missed = 1;
+		do {
+			if (registrationOpen) {
+				reconcileEventClasses();
+			}
+			missed = registrationUpdates.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	void fireAppDisconnect(AppDisconnect appDisconnect) {
+		LOG.info(appDisconnect);
+		systemEventListeners.deliver(listener -> listener.onAppDisconnect(appDisconnect));
+	}
+
+	void fireDeviceStatus(DeviceStatus deviceStatus) {
+		LOG.info(deviceStatus);
+		deviceStatusChanged(deviceStatus);
+		systemEventListeners.fire(listener -> listener.onDeviceStatus(deviceStatus));
+	}
+
+	void fireFraudAttempt(HardwareError hardwareError) {
+		LOG.info(hardwareError);
+		systemEventListeners.deliver(listener -> listener.onFraudAttempt(hardwareError));
 	}
 
 	void fireHardwareError(HardwareError hardwareError) {
 		LOG.info(hardwareError);
-		synchronized (systemEventListeners) {
-			for (SystemEventListener each : systemEventListeners) {
-				each.onHardwareError(hardwareError);
-			}
-		}
+		systemEventListeners.deliver(listener -> listener.onHardwareError(hardwareError));
 	}
 
 	void fireLockRequested() {
-		synchronized (systemEventListeners) {
-			for (SystemEventListener each : systemEventListeners) {
-				each.onLockRequested();
-			}
-		}
+		systemEventListeners.deliver(SystemEventListener::onLockRequested);
 	}
 
 	void fireSoftwareError(HardwareError hardwareError) {
 		LOG.info(hardwareError);
-		synchronized (systemEventListeners) {
-			for (SystemEventListener each : systemEventListeners) {
-				each.onSoftwareError(hardwareError);
-			}
-		}
+		systemEventListeners.deliver(listener -> listener.onSoftwareError(hardwareError));
 	}
 
 	void fireUserError(HardwareError hardwareError) {
 		LOG.info(hardwareError);
-		synchronized (systemEventListeners) {
-			for (SystemEventListener each : systemEventListeners) {
-				each.onUserError(hardwareError);
-			}
-		}
+		systemEventListeners.deliver(listener -> listener.onUserError(hardwareError));
 	}
 
 	void fireUndeliverableMessage(UndeliverableMessage undeliverableMessage) {
 		LOG.info(undeliverableMessage);
-		synchronized (systemEventListeners) {
-			for (SystemEventListener each : systemEventListeners) {
-				each.onUndeliverableMessage(undeliverableMessage);
-			}
-		}
+		systemEventListeners.deliver(listener -> listener.onUndeliverableMessage(undeliverableMessage));
+	}
+
+	protected void deviceStatusChanged(DeviceStatus deviceStatus) {
+	}
+
+	/**
+	 * Whether a service or user event must never be dropped or conflated when the service queue overflows, for
+	 * example because cached state is invalidated by it.
+	 */
+	protected boolean isCriticalEvent(WfsResult wfsResult) {
+		return false;
+	}
+
+	public EventConflation getEventConflation() {
+		return dispatcher.getConflation();
+	}
+
+	/**
+	 * Delivers only the latest of the selected events that arrive while an earlier one is still waiting to be
+	 * delivered. Applies to events dispatched from now on.
+	 */
+	public void setEventConflation(EventConflation eventConflation) {
+		dispatcher.setConflation(eventConflation);
+	}
+
+	ListenerDelivery getListenerDelivery() {
+		return listenerDelivery;
 	}
 
 	ServiceDispatcher getDispatcher() {
@@ -141,18 +278,47 @@ public abstract class StdXfsService implements XfsService {
 
 	@Override
 	public XfsFuture<Void> close() throws XfsException {
+		registrationOpen = false;
 		return dispatcher.deregisterAndClose();
 	}
 
 	@Override
 	public void addSystemEventListener(SystemEventListener listener) {
 		systemEventListeners.add(listener);
+		updateEventRegistration();
 	}
 
 	@Override
 	public <T> XfsFuture<T> execute(ExecuteCommand<?> command, IntermediateListener listener, Class<T> valueType)
 			throws XfsException {
-		return dispatcher.execute(command, listener, valueType);
+		return execute(command, listener, valueType, requestDeadline);
+	}
+
+	/**
+	 * Executes the command and, unless it completes within the deadline, fails the future with
+	 * {@code WFS_ERR_TIMEOUT} and cancels the request. {@link Duration#ZERO} waits without a deadline.
+	 */
+	public <T> XfsFuture<T> execute(ExecuteCommand<?> command, IntermediateListener listener, Class<T> valueType,
+			Duration deadline) throws XfsException {
+		return dispatcher.execute(command, listener, valueType, deadline);
+	}
+
+	/**
+	 * Submits all commands of the batch in one pass. A command that cannot be submitted fails in the result without
+	 * affecting the others.
+	 */
+	public BatchFuture submit(CommandBatch batch) {
+		List<CommandBatch.Entry<?>> entries = batch.getEntries();
+		BatchFuture result = new BatchFuture(entries.size());
+		for (int i = 0; i < entries.size(); i++) {
+			try {
+				result.submitted(i, entries.get(i).submit(this));
+			} catch (XfsException | RuntimeException e) {
+				LOG.error(new ParameterizedMessage("Error submitting {}: service={}", entries.get(i), logicalName), e);
+				result.failed(i, e);
+			}
+		}
+		return result;
 	}
 
 	abstract public void fireServiceEvent(WfsResult wfsResult);
@@ -161,7 +327,12 @@ public abstract class StdXfsService implements XfsService {
 
 	@Override
 	public <T> XfsFuture<T> getInfo(InfoCommand<?> command, Class<T> valueType) throws XfsException {
-		return dispatcher.getInfo(command, valueType);
+		return getInfo(command, valueType, requestDeadline);
+	}
+
+	public <T> XfsFuture<T> getInfo(InfoCommand<?> command, Class<T> valueType, Duration deadline)
+			throws XfsException {
+		return dispatcher.getInfo(command, valueType, deadline);
 	}
 
 	@Override
@@ -200,6 +371,7 @@ public abstract class StdXfsService implements XfsService {
 	@Override
 	public void removeSystemEventListener(SystemEventListener listener) {
 		systemEventListeners.remove(listener);
+		updateEventRegistration();
 	}
 
 	@Override
@@ -1,12 +1,23 @@
 package at.o2xfs.xfs.service.std;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
+import javax.management.JMException;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
 
 import at.o2xfs.memory.core.Address;
+import at.o2xfs.xfs.api.ServiceId;
 import at.o2xfs.xfs.api.VersionsRequired;
 import at.o2xfs.xfs.api.XfsApi;
 import at.o2xfs.xfs.api.XfsException;
@@ -14,6 +25,11 @@ import at.o2xfs.xfs.api.XfsVersion;
 import at.o2xfs.xfs.service.api.XfsFuture;
 import at.o2xfs.xfs.service.api.XfsService;
 import at.o2xfs.xfs.service.api.XfsServiceManager;
+import at.o2xfs.xfs.service.std.journal.JournalRecorder;
+import at.o2xfs.xfs.service.std.journal.JournalWriter;
+import at.o2xfs.xfs.service.std.journal.PayloadCodec;
+import at.o2xfs.xfs.service.std.journal.TypedPayloadCodec;
+import at.o2xfs.xfs.service.std.metrics.DispatchMetrics;
 
 public class StdXfsServiceManager implements XfsServiceManager {
 
@@ -21,14 +37,20 @@ public class StdXfsServiceManager implements XfsServiceManager {
 
 	private final XfsApi xfsApi;
 	private final MessageLoop messageLoop;
+	private final DispatchEngine dispatchEngine;
 	private final EventDispatcher eventDispatcher;
 
 	private Optional<Address> appHandle;
 
 	public StdXfsServiceManager(XfsApi xfsApi, MessageLoop messageLoop) {
+		this(xfsApi, messageLoop, DispatcherConfig.defaults());
+	}
+
+	public StdXfsServiceManager(XfsApi xfsApi, MessageLoop messageLoop, DispatcherConfig config) {
 		this.xfsApi = Objects.requireNonNull(xfsApi);
 		this.messageLoop = Objects.requireNonNull(messageLoop);
-		eventDispatcher = new EventDispatcher(xfsApi);
+		dispatchEngine = new DispatchEngine(xfsApi, config);
+		eventDispatcher = new EventDispatcher(xfsApi, dispatchEngine);
 		appHandle = Optional.empty();
 	}
 
@@ -42,21 +64,105 @@ public class StdXfsServiceManager implements XfsServiceManager {
 		return eventDispatcher.open(buildOpenParam(logicalName), serviceClass);
 	}
 
+	public DispatchMetrics getMetrics() {
+		return dispatchEngine.getMetrics();
+	}
+
+	/**
+	 * Returns the result factory of the open service with the given id, e.g. for a {@link TypedPayloadCodec}.
+	 */
+	public Optional<XfsResultFactory> getResultFactory(ServiceId serviceId) {
+		return eventDispatcher.getResultFactory(serviceId);
+	}
+
+	public DispatchRecorder getRecorder() {
+		return dispatchEngine.getRecorder();
+	}
+
+	/**
+	 * Starts recording every received message to a new journal file, replacing a journal already being recorded.
+	 */
+	public void startJournal(Path path, PayloadCodec codec) throws IOException {
+		JournalRecorder recorder = new JournalRecorder(new JournalWriter(path), codec, xfsApi.getMemorySystem());
+		closeJournal(eventDispatcher.setJournal(recorder));
+	}
+
+	public void stopJournal() {
+		closeJournal(eventDispatcher.setJournal(null));
+	}
+
+	private void closeJournal(JournalRecorder recorder) {
+		if (recorder != null) {
+			try {
+				recorder.close();
+			} catch (IOException e) {
+				LOG.error("Error closing journal", e);
+			}
+		}
+	}
+
+	/**
+	 * Opens all given services at once. Each {@code WFSAsyncOpen} is submitted right away and every service
+	 * registers for its events as soon as its own open completes, so startup takes about as long as the slowest
+	 * service instead of the sum of all.
+	 */
+	public OpenAllFuture openAll(Map<String, Class<? extends XfsService>> services) {
+		OpenAllFuture result = new OpenAllFuture(new ArrayList<>(services.keySet()), services.size());
+		for (Map.Entry<String, Class<? extends XfsService>> each : services.entrySet()) {
+			try {
+				result.submitted(each.getKey(), eventDispatcher.openService(buildOpenParam(each.getKey()),
+						each.getValue()));
+			} catch (XfsException | RuntimeException e) {
+				LOG.error(new ParameterizedMessage("Error opening service: {}", each.getKey()), e);
+				result.failed(each.getKey(), e);
+			}
+		}
+		return result;
+	}
+
 	@Override
 	public void initialize() throws XfsException {
 		xfsApi.startUp(XfsVersion.V3_00, XfsVersion.V3_30);
 		appHandle = Optional.of(xfsApi.createAppHandle());
+		if (dispatchEngine.getConfig().isJmxEnabled()) {
+			try {
+				dispatchEngine.getMetrics().register(ManagementFactory.getPlatformMBeanServer());
+			} catch (JMException e) {
+				LOG.error("Error registering MBeans", e);
+			}
+		}
+		eventDispatcher.start();
 		messageLoop.start(eventDispatcher);
 		eventDispatcher.setWindowHandle(messageLoop.getWindowHandle());
 	}
 
 	@Override
 	public void shutdown() {
+		shutdown(dispatchEngine.getConfig().getShutdownDeadline());
+	}
+
+	/**
+	 * Closes all services concurrently, waiting at most the given deadline for them, then cleans up regardless. The
+	 * result reports the services that failed to close or did not close in time.
+	 */
+	public CloseAllResult shutdown(Duration deadline) {
+		CloseAllResult result = new CloseAllResult(List.of(), Map.of(), List.of(), Duration.ZERO);
 		try {
-			eventDispatcher.stop();
+			result = eventDispatcher.stop(deadline);
 		} catch (InterruptedException e) {
 			LOG.error("Interrupted stopping EventDispatcher", e);
 		}
+		stopJournal();
+		try {
+			dispatchEngine.shutdown();
+		} catch (InterruptedException e) {
+			LOG.error("Interrupted stopping DispatchEngine", e);
+		}
+		try {
+			dispatchEngine.getMetrics().unregister();
+		} catch (JMException e) {
+			LOG.error("Error unregistering MBeans", e);
+		}
 		if (appHandle.isPresent()) {
 			try {
 				xfsApi.destroyAppHandle(appHandle.get());
@@ -71,5 +177,6 @@ public class StdXfsServiceManager implements XfsServiceManager {
 			LOG.error("WFSCleanUp failed", e);
 		}
 		messageLoop.stop();
+		return result;
 	}
 }
@@ -0,0 +1,26 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.Objects;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.memory.core.MemorySystem;
+
+public class TableResultFactory implements XfsResultFactory {
+
+	private final MemorySystem memorySystem;
+	private final DecoderTable decoderTable;
+
+	public TableResultFactory(MemorySystem memorySystem, DecoderTable decoderTable) {
+		this.memorySystem = Objects.requireNonNull(memorySystem);
+		this.decoderTable = Objects.requireNonNull(decoderTable);
+	}
+
+	@Override
+	public <T> T create(Address buffer, Class<T> valueType) {
+		return decoderTable.decode(memorySystem, buffer, valueType);
+	}
+
+	public DecoderTable getDecoderTable() {
+		return decoderTable;
+	}
+}
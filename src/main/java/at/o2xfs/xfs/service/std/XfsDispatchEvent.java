@@ -0,0 +1,30 @@
+package at.o2xfs.xfs.service.std;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Common fields of the flight recorder events emitted along the lifecycle of an XFS request. Events are always
+ * allocated, which escape analysis usually removes, but filled and committed only if {@link #shouldCommit()}.
+ */
+@Category({ "O2Xfs", "Dispatch" })
+@StackTrace(false)
+abstract class XfsDispatchEvent extends Event {
+
+	@Label("Logical Name")
+	String logicalName;
+
+	@Label("Service ID")
+	int serviceId;
+
+	@Label("Command")
+	String command;
+
+	@Label("Request ID")
+	long requestId;
+
+	@Label("Error Code")
+	int errorCode;
+}
@@ -10,13 +10,58 @@ import at.o2xfs.xfs.api.XfsMessage;
 
 public final class XfsEvent {
 
-	private final XfsMessage message;
-	private final Address address;
-	private final WfsResult wfsResult;
+	private XfsMessage message;
+	private Address address;
+	private WfsResult wfsResult;
+	private long enqueued;
+	private boolean spilled;
+	private EventConflation.Key conflationKey;
+
+	XfsEvent() {
+	}
 
 	private XfsEvent(XfsMessage message, Address address, WfsResult wfsResult) {
+		set(message, address, wfsResult);
+	}
+
+	void clear() {
+		message = null;
+		address = null;
+		wfsResult = null;
+		conflationKey = null;
+	}
+
+	void set(XfsMessage message, Address address, WfsResult wfsResult) {
 		this.message = Objects.requireNonNull(message);
 		this.address = Objects.requireNonNull(address);
+		this.wfsResult = wfsResult;
+	}
+
+	EventConflation.Key getConflationKey() {
+		return conflationKey;
+	}
+
+	void setConflationKey(EventConflation.Key conflationKey) {
+		this.conflationKey = conflationKey;
+	}
+
+	boolean isSpilled() {
+		return spilled;
+	}
+
+	void setSpilled(boolean spilled) {
+		this.spilled = spilled;
+	}
+
+	void setEnqueued(long enqueued) {
+		this.enqueued = enqueued;
+	}
+
+	long getEnqueued() {
+		return enqueued;
+	}
+
+	void setWfsResult(WfsResult wfsResult) {
 		this.wfsResult = Objects.requireNonNull(wfsResult);
 	}
 
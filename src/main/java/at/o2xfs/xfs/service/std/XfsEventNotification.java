@@ -27,6 +27,7 @@
 
 package at.o2xfs.xfs.service.std;
 
+import at.o2xfs.memory.core.Address;
 import at.o2xfs.xfs.api.WfsResult;
 
 /**
@@ -37,5 +38,14 @@ public interface XfsEventNotification {
 
 	void fireIntermediateEvent(WfsResult wfsResult);
 
+	/**
+	 * Fires an intermediate event whose {@code WFSRESULT} may be kept beyond this call. Returns {@code false} if the
+	 * notification took it over and frees it itself.
+	 */
+	default boolean fireIntermediateEvent(Address address, WfsResult wfsResult) {
+		fireIntermediateEvent(wfsResult);
+		return true;
+	}
+
 	void fireOperationCompleteEvent(WfsResult wfsResult);
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+package at.o2xfs.xfs.service.std;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.api.XfsMessage;
+import at.o2xfs.xfs.service.std.metrics.OverflowCounters;
+import at.o2xfs.xfs.service.std.queue.RingBuffer;
+import at.o2xfs.xfs.service.std.queue.WaitStrategy;
+
+/**
+ * Single consumer event queue: a preallocated ring, backed by a bounded overflow buffer that is used according to
+ * the {@link OverflowPolicy} once the ring is full.
+ * <p>
+ * While the overflow buffer holds events, new events are appended there as well, so the consumer sees all events in
+ * the order they were offered: first the ring, then the overflow buffer.
+ * <p>
+ * Only service and user events that are neither conflated by key nor selected by the critical event predicate may be
+ * dropped or conflated. Intermediate events always belong to a request that is waiting for them.
+ */
+final class XfsEventQueue {
+
+	private final RingBuffer<XfsEvent> ringBuffer;
+	private final OverflowPolicy policy;
+	private final int spillCapacity;
+	private final ResultReclaimer reclaimer;
+	private final OverflowCounters counters;
+	private final Predicate<WfsResult> criticalEvent;
+	private final ArrayDeque<XfsEvent> overflow;
+	private final BooleanSupplier available;
+
+	private volatile boolean overflowing = false;
+	private volatile int overflowSize = 0;
+
+	XfsEventQueue(int capacity, WaitStrategy waitStrategy, OverflowPolicy policy, int spillCapacity,
+			ResultReclaimer reclaimer, OverflowCounters counters, Predicate<WfsResult> criticalEvent) {
+		ringBuffer = new RingBuffer<>(capacity, XfsEvent::new, waitStrategy);
+		this.policy = Objects.requireNonNull(policy);
+		this.spillCapacity = spillCapacity;
+		this.reclaimer = Objects.requireNonNull(reclaimer);
+		this.counters = Objects.requireNonNull(counters);
+		this.criticalEvent = Objects.requireNonNull(criticalEvent);
+		overflow = new ArrayDeque<>();
+		available = () -> !ringBuffer.isEmpty() || overflowing && ringBuffer.size() == 0;
+	}
+
+	/**
+	 * An event whose {@code WFSRESULT} has not been read yet is critical, as nothing tells whether it may be lost.
+	 */
+	private boolean isCritical(XfsMessage message, WfsResult wfsResult) {
+		switch (message) {
+		case SERVICE_EVENT:
+		case USER_EVENT:
+			return wfsResult == null || criticalEvent.test(wfsResult);
+		default:
+			return true;
+		}
+	}
+
+	private static boolean isSameKind(XfsEvent event, XfsMessage message, WfsResult wfsResult) {
+		return message.equals(event.getMessage()) && event.getConflationKey() == null && event.getWfsResult() != null
+				&& event.getWfsResult().getServiceId().equals(wfsResult.getServiceId())
+				&& event.getWfsResult().getRequestId().equals(wfsResult.getRequestId())
+				&& event.getWfsResult().getEventId() == wfsResult.getEventId();
+	}
+
+	private void publish(long sequence, XfsMessage message, Address address, WfsResult wfsResult,
+			EventConflation.Key conflationKey) {
+		XfsEvent event = ringBuffer.get(sequence);
+		event.set(message, address, wfsResult);
+		event.setConflationKey(conflationKey);
+		event.setEnqueued(System.nanoTime());
+		ringBuffer.publish(sequence);
+	}
+
+	private void drop(Address address) {
+		counters.dropped();
+		reclaimer.free(address);
+	}
+
+	private boolean conflate(XfsMessage message, Address address, WfsResult wfsResult) {
+		Iterator<XfsEvent> iterator = overflow.descendingIterator();
+		while (iterator.hasNext()) {
+			XfsEvent each = iterator.next();
+			if (isSameKind(each, message, wfsResult)) {
+				Address superseded = each.getAddress();
+				each.set(message, address, wfsResult);
+				counters.conflated();
+				reclaimer.free(superseded);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void offerOverflow(XfsMessage message, Address address, WfsResult wfsResult,
+			EventConflation.Key conflationKey) {
+		boolean interrupted = false;
+		synchronized (overflow) {
+			if (!overflowing) {
+				long sequence = ringBuffer.tryNext();
+				if (sequence >= 0L) {
+					publish(sequence, message, address, wfsResult, conflationKey);
+					return;
+				}
+				overflowing = true;
+			}
+			boolean critical = conflationKey != null || isCritical(message, wfsResult);
+			if (!critical && OverflowPolicy.DROP.equals(policy)) {
+				drop(address);
+				return;
+			}
+			if (!critical && OverflowPolicy.CONFLATE.equals(policy) && wfsResult != null
+					&& conflate(message, address, wfsResult)) {
+				return;
+			}
+			while (overflow.size() >= spillCapacity) {
+				if (!critical) {
+					drop(address);
+					return;
+				}
+				counters.blocked();
+				try {
+					overflow.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			// the consumer may have emptied the overflow buffer while this producer waited
+			overflowing = true;
+			XfsEvent event = new XfsEvent();
+			event.set(message, address, wfsResult);
+			event.setConflationKey(conflationKey);
+			event.setEnqueued(System.nanoTime());
+			event.setSpilled(true);
+			overflow.add(event);
+			overflowSize = overflow.size();
+			counters.spilled();
+		}
+		ringBuffer.signalAllWhenBlocking();
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	boolean isEmpty() {
+		return ringBuffer.isEmpty() && !overflowing;
+	}
+
+	/**
+	 * Offers an event; with {@link OverflowPolicy#BLOCK}, or for a critical event while the overflow buffer is full,
+	 * waits for the consumer. Interrupts do not end the wait, as the event would be lost otherwise.
+	 */
+	void offer(XfsMessage message, Address address, WfsResult wfsResult) {
+		offer(message, address, wfsResult, null);
+	}
+
+	/**
+	 * Offers an event that stands in for the latest one of its conflation key. Such events are never dropped or
+	 * conflated by the queue itself.
+	 */
+	void offer(XfsMessage message, Address address, WfsResult wfsResult, EventConflation.Key conflationKey) {
+		if (!overflowing) {
+			long sequence = ringBuffer.tryNext();
+			if (sequence >= 0L) {
+				publish(sequence, message, address, wfsResult, conflationKey);
+				return;
+			}
+			if (OverflowPolicy.BLOCK.equals(policy)) {
+				counters.blocked();
+				publish(ringBuffer.next(), message, address, wfsResult, conflationKey);
+				return;
+			}
+		}
+		offerOverflow(message, address, wfsResult, conflationKey);
+	}
+
+	long oldestAgeNanos() {
+		XfsEvent event = ringBuffer.peek();
+		if (event == null) {
+			return 0L;
+		}
+		return Math.max(0L, System.nanoTime() - event.getEnqueued());
+	}
+
+	XfsEvent poll() {
+		XfsEvent result = ringBuffer.poll();
+		// a slot claimed before the overflow buffer was used may not be published yet, its event comes first
+		if (result != null || !overflowing || ringBuffer.size() > 0) {
+			return result;
+		}
+		synchronized (overflow) {
+			result = overflow.poll();
+			overflowSize = overflow.size();
+			if (overflow.isEmpty()) {
+				overflowing = false;
+			}
+			overflow.notifyAll();
+		}
+		return result;
+	}
+
+	void release(XfsEvent event) {
+		boolean spilled = event.isSpilled();
+		event.clear();
+		if (!spilled) {
+			ringBuffer.release();
+		}
+	}
+
+	/**
+	 * Removes every queued event and frees its {@code WFSRESULT}. Only the consumer may call this, or any thread once
+	 * the consumer has stopped.
+	 */
+	int discard() {
+		int result = 0;
+		XfsEvent event;
+		while ((event = poll()) != null) {
+			reclaimer.free(event.getAddress());
+			release(event);
+			result++;
+		}
+		return result;
+	}
+
+	int size() {
+		return ringBuffer.size() + overflowSize;
+	}
+
+	/**
+	 * Waits for an event in either the ring or the overflow buffer: once the overflow buffer is in use, producers
+	 * spill without publishing to the ring, so waiting on the ring alone could miss them.
+	 */
+	XfsEvent take() throws InterruptedException {
+		XfsEvent result;
+		while ((result = poll()) == null) {
+			ringBuffer.await(available);
+		}
+		return result;
+	}
+}
@@ -13,10 +13,12 @@ public class XfsServiceFactory {
 
 	private final XfsApi xfsApi;
 	private final Address hWnd;
+	private final DispatchEngine engine;
 
-	public XfsServiceFactory(XfsApi xfsApi, Address hWnd) {
+	public XfsServiceFactory(XfsApi xfsApi, Address hWnd, DispatchEngine engine) {
 		this.xfsApi = Objects.requireNonNull(xfsApi);
 		this.hWnd = Objects.requireNonNull(hWnd);
+		this.engine = Objects.requireNonNull(engine);
 	}
 
 	public <E extends XfsService> StdXfsService create(String logicalName, Class<E> serviceClass,
@@ -24,7 +26,7 @@ public class XfsServiceFactory {
 		StdXfsService result;
 		if (CdmService.class.equals(serviceClass)) {
 			result = new StdCdmService(xfsApi, hWnd, response.getServiceId(), logicalName, response.getSrvcVersion(),
-					response.getSpiVersion());
+					response.getSpiVersion(), engine);
 		} else {
 			throw new IllegalArgumentException(serviceClass.toString());
 		}
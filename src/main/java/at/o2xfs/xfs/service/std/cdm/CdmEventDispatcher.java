@@ -1,7 +1,5 @@
 package at.o2xfs.xfs.service.std.cdm;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -16,6 +14,8 @@ import at.o2xfs.xfs.cdm.Position;
 import at.o2xfs.xfs.databind.XfsEnum16Wrapper;
 import at.o2xfs.xfs.databind.XfsEnum32Wrapper;
 import at.o2xfs.xfs.service.api.cdm.CdmServiceListener;
+import at.o2xfs.xfs.service.std.ListenerDelivery;
+import at.o2xfs.xfs.service.std.Listeners;
 import at.o2xfs.xfs.service.std.XfsResultFactory;
 import at.o2xfs.xfs.service.std.XfsStatusNotification;
 import at.o2xfs.xfs.v3.cdm.CashUnit3;
@@ -32,120 +32,96 @@ public class CdmEventDispatcher implements XfsStatusNotification {
 	private final MemorySystem memorySystem;
 	private final XfsResultFactory factory;
 
-	private final List<CdmServiceListener> serviceListeners;
+	private final Listeners<CdmServiceListener> serviceListeners;
 
-	public CdmEventDispatcher(MemorySystem memorySystem, XfsResultFactory factory) {
+	public CdmEventDispatcher(MemorySystem memorySystem, XfsResultFactory factory, ListenerDelivery listenerDelivery) {
 		this.memorySystem = Objects.requireNonNull(memorySystem);
 		this.factory = Objects.requireNonNull(factory);
-		serviceListeners = new ArrayList<>();
+		serviceListeners = listenerDelivery.listeners();
 	}
 
 	private void fireSafeDoorOpen() {
 		if (LOG.isInfoEnabled()) {
 			LOG.info("fireSafeDoorOpen()", "");
 		}
-		for (CdmServiceListener each : serviceListeners) {
-			each.onSafeDoorOpen();
-		}
+		serviceListeners.fire(CdmServiceListener::onSafeDoorOpen);
 	}
 
 	private void fireSafeDoorClosed() {
 		if (LOG.isInfoEnabled()) {
 			LOG.info("fireSafeDoorClosed()", "");
 		}
-		for (CdmServiceListener each : serviceListeners) {
-			each.onSafeDoorClosed();
-		}
+		serviceListeners.fire(CdmServiceListener::onSafeDoorClosed);
 	}
 
 	private void fireCashUnitThreshold(CashUnit3 cashUnit) {
 		if (LOG.isInfoEnabled()) {
 			LOG.info("fireCashUnitThreshold(CashUnit3)", cashUnit);
 		}
-		for (CdmServiceListener each : serviceListeners) {
-			each.onCashUnitThreshold(cashUnit);
-		}
+		serviceListeners.fire(listener -> listener.onCashUnitThreshold(cashUnit));
 	}
 
 	private void fireCashUnitInfoChanged(CashUnit3 cashUnit) {
 		if (LOG.isInfoEnabled()) {
 			LOG.info("fireCashUnitInfoChanged(CashUnit3)", cashUnit);
 		}
-		for (CdmServiceListener each : serviceListeners) {
-			each.onCashUnitInfoChanged(cashUnit);
-		}
+		serviceListeners.fire(listener -> listener.onCashUnitInfoChanged(cashUnit));
 	}
 
 	private void fireTellerInfoChanged(int tellerId) {
 		if (LOG.isInfoEnabled()) {
 			LOG.info("fireTellerInfoChanged(int)", tellerId);
 		}
-		for (CdmServiceListener each : serviceListeners) {
-			each.onTellerInfoChanged(tellerId);
-		}
+		serviceListeners.fire(listener -> listener.onTellerInfoChanged(tellerId));
 	}
 
 	private void fireItemsTaken(Position position) {
 		if (LOG.isInfoEnabled()) {
 			LOG.info("fireItemsTaken(Position)", position);
 		}
-		for (CdmServiceListener each : serviceListeners) {
-			each.onItemsTaken(position);
-		}
+		serviceListeners.fire(listener -> listener.onItemsTaken(position));
 	}
 
 	private void fireCountsChanged(CountsChanged3 countsChanged) {
 		if (LOG.isInfoEnabled()) {
 			LOG.info("fireCountsChanged(CountsChanged3)", countsChanged);
 		}
-		for (CdmServiceListener each : serviceListeners) {
-			each.onCountsChanged(countsChanged);
-		}
+		serviceListeners.fire(listener -> listener.onCountsChanged(countsChanged));
 	}
 
 	private void fireItemsPresented() {
 		if (LOG.isInfoEnabled()) {
 			LOG.info("fireItemsPresented()", "");
 		}
-		for (CdmServiceListener each : serviceListeners) {
-			each.onItemsPresented();
-		}
+		serviceListeners.fire(CdmServiceListener::onItemsPresented);
 	}
 
 	private void fireMediaDetected(Optional<ItemPosition3> itemPosition) {
 		if (LOG.isInfoEnabled()) {
 			LOG.info("fireMediaDetected(Optional<ItemPosition3>)", itemPosition);
 		}
-		for (CdmServiceListener each : serviceListeners) {
-			each.onMediaDetected(itemPosition);
-		}
+		serviceListeners.fire(listener -> listener.onMediaDetected(itemPosition));
 	}
 
 	private void fireDevicePosition(DevicePosition310 devicePosition) {
 		if (LOG.isInfoEnabled()) {
 			LOG.info("fireDevicePosition(DevicePosition310)", devicePosition);
 		}
-		for (CdmServiceListener each : serviceListeners) {
-			each.onDevicePosition(devicePosition);
-		}
+		serviceListeners.fire(listener -> listener.onDevicePosition(devicePosition));
 	}
 
 	private void firePowerSaveChange(PowerSaveChange310 powerSaveChange) {
 		if (LOG.isInfoEnabled()) {
 			LOG.info("firePowerSaveChange(PowerSaveChange310)", powerSaveChange);
 		}
-		for (CdmServiceListener each : serviceListeners) {
-			each.onPowerSaveChange(powerSaveChange);
-		}
+		serviceListeners.fire(listener -> listener.onPowerSaveChange(powerSaveChange));
 	}
 
 	private void fireShutterStatusChanged(ShutterStatusChanged330 shutterStatusChanged) {
 		if (LOG.isInfoEnabled()) {
 			LOG.info("fireShutterStatusChanged(ShutterStatusChanged330)", shutterStatusChanged);
 		}
-		for (CdmServiceListener each : serviceListeners) {
-			each.onShutterStatusChanged(shutterStatusChanged);
-		}
+		serviceListeners.fire(listener -> listener.onShutterStatusChanged(shutterStatusChanged));
 	}
 
 	public void addServiceListener(CdmServiceListener listener) {
@@ -208,6 +184,10 @@ public class CdmEventDispatcher implements XfsStatusNotification {
 		}
 	}
 
+	public boolean hasServiceListeners() {
+		return !serviceListeners.isEmpty();
+	}
+
 	public void removeServiceListener(CdmServiceListener listener) {
 		serviceListeners.remove(listener);
 	}
@@ -1,19 +1,62 @@
 package at.o2xfs.xfs.service.std.cdm;
 
 import at.o2xfs.memory.core.MemorySystem;
+import at.o2xfs.memory.databind.win32.UShortWrapper;
 import at.o2xfs.xfs.api.WfsResult;
 import at.o2xfs.xfs.cdm.CdmMessage;
+import at.o2xfs.xfs.cdm.NoteErrorReason;
+import at.o2xfs.xfs.databind.XfsEnum16Wrapper;
 import at.o2xfs.xfs.service.api.cdm.event.DispenseListener;
 import at.o2xfs.xfs.service.api.event.IntermediateListener;
 import at.o2xfs.xfs.service.std.XfsResultFactory;
+import at.o2xfs.xfs.service.std.cdm.audit.AuditLog;
+import at.o2xfs.xfs.service.std.cdm.audit.AuditRecordType;
+import at.o2xfs.xfs.v3.cdm.Denomination3;
 
 public class DispenseCallback extends CdmCallback implements IntermediateListener {
 
 	private final DispenseListener listener;
+	private final AuditLog auditLog;
 
 	public DispenseCallback(MemorySystem memorySystem, XfsResultFactory factory, DispenseListener listener) {
+		this(memorySystem, factory, listener, null);
+	}
+
+	/**
+	 * @param auditLog where note errors, partial and incomplete dispenses are recorded, or {@code null}
+	 */
+	public DispenseCallback(MemorySystem memorySystem, XfsResultFactory factory, DispenseListener listener,
+			AuditLog auditLog) {
 		super(memorySystem, factory);
 		this.listener = listener;
+		this.auditLog = auditLog;
+	}
+
+	private void audit(AuditRecordType type, WfsResult wfsResult, Object value) {
+		if (auditLog != null) {
+			auditLog.append(type, wfsResult.getRequestId().getValue(), value);
+		}
+	}
+
+	@Override
+	protected void onIncompleteDispense(DispenseListener listener, WfsResult wfsResult) {
+		Denomination3 denomination = read(wfsResult, Denomination3.class);
+		audit(AuditRecordType.INCOMPLETE_DISPENSE, wfsResult, denomination);
+		listener.onIncompleteDispense(denomination);
+	}
+
+	@Override
+	protected void onNoteError(DispenseListener listener, WfsResult wfsResult) {
+		NoteErrorReason reason = read(wfsResult, XfsEnum16Wrapper.class).get(NoteErrorReason.class);
+		audit(AuditRecordType.NOTE_ERROR, wfsResult, reason);
+		listener.onNoteError(reason);
+	}
+
+	@Override
+	protected void onPartialDispense(DispenseListener listener, WfsResult wfsResult) {
+		int dispenseCount = read(wfsResult, UShortWrapper.class).getValue();
+		audit(AuditRecordType.PARTIAL_DISPENSE, wfsResult, Integer.valueOf(dispenseCount));
+		listener.onPartialDispense(dispenseCount);
 	}
 
 	@Override
@@ -0,0 +1,132 @@
+package at.o2xfs.xfs.service.std.cdm;
+
+import java.util.Objects;
+
+import at.o2xfs.memory.databind.win32.ULongWrapper;
+import at.o2xfs.memory.databind.win32.UShortWrapper;
+import at.o2xfs.xfs.api.RequestId;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.cdm.CdmMessage;
+import at.o2xfs.xfs.cdm.NoteErrorReason;
+import at.o2xfs.xfs.databind.XfsEnum16Wrapper;
+import at.o2xfs.xfs.service.std.XfsResultFactory;
+import at.o2xfs.xfs.v3.cdm.CashUnitError3;
+import at.o2xfs.xfs.v3.cdm.Denomination3;
+import at.o2xfs.xfs.v3_30.cdm.ItemInfoSummary330;
+
+/**
+ * View of the intermediate event of a dispense that is being handled.
+ * <p>
+ * The payload is decoded only when one of its accessors is called, at most once per event; a listener that only looks
+ * at {@link #getMessage()} or {@link #getRequestId()} decodes nothing. One instance is reused for every event of a
+ * request and is valid only during {@link DispenseEventListener#onDispenseEvent(DispenseEvent)}, while the
+ * {@code WFSRESULT} it reads from has not been freed.
+ */
+public final class DispenseEvent {
+
+	private final XfsResultFactory factory;
+
+	private WfsResult wfsResult;
+	private CdmMessage message;
+	private Object value;
+
+	DispenseEvent(XfsResultFactory factory) {
+		this.factory = Objects.requireNonNull(factory);
+	}
+
+	void bind(WfsResult wfsResult, CdmMessage message) {
+		this.wfsResult = wfsResult;
+		this.message = message;
+		value = null;
+	}
+
+	void unbind() {
+		wfsResult = null;
+		message = null;
+		value = null;
+	}
+
+	private WfsResult wfsResult() {
+		if (wfsResult == null) {
+			throw new IllegalStateException("DispenseEvent used outside of onDispenseEvent");
+		}
+		return wfsResult;
+	}
+
+	private <T> T value(Class<T> valueType) {
+		if (value == null) {
+			value = factory.create(wfsResult().getBuffer(), valueType);
+		}
+		return valueType.cast(value);
+	}
+
+	private void expect(CdmMessage expected) {
+		if (!expected.equals(getMessage())) {
+			throw new IllegalStateException("Not a " + expected + " event: " + message);
+		}
+	}
+
+	public CdmMessage getMessage() {
+		wfsResult();
+		return message;
+	}
+
+	public long getRequestId() {
+		return wfsResult().getRequestId().getValue();
+	}
+
+	/**
+	 * The delay in milliseconds of an {@code EXEE_DELAYEDDISPENSE}.
+	 */
+	public long getDelay() {
+		expect(CdmMessage.EXEE_DELAYEDDISPENSE);
+		return value(ULongWrapper.class).getValue();
+	}
+
+	/**
+	 * The request that started dispensing, of an {@code EXEE_STARTDISPENSE}.
+	 */
+	public long getStartedRequestId() {
+		expect(CdmMessage.EXEE_STARTDISPENSE);
+		return value(RequestId.class).getValue();
+	}
+
+	/**
+	 * The number of sub-dispense operations of an {@code EXEE_PARTIALDISPENSE}.
+	 */
+	public int getDispenseCount() {
+		expect(CdmMessage.EXEE_PARTIALDISPENSE);
+		return value(UShortWrapper.class).getValue();
+	}
+
+	public NoteErrorReason getNoteErrorReason() {
+		expect(CdmMessage.EXEE_NOTEERROR);
+		return value(XfsEnum16Wrapper.class).get(NoteErrorReason.class);
+	}
+
+	/**
+	 * The denomination of an {@code EXEE_SUBDISPENSEOK} or {@code EXEE_INCOMPLETEDISPENSE}.
+	 */
+	public Denomination3 getDenomination() {
+		if (!CdmMessage.EXEE_SUBDISPENSEOK.equals(getMessage())
+				&& !CdmMessage.EXEE_INCOMPLETEDISPENSE.equals(message)) {
+			throw new IllegalStateException("Not a denomination event: " + message);
+		}
+		return value(Denomination3.class);
+	}
+
+	public CashUnitError3 getCashUnitError() {
+		expect(CdmMessage.EXEE_CASHUNITERROR);
+		return value(CashUnitError3.class);
+	}
+
+	public ItemInfoSummary330 getItemInfoSummary() {
+		expect(CdmMessage.EXEE_INFO_AVAILABLE);
+		return value(ItemInfoSummary330.class);
+	}
+
+	@Override
+	public String toString() {
+		return wfsResult == null ? "DispenseEvent[unbound]" : "DispenseEvent[" + message + "]";
+	}
+}
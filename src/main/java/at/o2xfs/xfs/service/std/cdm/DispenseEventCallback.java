@@ -0,0 +1,62 @@
+package at.o2xfs.xfs.service.std.cdm;
+
+import java.util.Objects;
+
+import at.o2xfs.memory.core.MemorySystem;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.cdm.CdmMessage;
+import at.o2xfs.xfs.service.std.XfsResultFactory;
+import at.o2xfs.xfs.service.std.cdm.audit.AuditLog;
+import at.o2xfs.xfs.service.std.cdm.audit.AuditRecordType;
+
+/**
+ * Hands the intermediate events of a dispense to a {@link DispenseEventListener} through one reused
+ * {@link DispenseEvent}.
+ */
+public class DispenseEventCallback extends CdmCallback {
+
+	private final DispenseEventListener listener;
+	private final AuditLog auditLog;
+	private final DispenseEvent event;
+
+	/**
+	 * @param auditLog where note errors, partial and incomplete dispenses are recorded, or {@code null}
+	 */
+	public DispenseEventCallback(MemorySystem memorySystem, XfsResultFactory factory, DispenseEventListener listener,
+			AuditLog auditLog) {
+		super(memorySystem, factory);
+		this.listener = Objects.requireNonNull(listener);
+		this.auditLog = auditLog;
+		event = new DispenseEvent(factory);
+	}
+
+	private void audit() {
+		switch (event.getMessage()) {
+		case EXEE_NOTEERROR:
+			auditLog.append(AuditRecordType.NOTE_ERROR, event.getRequestId(), event.getNoteErrorReason());
+			break;
+		case EXEE_PARTIALDISPENSE:
+			auditLog.append(AuditRecordType.PARTIAL_DISPENSE, event.getRequestId(),
+					Integer.valueOf(event.getDispenseCount()));
+			break;
+		case EXEE_INCOMPLETEDISPENSE:
+			auditLog.append(AuditRecordType.INCOMPLETE_DISPENSE, event.getRequestId(), event.getDenomination());
+			break;
+		default:
+			break;
+		}
+	}
+
+	@Override
+	public void onIntermediateEvent(WfsResult wfsResult) {
+		event.bind(wfsResult, wfsResult.getEventId(CdmMessage.class));
+		try {
+			if (auditLog != null) {
+				audit();
+			}
+			listener.onDispenseEvent(event);
+		} finally {
+			event.unbind();
+		}
+	}
+}
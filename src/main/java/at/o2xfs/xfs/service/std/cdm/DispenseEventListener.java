@@ -0,0 +1,16 @@
+package at.o2xfs.xfs.service.std.cdm;
+
+/**
+ * Receives the intermediate events of a dispense as a {@link DispenseEvent} view.
+ *
+ * @see StdCdmService#dispense(at.o2xfs.xfs.v3.cdm.Dispense3, DispenseEventListener)
+ */
+@FunctionalInterface
+public interface DispenseEventListener {
+
+	/**
+	 * Called for every intermediate event. {@code event} is reused for the next one and must not be kept beyond this
+	 * call.
+	 */
+	void onDispenseEvent(DispenseEvent event);
+}
@@ -1,20 +1,30 @@
 package at.o2xfs.xfs.service.std.cdm;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import at.o2xfs.memory.core.Address;
+import at.o2xfs.memory.databind.win32.UShortWrapper;
+import at.o2xfs.xfs.api.DeviceStatus;
 import at.o2xfs.xfs.api.ServiceId;
 import at.o2xfs.xfs.api.WfsResult;
 import at.o2xfs.xfs.api.WfsVersion;
+import at.o2xfs.xfs.api.XfsEventClass;
 import at.o2xfs.xfs.api.XfsApi;
 import at.o2xfs.xfs.api.XfsException;
+import at.o2xfs.xfs.api.XfsMessage;
+import at.o2xfs.xfs.api.XfsSystemEvent;
 import at.o2xfs.xfs.cdm.CdmExecuteCommand;
 import at.o2xfs.xfs.cdm.CdmInfoCommand;
+import at.o2xfs.xfs.cdm.CdmMessage;
 import at.o2xfs.xfs.cdm.Position;
+import at.o2xfs.xfs.databind.XfsEnum32Wrapper;
 import at.o2xfs.xfs.service.api.ExecuteCommand;
 import at.o2xfs.xfs.service.api.InfoCommand;
 import at.o2xfs.xfs.service.api.XfsFuture;
@@ -23,7 +33,15 @@ import at.o2xfs.xfs.service.api.cdm.CdmServiceListener;
 import at.o2xfs.xfs.service.api.cdm.event.DispenseListener;
 import at.o2xfs.xfs.service.api.cdm.event.PresentListener;
 import at.o2xfs.xfs.service.api.cdm.event.ResetListener;
+import at.o2xfs.xfs.service.api.event.IntermediateListener;
+import at.o2xfs.xfs.service.std.AbstractXfsFuture;
+import at.o2xfs.xfs.service.std.DispatchEngine;
+import at.o2xfs.xfs.service.std.EventConflation;
+import at.o2xfs.xfs.service.std.InfoCache;
+import at.o2xfs.xfs.service.std.StdXfsFuture;
 import at.o2xfs.xfs.service.std.StdXfsService;
+import at.o2xfs.xfs.service.std.cdm.audit.AuditLog;
+import at.o2xfs.xfs.service.std.cdm.audit.AuditRecordType;
 import at.o2xfs.xfs.v3.cdm.Capabilities3;
 import at.o2xfs.xfs.v3.cdm.CashUnitInfo3;
 import at.o2xfs.xfs.v3.cdm.CurrencyExp3;
@@ -37,33 +55,174 @@ public class StdCdmService extends StdXfsService implements CdmService {
 	private static final Logger LOG = LogManager.getLogger(StdCdmService.class);
 
 	private final CdmEventDispatcher eventDispatcher;
+	private final InfoCache<CashUnitInfo3> cashUnitInfoCache;
+	private final InfoCache<Status3> statusCache;
+
+	private volatile AuditLog auditLog = null;
 
 	public StdCdmService(XfsApi xfsApi, Address hWnd, ServiceId serviceId, String logicalName, WfsVersion version,
-			WfsVersion spiVersion) {
+			WfsVersion spiVersion, DispatchEngine engine) {
 		super(xfsApi, new CdmFactory(xfsApi.getMemorySystem(), version.getVersion()), hWnd, serviceId, logicalName,
-				version, spiVersion);
-		eventDispatcher = new CdmEventDispatcher(xfsApi.getMemorySystem(), getResultFactory());
+				version, spiVersion, engine);
+		eventDispatcher = new CdmEventDispatcher(xfsApi.getMemorySystem(), getResultFactory(),
+				engine.getListenerDelivery());
+		Duration infoCacheStaleness = engine.getConfig().getInfoCacheStaleness();
+		cashUnitInfoCache = new InfoCache<>(infoCacheStaleness);
+		statusCache = new InfoCache<>(infoCacheStaleness);
+	}
+
+	private static boolean isCashUnitEvent(WfsResult wfsResult) {
+		CdmMessage message = XfsEnum32Wrapper.of(wfsResult.getEventId(), CdmMessage.class);
+		if (message != null) {
+			switch (message) {
+			case SRVE_CASHUNITINFOCHANGED:
+			case SRVE_COUNTS_CHANGED:
+			case USRE_CASHUNITTHRESHOLD:
+				return true;
+			default:
+				break;
+			}
+		}
+		return false;
+	}
+
+	private void invalidateInfoCache(WfsResult wfsResult) {
+		if (isCashUnitEvent(wfsResult)) {
+			cashUnitInfoCache.invalidate();
+		}
+		statusCache.invalidate();
+	}
+
+	/**
+	 * Events that invalidate a cache in use must not be lost, or the cache would serve stale values until they expire.
+	 */
+	@Override
+	protected boolean isCriticalEvent(WfsResult wfsResult) {
+		return statusCache.isEnabled() || cashUnitInfoCache.isEnabled() && isCashUnitEvent(wfsResult);
+	}
+
+	private void invalidateInfoCache() {
+		cashUnitInfoCache.invalidate();
+		statusCache.invalidate();
+	}
+
+	/**
+	 * Serves {@link #getCashUnitInfo()} and {@link #getStatus()} from memory for at most the given duration. The
+	 * cached values are dropped on related service and user events, on device status changes and whenever an
+	 * execute command is submitted or completes. {@link Duration#ZERO} disables caching.
+	 */
+	public void setInfoCacheStaleness(Duration maxStaleness) {
+		cashUnitInfoCache.setMaxStaleness(maxStaleness);
+		statusCache.setMaxStaleness(maxStaleness);
+		updateEventRegistration();
+	}
+
+	/**
+	 * Conflates the events that describe state: cash unit changes per cash unit number, counts changed, device
+	 * position, power save changes and device status. Note that of several pending counts changed events only the
+	 * last list of cash units is delivered.
+	 */
+	public static EventConflation stateEventConflation() {
+		return new EventConflation.Builder()
+				.conflate(XfsMessage.SERVICE_EVENT, CdmMessage.SRVE_CASHUNITINFOCHANGED,
+						(memorySystem, buffer) -> Integer
+								.valueOf(memorySystem.read(buffer, UShortWrapper.class).getValue()))
+				.conflate(XfsMessage.SERVICE_EVENT, CdmMessage.SRVE_COUNTS_CHANGED)
+				.conflate(XfsMessage.SERVICE_EVENT, CdmMessage.SRVE_DEVICEPOSITION)
+				.conflate(XfsMessage.SERVICE_EVENT, CdmMessage.SRVE_POWER_SAVE_CHANGE)
+				.conflate(XfsMessage.SYSTEM_EVENT, XfsSystemEvent.DEVICE_STATUS).build();
+	}
+
+	@Override
+	protected Set<XfsEventClass> getEventClassDemand() {
+		Set<XfsEventClass> result = super.getEventClassDemand();
+		if (eventDispatcher.hasServiceListeners() || cashUnitInfoCache.isEnabled()) {
+			result.add(XfsEventClass.SERVICE_EVENTS);
+			result.add(XfsEventClass.USER_EVENTS);
+		}
+		if (cashUnitInfoCache.isEnabled()) {
+			result.add(XfsEventClass.SYSTEM_EVENTS);
+		}
+		return result;
 	}
 
 	@Override
 	public void addServiceListener(CdmServiceListener listener) {
 		eventDispatcher.addServiceListener(listener);
+		updateEventRegistration();
 	}
 
 	@Override
 	public XfsFuture<? extends Denomination3> dispense(Dispense3 dispense, DispenseListener listener)
 			throws XfsException {
-		return execute(new ExecuteCommand.Builder<>(CdmExecuteCommand.DISPENSE).cmdData(dispense).build(),
-				new DispenseCallback(getMemorySystem(), getResultFactory(), listener), Denomination3.class);
+		AuditLog audit = auditLog;
+		return dispense(dispense, new DispenseCallback(getMemorySystem(), getResultFactory(), listener, audit), audit);
+	}
+
+	/**
+	 * Like {@link #dispense(Dispense3, DispenseListener)}, but hands every intermediate event to {@code listener} as a
+	 * reused {@link DispenseEvent} that decodes its payload only if asked to.
+	 */
+	public XfsFuture<? extends Denomination3> dispense(Dispense3 dispense, DispenseEventListener listener)
+			throws XfsException {
+		AuditLog audit = auditLog;
+		return dispense(dispense, new DispenseEventCallback(getMemorySystem(), getResultFactory(), listener, audit),
+				audit);
+	}
+
+	private XfsFuture<? extends Denomination3> dispense(Dispense3 dispense, IntermediateListener callback,
+			AuditLog audit) throws XfsException {
+		XfsFuture<? extends Denomination3> result = execute(
+				new ExecuteCommand.Builder<>(CdmExecuteCommand.DISPENSE).cmdData(dispense).build(), callback,
+				Denomination3.class);
+		if (audit != null) {
+			audit(audit, result, AuditRecordType.DISPENSE, AuditRecordType.DISPENSE_FAILED, dispense);
+		}
+		return result;
+	}
+
+	/**
+	 * Records the outcome of {@code future} once it completes: its value, or {@code command} if it has none, on
+	 * success and the exception on failure. Only queues the record, which is written on the audit log's own thread.
+	 */
+	private void audit(AuditLog audit, XfsFuture<?> future, AuditRecordType completed, AuditRecordType failed,
+			Object command) {
+		long requestId = future instanceof StdXfsFuture ? ((StdXfsFuture<?>) future).getRequestId().getValue() : 0L;
+		AbstractXfsFuture.toCompletionStage(future).whenComplete((value, exception) -> {
+			if (exception == null) {
+				audit.append(completed, requestId, value != null ? value : command);
+			} else {
+				Throwable cause = exception instanceof CompletionException && exception.getCause() != null
+						? exception.getCause()
+						: exception;
+				audit.append(failed, requestId, cause);
+			}
+		});
+	}
+
+	@Override
+	protected void deviceStatusChanged(DeviceStatus deviceStatus) {
+		invalidateInfoCache();
+	}
+
+	@Override
+	public <T> XfsFuture<T> execute(ExecuteCommand<?> command, IntermediateListener listener, Class<T> valueType,
+			Duration deadline) throws XfsException {
+		invalidateInfoCache();
+		XfsFuture<T> result = super.execute(command, listener, valueType, deadline);
+		AbstractXfsFuture.toCompletionStage(result).whenComplete((value, exception) -> invalidateInfoCache());
+		return result;
 	}
 
 	@Override
 	public void fireServiceEvent(WfsResult wfsResult) {
+		invalidateInfoCache(wfsResult);
 		eventDispatcher.fireServiceEvent(wfsResult);
 	}
 
 	@Override
 	public void fireUserEvent(WfsResult wfsResult) {
+		invalidateInfoCache(wfsResult);
 		eventDispatcher.fireUserEvent(wfsResult);
 	}
 
@@ -74,7 +233,8 @@ public class StdCdmService extends StdXfsService implements CdmService {
 
 	@Override
 	public XfsFuture<? extends CashUnitInfo3> getCashUnitInfo() throws XfsException {
-		return getInfo(InfoCommand.build(CdmInfoCommand.CASH_UNIT_INFO), CashUnitInfo3.class);
+		return cashUnitInfoCache
+				.get(() -> getInfo(InfoCommand.build(CdmInfoCommand.CASH_UNIT_INFO), CashUnitInfo3.class));
 	}
 
 	@Override
@@ -85,13 +245,19 @@ public class StdCdmService extends StdXfsService implements CdmService {
 
 	@Override
 	public XfsFuture<? extends Status3> getStatus() throws XfsException {
-		return getInfo(InfoCommand.build(CdmInfoCommand.STATUS), Status3.class);
+		return statusCache.get(() -> getInfo(InfoCommand.build(CdmInfoCommand.STATUS), Status3.class));
 	}
 
 	@Override
 	public XfsFuture<Void> present(Position position, PresentListener listener) throws XfsException {
-		return execute(new ExecuteCommand.Builder<>(CdmExecuteCommand.PRESENT).cmdData(position).build(),
+		AuditLog audit = auditLog;
+		XfsFuture<Void> result = execute(
+				new ExecuteCommand.Builder<>(CdmExecuteCommand.PRESENT).cmdData(position).build(),
 				new PresentCallback(getMemorySystem(), getResultFactory(), listener), null);
+		if (audit != null) {
+			audit(audit, result, AuditRecordType.PRESENT, AuditRecordType.PRESENT_FAILED, position);
+		}
+		return result;
 	}
 
 	@Override
@@ -100,8 +266,19 @@ public class StdCdmService extends StdXfsService implements CdmService {
 		return null;
 	}
 
+	/**
+	 * Sets the log that dispense and present outcomes are recorded to, or {@code null} to stop recording, and returns
+	 * the previous one. The log is not closed by this service.
+	 */
+	public AuditLog setAuditLog(AuditLog auditLog) {
+		AuditLog result = this.auditLog;
+		this.auditLog = auditLog;
+		return result;
+	}
+
 	@Override
 	public void removeServiceListener(CdmServiceListener listener) {
 		eventDispatcher.removeServiceListener(listener);
+		updateEventRegistration();
 	}
 }
@@ -0,0 +1,23 @@
+package at.o2xfs.xfs.service.std.cdm.audit;
+
+/**
+ * Layout of an audit log: a header of magic and version, followed by records of
+ * <p>
+ * {@code int length, int crc, long sequence, long timestamp, long requestId, int type, byte[] text}
+ * <p>
+ * in big-endian byte order, where {@code length} counts the bytes after the checksum and {@code crc} is the CRC-32 of
+ * those bytes. The text is UTF-8. A record that is cut off or fails its checksum ends the log.
+ */
+final class AuditFormat {
+
+	static final int MAGIC = 0x4F324341;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int RECORD_HEADER_SIZE = 36;
+	static final int BODY_HEADER_SIZE = RECORD_HEADER_SIZE - 8;
+	static final int MAX_TEXT_SIZE = 64 * 1024;
+
+	private AuditFormat() {
+		throw new AssertionError();
+	}
+}
@@ -0,0 +1,359 @@
+package at.o2xfs.xfs.service.std.cdm.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+/**
+ * Append-only audit log of CDM transaction outcomes.
+ * <p>
+ * {@link #append(AuditRecordType, long, Object)} only queues the record; a dedicated thread writes whatever has
+ * queued up since its last write and then forces it to disk with a single {@code fsync}, so the cost of a sync is
+ * shared by every record of the batch. {@link #sync()} tells when the records appended so far are on disk.
+ * <p>
+ * On open, an existing log is scanned and cut back to its last intact record, so a write torn by a crash does not
+ * hide the records appended after the restart.
+ */
+public final class AuditLog implements Closeable {
+
+	private static final Logger LOG = LogManager.getLogger(AuditLog.class);
+
+	private static final int DEFAULT_CAPACITY = 16384;
+	private static final int DEFAULT_BATCH_SIZE = 512;
+
+	private static final class Entry {
+
+		private final AuditRecordType type;
+		private final long timestamp;
+		private final long requestId;
+		private final Object value;
+		private final CompletableFuture<Void> barrier;
+
+		private Entry(AuditRecordType type, long timestamp, long requestId, Object value,
+				CompletableFuture<Void> barrier) {
+			this.type = type;
+			this.timestamp = timestamp;
+			this.requestId = requestId;
+			this.value = value;
+			this.barrier = barrier;
+		}
+	}
+
+	private final Path path;
+	private final FileChannel channel;
+	private final int batchSize;
+	private final BlockingQueue<Entry> queue;
+	private final CRC32 crc;
+	private final LongAdder appended;
+	private final LongAdder written;
+	private final LongAdder syncs;
+	private final LongAdder blocked;
+	private final LongAdder dropped;
+	private final Thread thread;
+
+	private ByteBuffer buffer;
+	private long position;
+	private long sequence = 0L;
+
+	private volatile boolean closed = false;
+
+	public AuditLog(Path path) throws IOException {
+		this(path, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+	}
+
+	public AuditLog(Path path, int capacity, int batchSize) throws IOException {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize: " + batchSize);
+		}
+		this.path = Objects.requireNonNull(path);
+		this.batchSize = batchSize;
+		queue = new ArrayBlockingQueue<>(capacity);
+		crc = new CRC32();
+		appended = new LongAdder();
+		written = new LongAdder();
+		syncs = new LongAdder();
+		blocked = new LongAdder();
+		dropped = new LongAdder();
+		buffer = ByteBuffer.allocate(batchSize * 256);
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			recover();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		thread = new Thread(this::doRun, "AuditLog");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void recover() throws IOException {
+		long size = channel.size();
+		if (size < AuditFormat.HEADER_SIZE) {
+			ByteBuffer header = ByteBuffer.allocate(AuditFormat.HEADER_SIZE);
+			header.putInt(AuditFormat.MAGIC).putInt(AuditFormat.VERSION).flip();
+			channel.truncate(0L);
+			while (header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			channel.force(true);
+			position = AuditFormat.HEADER_SIZE;
+			return;
+		}
+		try (AuditLogReader reader = new AuditLogReader(path)) {
+			Optional<AuditRecord> record;
+			while ((record = reader.next()).isPresent()) {
+				sequence = record.get().getSequence();
+			}
+			position = reader.getPosition();
+		}
+		if (position < size) {
+			LOG.warn("Truncating {} bytes of a torn record at offset {} of {}", size - position, position, path);
+			channel.truncate(position);
+			channel.force(true);
+		}
+	}
+
+	private void doRun() {
+		List<Entry> batch = new ArrayList<>(batchSize);
+		try {
+			while (!closed || !queue.isEmpty()) {
+				Entry first = queue.poll(100L, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				write(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			LOG.debug("Interrupted", e);
+		}
+	}
+
+	private void write(List<Entry> batch) {
+		long firstSequence = sequence;
+		int records = 0;
+		buffer.clear();
+		for (Entry each : batch) {
+			if (each.type != null) {
+				encode(each);
+				records++;
+			}
+		}
+		buffer.flip();
+		try {
+			long offset = position;
+			while (buffer.hasRemaining()) {
+				offset += channel.write(buffer, offset);
+			}
+			channel.force(false);
+			position = offset;
+			written.add(records);
+			syncs.increment();
+			complete(batch, null);
+		} catch (IOException e) {
+			LOG.error(new ParameterizedMessage("Error writing {} audit records to {}", records, path), e);
+			sequence = firstSequence;
+			dropped.add(records);
+			discardPartialWrite();
+			complete(batch, e);
+		}
+	}
+
+	private void discardPartialWrite() {
+		try {
+			if (channel.size() > position) {
+				channel.truncate(position);
+			}
+		} catch (IOException e) {
+			LOG.error(new ParameterizedMessage("Error truncating {} to {}", path, position), e);
+		}
+	}
+
+	private void complete(List<Entry> batch, IOException exception) {
+		for (Entry each : batch) {
+			if (each.barrier == null) {
+				continue;
+			} else if (exception == null) {
+				each.barrier.complete(null);
+			} else {
+				each.barrier.completeExceptionally(exception);
+			}
+		}
+	}
+
+	private void encode(Entry entry) {
+		byte[] text = text(entry).getBytes(StandardCharsets.UTF_8);
+		if (text.length > AuditFormat.MAX_TEXT_SIZE) {
+			text = Arrays.copyOf(text, AuditFormat.MAX_TEXT_SIZE);
+		}
+		ensureCapacity(AuditFormat.RECORD_HEADER_SIZE + text.length);
+		int start = buffer.position();
+		buffer.putInt(AuditFormat.BODY_HEADER_SIZE + text.length);
+		buffer.putInt(0);
+		buffer.putLong(++sequence);
+		buffer.putLong(entry.timestamp);
+		buffer.putLong(entry.requestId);
+		buffer.putInt(entry.type.getValue());
+		buffer.put(text);
+		ByteBuffer body = buffer.duplicate();
+		body.flip().position(start + 8);
+		crc.reset();
+		crc.update(body);
+		buffer.putInt(start + 4, (int) crc.getValue());
+	}
+
+	private String text(Entry entry) {
+		try {
+			return String.valueOf(entry.value);
+		} catch (RuntimeException e) {
+			LOG.error(new ParameterizedMessage("Error formatting {} of request {}", entry.type, entry.requestId), e);
+			return entry.value.getClass().getName() + ": " + e;
+		}
+	}
+
+	private void ensureCapacity(int size) {
+		if (buffer.remaining() < size) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + size));
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
+	}
+
+	private boolean enqueue(Entry entry) {
+		if (closed) {
+			return false;
+		} else if (queue.offer(entry)) {
+			return !closed || !queue.remove(entry);
+		}
+		blocked.increment();
+		LOG.warn("Audit log backlog of {} records is full, waiting", queue.size());
+		boolean interrupted = false;
+		try {
+			while (!closed) {
+				try {
+					if (queue.offer(entry, 100L, TimeUnit.MILLISECONDS)) {
+						return !closed || !queue.remove(entry);
+					}
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			return false;
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Queues a record of {@code value}, whose {@link Object#toString()} is taken on the writer thread.
+	 *
+	 * @return {@code false} if the log is closed and the record was dropped
+	 */
+	public boolean append(AuditRecordType type, long requestId, Object value) {
+		Objects.requireNonNull(type);
+		if (enqueue(new Entry(type, System.currentTimeMillis(), requestId, value, null))) {
+			appended.increment();
+			return true;
+		}
+		dropped.increment();
+		LOG.warn("Audit log {} is closed, dropped {} of request {}: {}", path, type, requestId, value);
+		return false;
+	}
+
+	/**
+	 * Returns a future that completes once every record appended before on this thread has been forced to disk.
+	 */
+	public CompletableFuture<Void> sync() {
+		CompletableFuture<Void> result = new CompletableFuture<>();
+		if (!enqueue(new Entry(null, 0L, 0L, null, result))) {
+			result.completeExceptionally(new ClosedChannelException());
+		}
+		return result;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public int getBacklog() {
+		return queue.size();
+	}
+
+	public long getAppended() {
+		return appended.sum();
+	}
+
+	public long getWritten() {
+		return written.sum();
+	}
+
+	public long getSyncs() {
+		return syncs.sum();
+	}
+
+	public long getBlockedAppends() {
+		return blocked.sum();
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Waits until the records still queued have been written and synced, then closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join(TimeUnit.SECONDS.toMillis(10L));
+				if (thread.isAlive()) {
+					LOG.warn("Waiting for {} audit records to be written to {}", queue.size(), path);
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		List<Entry> remaining = new ArrayList<>();
+		queue.drainTo(remaining);
+		if (!remaining.isEmpty()) {
+			write(remaining);
+		}
+		channel.close();
+	}
+}
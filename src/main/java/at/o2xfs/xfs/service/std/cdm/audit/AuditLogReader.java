@@ -0,0 +1,128 @@
+package at.o2xfs.xfs.service.std.cdm.audit;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * Reads an audit log written by {@link AuditLog}.
+ * <p>
+ * Reading stops at the first record that is cut off or fails its checksum, which is what a crash in the middle of a
+ * write leaves behind. Run as a program to print a log, one record per line.
+ */
+public final class AuditLogReader implements Closeable {
+
+	private final DataInputStream in;
+	private final CRC32 crc;
+
+	private long position;
+	private boolean end = false;
+
+	public AuditLogReader(Path path) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+		crc = new CRC32();
+		try {
+			if (in.readInt() != AuditFormat.MAGIC) {
+				throw new IOException("Not an audit log: " + path);
+			}
+			int version = in.readInt();
+			if (version != AuditFormat.VERSION) {
+				throw new IOException("Unsupported audit log version: " + version);
+			}
+			position = AuditFormat.HEADER_SIZE;
+		} catch (EOFException e) {
+			in.close();
+			throw new IOException("Not an audit log: " + path, e);
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the next record, or nothing at the end of the log, including a record cut off by a crash.
+	 */
+	public Optional<AuditRecord> next() throws IOException {
+		if (end) {
+			return Optional.empty();
+		}
+		byte[] body;
+		int checksum;
+		try {
+			int length = in.readInt();
+			if (length < AuditFormat.BODY_HEADER_SIZE
+					|| length > AuditFormat.BODY_HEADER_SIZE + AuditFormat.MAX_TEXT_SIZE) {
+				end = true;
+				return Optional.empty();
+			}
+			checksum = in.readInt();
+			body = new byte[length];
+			in.readFully(body);
+		} catch (EOFException e) {
+			end = true;
+			return Optional.empty();
+		}
+		crc.reset();
+		crc.update(body);
+		if ((int) crc.getValue() != checksum) {
+			end = true;
+			return Optional.empty();
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(body);
+		long sequence = buffer.getLong();
+		long timestamp = buffer.getLong();
+		long requestId = buffer.getLong();
+		int type = buffer.getInt();
+		String text = new String(body, AuditFormat.BODY_HEADER_SIZE, body.length - AuditFormat.BODY_HEADER_SIZE,
+				StandardCharsets.UTF_8);
+		position += 8 + body.length;
+		try {
+			return Optional.of(new AuditRecord(sequence, timestamp, requestId, AuditRecordType.of(type), text));
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage() + " at offset " + (position - 8 - body.length), e);
+		}
+	}
+
+	/**
+	 * Offset just past the last record returned, which is where a writer continues the log.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: AuditLogReader <file>");
+			System.exit(2);
+		}
+		Path path = Paths.get(args[0]);
+		try (AuditLogReader reader = new AuditLogReader(path)) {
+			Optional<AuditRecord> record;
+			while ((record = reader.next()).isPresent()) {
+				AuditRecord each = record.get();
+				System.out.println(each.getSequence() + "\t" + Instant.ofEpochMilli(each.getTimestamp()) + "\t"
+						+ each.getType() + "\t" + each.getRequestId() + "\t" + each.getText());
+			}
+			long size = Files.size(path);
+			if (reader.getPosition() < size) {
+				System.err.println("Ignored " + (size - reader.getPosition()) + " trailing bytes at offset "
+						+ reader.getPosition());
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package at.o2xfs.xfs.service.std.cdm.audit;
+
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+public final class AuditRecord {
+
+	private final long sequence;
+	private final long timestamp;
+	private final long requestId;
+	private final AuditRecordType type;
+	private final String text;
+
+	AuditRecord(long sequence, long timestamp, long requestId, AuditRecordType type, String text) {
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+		this.requestId = requestId;
+		this.type = Objects.requireNonNull(type);
+		this.text = Objects.requireNonNull(text);
+	}
+
+	/**
+	 * Position of the record in the log, starting at one and never reused, not even across restarts.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * {@link System#currentTimeMillis()} at which the outcome was observed.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * The request the outcome belongs to, or zero if it is unknown.
+	 */
+	public long getRequestId() {
+		return requestId;
+	}
+
+	public AuditRecordType getType() {
+		return type;
+	}
+
+	/**
+	 * The {@link Object#toString()} of the recorded value.
+	 */
+	public String getText() {
+		return text;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("sequence", sequence).append("timestamp", timestamp)
+				.append("requestId", requestId).append("type", type).append("text", text).toString();
+	}
+}
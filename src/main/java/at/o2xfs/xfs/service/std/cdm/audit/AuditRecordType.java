@@ -0,0 +1,34 @@
+package at.o2xfs.xfs.service.std.cdm.audit;
+
+/**
+ * Kind of an {@link AuditRecord}. The value is what is stored in the log and must never change.
+ */
+public enum AuditRecordType {
+
+	DISPENSE(1),
+	DISPENSE_FAILED(2),
+	NOTE_ERROR(3),
+	PARTIAL_DISPENSE(4),
+	INCOMPLETE_DISPENSE(5),
+	PRESENT(6),
+	PRESENT_FAILED(7);
+
+	private final int value;
+
+	private AuditRecordType(int value) {
+		this.value = value;
+	}
+
+	public int getValue() {
+		return value;
+	}
+
+	public static AuditRecordType of(int value) {
+		for (AuditRecordType each : values()) {
+			if (each.value == value) {
+				return each;
+			}
+		}
+		throw new IllegalArgumentException("Unknown record type: " + value);
+	}
+}
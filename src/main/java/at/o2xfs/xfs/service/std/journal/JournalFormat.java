@@ -0,0 +1,20 @@
+package at.o2xfs.xfs.service.std.journal;
+
+/**
+ * Layout of a journal file: a header of magic and version, followed by records of
+ * <p>
+ * {@code int length, int msg, long timestamp, long requestId, int serviceId, int errorCode, int eventId, byte[] payload}
+ * <p>
+ * in native byte order, where {@code length} counts the bytes after itself. A length of zero marks the end.
+ */
+final class JournalFormat {
+
+	static final int MAGIC = 0x4F32584A;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int RECORD_HEADER_SIZE = 36;
+
+	private JournalFormat() {
+		throw new AssertionError();
+	}
+}
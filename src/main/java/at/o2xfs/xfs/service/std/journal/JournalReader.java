@@ -0,0 +1,105 @@
+package at.o2xfs.xfs.service.std.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Reads a journal written by {@link JournalWriter} through a read-only memory mapping that is moved along the file
+ * region by region, so a journal may grow beyond what a single mapping can hold.
+ */
+public final class JournalReader implements Closeable {
+
+	private static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final long size;
+	private final int regionSize;
+
+	private MappedByteBuffer region;
+	private long regionStart;
+	private long position;
+
+	public JournalReader(Path path) throws IOException {
+		this(path, DEFAULT_REGION_SIZE);
+	}
+
+	public JournalReader(Path path, int regionSize) throws IOException {
+		if (regionSize < JournalFormat.HEADER_SIZE + JournalFormat.RECORD_HEADER_SIZE) {
+			throw new IllegalArgumentException("regionSize: " + regionSize);
+		}
+		this.regionSize = regionSize;
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			size = channel.size();
+			if (size < JournalFormat.HEADER_SIZE) {
+				throw new IOException("Not a journal: " + path);
+			}
+			map(0L, JournalFormat.HEADER_SIZE);
+			if (region.getInt(0) != JournalFormat.MAGIC) {
+				throw new IOException("Not a journal: " + path);
+			} else if (region.getInt(4) != JournalFormat.VERSION) {
+				throw new IOException("Unsupported journal version: " + region.getInt(4));
+			}
+			position = JournalFormat.HEADER_SIZE;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private void map(long start, int length) throws IOException {
+		region = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		region.order(ByteOrder.nativeOrder());
+		regionStart = start;
+	}
+
+	/**
+	 * Maps the next {@code length} bytes, which the caller has checked to be within the file.
+	 */
+	private void ensureMapped(int length) throws IOException {
+		if (position + length > regionStart + region.capacity()) {
+			map(position, (int) Math.min(Math.max(regionSize, length), size - position));
+		}
+	}
+
+	/**
+	 * Returns the next record, or nothing at the end of the journal, including a record cut off by a crash.
+	 */
+	public Optional<JournalRecord> next() throws IOException {
+		long remaining = size - position;
+		if (remaining < JournalFormat.RECORD_HEADER_SIZE) {
+			return Optional.empty();
+		}
+		ensureMapped(JournalFormat.RECORD_HEADER_SIZE);
+		int length = region.getInt((int) (position - regionStart));
+		if (length < JournalFormat.RECORD_HEADER_SIZE - 4 || length > remaining - 4
+				|| length > Integer.MAX_VALUE - 4) {
+			return Optional.empty();
+		}
+		ensureMapped(4 + length);
+		int offset = (int) (position - regionStart);
+		int msg = region.getInt(offset + 4);
+		long timestamp = region.getLong(offset + 8);
+		long requestId = region.getLong(offset + 16);
+		int serviceId = region.getInt(offset + 24);
+		int errorCode = region.getInt(offset + 28);
+		int eventId = region.getInt(offset + 32);
+		byte[] payload = new byte[length - (JournalFormat.RECORD_HEADER_SIZE - 4)];
+		region.position(offset + JournalFormat.RECORD_HEADER_SIZE);
+		region.get(payload);
+		position += 4 + length;
+		return Optional.of(new JournalRecord(msg, timestamp, requestId, serviceId, errorCode, eventId, payload));
+	}
+
+	@Override
+	public void close() throws IOException {
+		region = null;
+		channel.close();
+	}
+}
@@ -0,0 +1,69 @@
+package at.o2xfs.xfs.service.std.journal;
+
+import java.util.Objects;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+public final class JournalRecord {
+
+	private final int msg;
+	private final long timestamp;
+	private final long requestId;
+	private final int serviceId;
+	private final int errorCode;
+	private final int eventId;
+	private final byte[] payload;
+
+	JournalRecord(int msg, long timestamp, long requestId, int serviceId, int errorCode, int eventId,
+			byte[] payload) {
+		this.msg = msg;
+		this.timestamp = timestamp;
+		this.requestId = requestId;
+		this.serviceId = serviceId;
+		this.errorCode = errorCode;
+		this.eventId = eventId;
+		this.payload = Objects.requireNonNull(payload);
+	}
+
+	public int getMsg() {
+		return msg;
+	}
+
+	/**
+	 * {@link System#nanoTime()} at which the message was received.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public long getRequestId() {
+		return requestId;
+	}
+
+	public int getServiceId() {
+		return serviceId;
+	}
+
+	public int getErrorCode() {
+		return errorCode;
+	}
+
+	public int getEventId() {
+		return eventId;
+	}
+
+	public byte[] getPayload() {
+		return payload.clone();
+	}
+
+	byte[] payload() {
+		return payload;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("msg", msg).append("timestamp", timestamp)
+				.append("requestId", requestId).append("serviceId", serviceId).append("errorCode", errorCode)
+				.append("eventId", eventId).append("payload", payload.length).toString();
+	}
+}
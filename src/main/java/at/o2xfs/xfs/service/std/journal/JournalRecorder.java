@@ -0,0 +1,82 @@
+package at.o2xfs.xfs.service.std.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+import at.o2xfs.memory.core.MemorySystem;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.api.XfsMessage;
+
+/**
+ * Appends every message received by the event dispatcher to a journal. Recording stops at the first I/O error, a
+ * payload that cannot be encoded is recorded as missing. Such a failure is logged as a warning once per message and
+ * event id, further ones at debug level.
+ */
+public final class JournalRecorder implements Closeable {
+
+	private static final Logger LOG = LogManager.getLogger(JournalRecorder.class);
+
+	private static final byte[] NO_PAYLOAD = new byte[0];
+
+	private final JournalWriter writer;
+	private final PayloadCodec codec;
+	private final MemorySystem memorySystem;
+	private final Set<Long> encodeFailures;
+
+	private volatile boolean failed = false;
+
+	public JournalRecorder(JournalWriter writer, PayloadCodec codec, MemorySystem memorySystem) {
+		this.writer = Objects.requireNonNull(writer);
+		this.codec = Objects.requireNonNull(codec);
+		this.memorySystem = Objects.requireNonNull(memorySystem);
+		encodeFailures = ConcurrentHashMap.newKeySet();
+	}
+
+	private byte[] encode(XfsMessage message, WfsResult wfsResult) {
+		try {
+			return codec.encode(memorySystem, message, wfsResult);
+		} catch (RuntimeException e) {
+			ParameterizedMessage logMessage = new ParameterizedMessage(
+					"Error encoding payload: message={},wfsResult={}", message, wfsResult);
+			if (encodeFailures.add(message.getValue() << 32 | wfsResult.getEventId() & 0xFFFFFFFFL)) {
+				LOG.warn(logMessage, e);
+			} else {
+				LOG.debug(logMessage, e);
+			}
+			return NO_PAYLOAD;
+		}
+	}
+
+	public void record(XfsMessage message, long timestamp, WfsResult wfsResult) {
+		if (failed) {
+			return;
+		}
+		try {
+			writer.append((int) message.getValue(), timestamp, wfsResult.getRequestId().getValue(),
+					wfsResult.getServiceId().getValue(), wfsResult.getErrorCode(), wfsResult.getEventId(),
+					encode(message, wfsResult));
+		} catch (ClosedChannelException e) {
+			failed = true;
+		} catch (IOException e) {
+			failed = true;
+			LOG.error("Error writing journal, recording stopped", e);
+		}
+	}
+
+	public long getRecords() {
+		return writer.getRecords();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
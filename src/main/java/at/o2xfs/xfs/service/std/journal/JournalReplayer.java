@@ -0,0 +1,107 @@
+package at.o2xfs.xfs.service.std.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.xfs.api.RequestId;
+import at.o2xfs.xfs.api.ServiceId;
+import at.o2xfs.xfs.api.XfsMessage;
+import at.o2xfs.xfs.service.std.WindowProcCallback;
+import at.o2xfs.xfs.service.std.loopback.LoopbackXfsApi;
+
+/**
+ * Feeds a journal back into a {@link WindowProcCallback}, allocating each {@code WFSRESULT} in a
+ * {@link LoopbackXfsApi}.
+ * <p>
+ * Service ids are replayed as recorded, and the loopback hands them out in the order services are opened, so the
+ * services should be opened in their original order first. Completions of requests the replaying client never
+ * submitted are parked by the dispatcher and freed after its grace period.
+ */
+public final class JournalReplayer {
+
+	private static final Logger LOG = LogManager.getLogger(JournalReplayer.class);
+
+	public enum Speed {
+
+		/**
+		 * Keeps the recorded gaps between messages.
+		 */
+		ORIGINAL,
+
+		/**
+		 * Replays without pauses.
+		 */
+		MAXIMUM
+	}
+
+	private static final Map<Integer, XfsMessage> MESSAGES = new HashMap<>();
+
+	static {
+		for (XfsMessage each : XfsMessage.values()) {
+			MESSAGES.put(Integer.valueOf((int) each.getValue()), each);
+		}
+	}
+
+	private final LoopbackXfsApi xfsApi;
+	private final WindowProcCallback callback;
+	private final PayloadCodec codec;
+
+	public JournalReplayer(LoopbackXfsApi xfsApi, WindowProcCallback callback, PayloadCodec codec) {
+		this.xfsApi = Objects.requireNonNull(xfsApi);
+		this.callback = Objects.requireNonNull(callback);
+		this.codec = Objects.requireNonNull(codec);
+	}
+
+	private static void awaitUntil(long deadline) throws InterruptedException {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0L) {
+			LockSupport.parkNanos(remaining);
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+	}
+
+	/**
+	 * Replays the journal on the calling thread and returns the number of messages delivered.
+	 */
+	public long replay(Path journal, Speed speed) throws IOException, InterruptedException {
+		try (JournalReader reader = new JournalReader(journal)) {
+			long started = System.nanoTime();
+			long first = 0L;
+			long result = 0L;
+			boolean empty = true;
+			Optional<JournalRecord> next;
+			while ((next = reader.next()).isPresent()) {
+				JournalRecord record = next.get();
+				if (empty) {
+					first = record.getTimestamp();
+					empty = false;
+				}
+				XfsMessage message = MESSAGES.get(Integer.valueOf(record.getMsg()));
+				if (message == null) {
+					LOG.warn("Skipping unknown message: {}", record);
+					continue;
+				}
+				if (Speed.ORIGINAL.equals(speed)) {
+					awaitUntil(started + record.getTimestamp() - first);
+				}
+				Address address = xfsApi.allocateResult(ServiceId.build(record.getServiceId()),
+						RequestId.build(record.getRequestId()), record.getErrorCode(), record.getEventId(),
+						codec.decode(message, record.getEventId(), record.payload()));
+				callback.windowProc(record.getMsg(), address.getValue());
+				result++;
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package at.o2xfs.xfs.service.std.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only journal file, written through a memory mapping that is extended region by region.
+ * <p>
+ * A record becomes visible to readers once its length has been written, which happens after its content. The file
+ * is not truncated on {@link #close()}, as a mapped file cannot be on every platform: the unused rest of the last
+ * region stays zero, which readers take as the end of the journal.
+ */
+public final class JournalWriter implements Closeable {
+
+	private static final int DEFAULT_REGION_SIZE = 16 * 1024 * 1024;
+
+	private final FileChannel channel;
+	private final int regionSize;
+
+	private MappedByteBuffer region;
+	private long regionStart;
+	private long position;
+	private long records = 0L;
+
+	public JournalWriter(Path path) throws IOException {
+		this(path, DEFAULT_REGION_SIZE);
+	}
+
+	public JournalWriter(Path path, int regionSize) throws IOException {
+		if (regionSize < JournalFormat.HEADER_SIZE + JournalFormat.RECORD_HEADER_SIZE) {
+			throw new IllegalArgumentException("regionSize: " + regionSize);
+		}
+		this.regionSize = regionSize;
+		channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			map(0L, regionSize);
+			region.putInt(0, JournalFormat.MAGIC);
+			region.putInt(4, JournalFormat.VERSION);
+			position = JournalFormat.HEADER_SIZE;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private void map(long start, int size) throws IOException {
+		region = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+		region.order(ByteOrder.nativeOrder());
+		regionStart = start;
+	}
+
+	private void ensureCapacity(int size) throws IOException {
+		if (position + size > regionStart + region.capacity()) {
+			map(position, Math.max(regionSize, size));
+		}
+	}
+
+	public synchronized void append(int msg, long timestamp, long requestId, int serviceId, int errorCode,
+			int eventId, byte[] payload) throws IOException {
+		if (!channel.isOpen()) {
+			throw new ClosedChannelException();
+		}
+		int length = JournalFormat.RECORD_HEADER_SIZE - 4 + payload.length;
+		ensureCapacity(4 + length);
+		int offset = (int) (position - regionStart);
+		region.putInt(offset + 4, msg);
+		region.putLong(offset + 8, timestamp);
+		region.putLong(offset + 16, requestId);
+		region.putInt(offset + 24, serviceId);
+		region.putInt(offset + 28, errorCode);
+		region.putInt(offset + 32, eventId);
+		region.position(offset + JournalFormat.RECORD_HEADER_SIZE);
+		region.put(payload);
+		region.putInt(offset, length);
+		position += 4 + length;
+		records++;
+	}
+
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	public synchronized long size() {
+		return position;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (!channel.isOpen()) {
+			return;
+		}
+		try {
+			region.force();
+		} finally {
+			region = null;
+			channel.close();
+		}
+	}
+}
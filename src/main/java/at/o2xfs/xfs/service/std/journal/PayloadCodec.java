@@ -0,0 +1,40 @@
+package at.o2xfs.xfs.service.std.journal;
+
+import at.o2xfs.memory.core.MemorySystem;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.api.XfsMessage;
+
+/**
+ * Converts the {@code lpBuffer} of a {@code WFSRESULT} to the bytes stored in a journal and back. Only the codec
+ * knows the structure behind an event or command, so it decides what is recorded.
+ */
+public interface PayloadCodec {
+
+	/**
+	 * Called on the dispatch thread while the {@code WFSRESULT} is still valid.
+	 */
+	byte[] encode(MemorySystem memorySystem, XfsMessage message, WfsResult wfsResult);
+
+	/**
+	 * Returns the payload to replay, {@code null} for none.
+	 */
+	Object decode(XfsMessage message, int eventId, byte[] payload);
+
+	/**
+	 * Records the {@code WFSRESULT} header only and replays every message without payload.
+	 */
+	static PayloadCodec headerOnly() {
+		return new PayloadCodec() {
+
+			@Override
+			public byte[] encode(MemorySystem memorySystem, XfsMessage message, WfsResult wfsResult) {
+				return new byte[0];
+			}
+
+			@Override
+			public Object decode(XfsMessage message, int eventId, byte[] payload) {
+				return null;
+			}
+		};
+	}
+}
@@ -0,0 +1,115 @@
+package at.o2xfs.xfs.service.std.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import at.o2xfs.memory.core.MemorySystem;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.api.XfsMessage;
+
+/**
+ * Records payloads that are read as {@link Serializable} objects, e.g. those of the loopback memory system, with Java
+ * serialization. Other payloads are recorded as missing.
+ * <p>
+ * A journal may come from another machine, so only the given payload types are recorded and replayed: the types
+ * themselves, their subtypes and the other types of their packages, as well as the JDK's value and collection types.
+ * Replaying any other class fails before it is instantiated.
+ */
+public class SerializingPayloadCodec implements PayloadCodec {
+
+	private static final int MAX_DEPTH = 64;
+
+	private static final List<String> JDK_PACKAGES = Arrays.asList("java.lang", "java.math", "java.time", "java.util");
+
+	private final Set<Class<?>> payloadTypes;
+	private final Set<String> packages;
+	private final ObjectInputFilter filter;
+
+	public SerializingPayloadCodec(Collection<Class<?>> payloadTypes) {
+		this.payloadTypes = new HashSet<>(payloadTypes);
+		packages = new HashSet<>(JDK_PACKAGES);
+		for (Class<?> each : this.payloadTypes) {
+			packages.add(each.getPackageName());
+		}
+		filter = this::check;
+	}
+
+	private boolean isAllowed(Class<?> type) {
+		Class<?> componentType = type;
+		while (componentType.isArray()) {
+			componentType = componentType.getComponentType();
+		}
+		if (componentType.isPrimitive() || packages.contains(componentType.getPackageName())) {
+			return true;
+		}
+		for (Class<?> each : payloadTypes) {
+			if (each.isAssignableFrom(componentType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private ObjectInputFilter.Status check(ObjectInputFilter.FilterInfo info) {
+		if (info.depth() > MAX_DEPTH) {
+			return ObjectInputFilter.Status.REJECTED;
+		} else if (info.serialClass() == null) {
+			return ObjectInputFilter.Status.UNDECIDED;
+		}
+		return isAllowed(info.serialClass()) ? ObjectInputFilter.Status.ALLOWED : ObjectInputFilter.Status.REJECTED;
+	}
+
+	/**
+	 * Reads the payload to record, {@code null} for none.
+	 */
+	protected Object read(MemorySystem memorySystem, XfsMessage message, WfsResult wfsResult) {
+		return memorySystem.read(wfsResult.getBuffer(), Object.class);
+	}
+
+	@Override
+	public byte[] encode(MemorySystem memorySystem, XfsMessage message, WfsResult wfsResult) {
+		if (wfsResult.getBuffer() == null) {
+			return new byte[0];
+		}
+		Object payload = read(memorySystem, message, wfsResult);
+		if (!(payload instanceof Serializable) || !isAllowed(payload.getClass())) {
+			return new byte[0];
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(payload);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Override
+	public Object decode(XfsMessage message, int eventId, byte[] payload) {
+		if (payload.length == 0) {
+			return null;
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+			in.setObjectInputFilter(filter);
+			return in.readObject();
+		} catch (InvalidClassException e) {
+			throw new IllegalArgumentException("Payload rejected: " + e.getMessage(), e);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package at.o2xfs.xfs.service.std.journal;
+
+import java.io.Serializable;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import at.o2xfs.memory.core.MemorySystem;
+import at.o2xfs.xfs.api.ServiceId;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.api.XfsMessage;
+import at.o2xfs.xfs.service.std.XfsResultFactory;
+
+/**
+ * Records the payloads of the messages and event ids it is given a type for, decoded by the
+ * {@link XfsResultFactory} of the service that sent them, so the journal holds the same objects the listeners got.
+ * They are stored with Java serialization; other payloads are recorded as missing without being read. Only the given
+ * types, and the types they are made of, are replayed.
+ */
+public final class TypedPayloadCodec extends SerializingPayloadCodec {
+
+	private static final Logger LOG = LogManager.getLogger(TypedPayloadCodec.class);
+
+	public static class Builder {
+
+		private final Function<ServiceId, Optional<XfsResultFactory>> resultFactories;
+		private final Map<XfsMessage, Map<Integer, Class<?>>> payloadTypes;
+
+		public Builder(Function<ServiceId, Optional<XfsResultFactory>> resultFactories) {
+			this.resultFactories = Objects.requireNonNull(resultFactories);
+			payloadTypes = new EnumMap<>(XfsMessage.class);
+		}
+
+		public Builder payloadType(XfsMessage message, int eventId, Class<?> payloadType) {
+			payloadTypes.computeIfAbsent(Objects.requireNonNull(message), k -> new HashMap<>()).put(eventId,
+					Objects.requireNonNull(payloadType));
+			return this;
+		}
+
+		public TypedPayloadCodec build() {
+			return new TypedPayloadCodec(this);
+		}
+	}
+
+	private final Function<ServiceId, Optional<XfsResultFactory>> resultFactories;
+	private final Map<XfsMessage, Map<Integer, Class<?>>> payloadTypes;
+	private final Set<Class<?>> unserializable;
+
+	private TypedPayloadCodec(Builder builder) {
+		super(payloadTypes(builder));
+		resultFactories = builder.resultFactories;
+		payloadTypes = new EnumMap<>(XfsMessage.class);
+		for (Map.Entry<XfsMessage, Map<Integer, Class<?>>> each : builder.payloadTypes.entrySet()) {
+			payloadTypes.put(each.getKey(), new HashMap<>(each.getValue()));
+		}
+		unserializable = ConcurrentHashMap.newKeySet();
+	}
+
+	private static Set<Class<?>> payloadTypes(Builder builder) {
+		Set<Class<?>> result = new HashSet<>();
+		for (Map<Integer, Class<?>> each : builder.payloadTypes.values()) {
+			result.addAll(each.values());
+		}
+		return result;
+	}
+
+	@Override
+	protected Object read(MemorySystem memorySystem, XfsMessage message, WfsResult wfsResult) {
+		Map<Integer, Class<?>> types = payloadTypes.get(message);
+		Class<?> payloadType = types == null ? null : types.get(wfsResult.getEventId());
+		if (payloadType == null) {
+			return null;
+		}
+		Optional<XfsResultFactory> factory = resultFactories.apply(wfsResult.getServiceId());
+		if (!factory.isPresent()) {
+			return null;
+		}
+		Object result = factory.get().create(wfsResult.getBuffer(), payloadType);
+		if (result != null && !(result instanceof Serializable) && unserializable.add(payloadType)) {
+			LOG.warn("{} is not Serializable, payloads of this type are recorded as missing", payloadType.getName());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,67 @@
+package at.o2xfs.xfs.service.std.loopback;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.memory.core.MemorySystem;
+
+/**
+ * {@link MemorySystem} handing out synthetic addresses for plain Java objects.
+ */
+public class LoopbackMemorySystem implements MemorySystem {
+
+	private static final int ALIGNMENT = 8;
+
+	private final AtomicInteger nextAddress;
+	private final Map<Integer, Object> allocations;
+
+	public LoopbackMemorySystem() {
+		nextAddress = new AtomicInteger(0x10000);
+		allocations = new ConcurrentHashMap<>();
+	}
+
+	static int toInt(Address address) {
+		byte[] value = address.getValue();
+		int result = 0;
+		for (int i = Math.min(value.length, 4) - 1; i >= 0; i--) {
+			result = (result << 8) | (value[i] & 0xFF);
+		}
+		return result;
+	}
+
+	static byte[] toBytes(int address) {
+		return new byte[] { (byte) address, (byte) (address >>> 8), (byte) (address >>> 16),
+				(byte) (address >>> 24) };
+	}
+
+	public Address allocate(Object value) {
+		int address = nextAddress.getAndAdd(ALIGNMENT);
+		allocations.put(Integer.valueOf(address), value);
+		return Address.build(toBytes(address));
+	}
+
+	public boolean free(Address address) {
+		return allocations.remove(Integer.valueOf(toInt(address))) != null;
+	}
+
+	public int getAllocationCount() {
+		return allocations.size();
+	}
+
+	@Override
+	public <T> T read(Address address, Class<T> valueType) {
+		if (address == null) {
+			return null;
+		}
+		Object value = allocations.get(Integer.valueOf(toInt(address)));
+		if (value == null) {
+			throw new IllegalArgumentException("Invalid address: " + address);
+		} else if (!valueType.isInstance(value)) {
+			throw new IllegalArgumentException("Expected " + valueType.getName() + " at " + address + " but was "
+					+ value.getClass().getName());
+		}
+		return valueType.cast(value);
+	}
+}
@@ -0,0 +1,98 @@
+package at.o2xfs.xfs.service.std.loopback;
+
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.xfs.service.std.MessageLoop;
+import at.o2xfs.xfs.service.std.WindowProcCallback;
+
+/**
+ * Pure Java stand-in for the Win32 message pump: messages posted from any thread are delivered to the
+ * {@link WindowProcCallback} on a single pump thread.
+ */
+public class LoopbackMessageLoop implements MessageLoop {
+
+	private static final Logger LOG = LogManager.getLogger(LoopbackMessageLoop.class);
+
+	private static final class Message {
+
+		private final int msg;
+		private final byte[] lParam;
+
+		private Message(int msg, byte[] lParam) {
+			this.msg = msg;
+			this.lParam = lParam;
+		}
+	}
+
+	private static final Message QUIT = new Message(0, null);
+
+	private final Address hWnd;
+	private final BlockingQueue<Message> messages;
+
+	private Thread thread = null;
+
+	public LoopbackMessageLoop() {
+		hWnd = Address.build(LoopbackMemorySystem.toBytes(0x0F00));
+		messages = new LinkedBlockingQueue<>();
+	}
+
+	private void runLoop(WindowProcCallback callback) {
+		try {
+			while (true) {
+				Message message = messages.take();
+				if (message == QUIT) {
+					break;
+				}
+				try {
+					callback.windowProc(message.msg, message.lParam);
+				} catch (RuntimeException e) {
+					LOG.error("Error in windowProc", e);
+				}
+			}
+		} catch (InterruptedException e) {
+			LOG.info("Interrupted.");
+		}
+	}
+
+	@Override
+	public Address getWindowHandle() {
+		return hWnd;
+	}
+
+	public void post(int msg, byte[] lParam) {
+		messages.add(new Message(msg, Objects.requireNonNull(lParam)));
+	}
+
+	@Override
+	public void start(WindowProcCallback callback) {
+		synchronized (this) {
+			if (thread == null || !thread.isAlive()) {
+				messages.clear();
+				thread = new Thread(() -> runLoop(callback), "LoopbackMessageLoop");
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+	}
+
+	@Override
+	public void stop() {
+		synchronized (this) {
+			if (thread != null && thread.isAlive()) {
+				messages.add(QUIT);
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					LOG.error("Stop interrupted", e);
+					throw new RuntimeException(e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package at.o2xfs.xfs.service.std.loopback;
+
+import java.util.Optional;
+
+import at.o2xfs.xfs.api.ServiceId;
+import at.o2xfs.xfs.api.XfsConstant;
+
+/**
+ * Supplies the {@code lpBuffer} payloads posted by {@link LoopbackXfsApi}. A {@code null} payload is posted as an
+ * empty buffer.
+ */
+public interface LoopbackResponder {
+
+	default Object getInfo(ServiceId serviceId, XfsConstant category, Optional<?> queryDetails) {
+		return null;
+	}
+
+	default Object execute(ServiceId serviceId, XfsConstant command, Optional<?> cmdData) {
+		return null;
+	}
+
+	default Object executeEvent(ServiceId serviceId, XfsConstant command, int index) {
+		return null;
+	}
+
+	default Object serviceEvent(ServiceId serviceId) {
+		return null;
+	}
+}
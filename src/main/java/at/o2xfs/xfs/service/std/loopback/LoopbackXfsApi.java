@@ -0,0 +1,380 @@
+package at.o2xfs.xfs.service.std.loopback;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.memory.core.MemorySystem;
+import at.o2xfs.xfs.api.OpenRequest;
+import at.o2xfs.xfs.api.OpenResponse;
+import at.o2xfs.xfs.api.RequestId;
+import at.o2xfs.xfs.api.ServiceId;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.api.WfsVersion;
+import at.o2xfs.xfs.api.XfsApi;
+import at.o2xfs.xfs.api.XfsConstant;
+import at.o2xfs.xfs.api.XfsEventClass;
+import at.o2xfs.xfs.api.XfsException;
+import at.o2xfs.xfs.api.XfsMessage;
+import at.o2xfs.xfs.api.XfsVersion;
+
+/**
+ * In-process {@link XfsApi} simulating a service provider.
+ * <p>
+ * Every asynchronous request is answered by posting the matching completion message to a
+ * {@link LoopbackMessageLoop} after the configured latency. Execute requests are preceded by a configurable number
+ * of {@link XfsMessage#EXECUTE_EVENT}s and registered services can receive a steady stream of
+ * {@link XfsMessage#SERVICE_EVENT}s. All {@code WFSRESULT}s are allocated in a {@link LoopbackMemorySystem} and
+ * accounted for in {@link #freeResult(Address)}.
+ * <p>
+ * With {@code respondToCommands(false)} execute and info requests are left unanswered, so callers can post the
+ * results themselves through {@link #allocateResult(ServiceId, RequestId, int, int, Object)}.
+ */
+public class LoopbackXfsApi implements XfsApi {
+
+	private static final Logger LOG = LogManager.getLogger(LoopbackXfsApi.class);
+
+	private static final int WFS_ERR_CANCELED = -4;
+
+	public static class Builder {
+
+		private final LoopbackMessageLoop messageLoop;
+		private XfsVersion version;
+		private Duration latency;
+		private Optional<XfsConstant> executeEventId;
+		private int executeEvents;
+		private Duration executeEventInterval;
+		private Optional<XfsConstant> serviceEventId;
+		private Duration serviceEventInterval;
+		private LoopbackResponder responder;
+		private boolean respondToCommands;
+
+		public Builder(LoopbackMessageLoop messageLoop) {
+			this.messageLoop = Objects.requireNonNull(messageLoop);
+			version = XfsVersion.V3_30;
+			latency = Duration.ZERO;
+			executeEventId = Optional.empty();
+			executeEvents = 0;
+			executeEventInterval = Duration.ZERO;
+			serviceEventId = Optional.empty();
+			serviceEventInterval = Duration.ZERO;
+			responder = new LoopbackResponder() {
+			};
+			respondToCommands = true;
+		}
+
+		public Builder version(XfsVersion version) {
+			this.version = Objects.requireNonNull(version);
+			return this;
+		}
+
+		public Builder latency(Duration latency) {
+			this.latency = Objects.requireNonNull(latency);
+			return this;
+		}
+
+		public Builder executeEvents(XfsConstant eventId, int count, Duration interval) {
+			executeEventId = Optional.of(eventId);
+			executeEvents = count;
+			executeEventInterval = Objects.requireNonNull(interval);
+			return this;
+		}
+
+		public Builder serviceEvents(XfsConstant eventId, Duration interval) {
+			if (interval.isZero() || interval.isNegative()) {
+				throw new IllegalArgumentException("interval: " + interval);
+			}
+			serviceEventId = Optional.of(eventId);
+			serviceEventInterval = interval;
+			return this;
+		}
+
+		public Builder responder(LoopbackResponder responder) {
+			this.responder = Objects.requireNonNull(responder);
+			return this;
+		}
+
+		public Builder respondToCommands(boolean respondToCommands) {
+			this.respondToCommands = respondToCommands;
+			return this;
+		}
+
+		public LoopbackXfsApi build() {
+			return new LoopbackXfsApi(this);
+		}
+	}
+
+	private final LoopbackMessageLoop messageLoop;
+	private final XfsVersion version;
+	private final Duration latency;
+	private final Optional<XfsConstant> executeEventId;
+	private final int executeEvents;
+	private final Duration executeEventInterval;
+	private final Optional<XfsConstant> serviceEventId;
+	private final Duration serviceEventInterval;
+	private final LoopbackResponder responder;
+	private final boolean respondToCommands;
+
+	private final LoopbackMemorySystem memorySystem;
+	private final ScheduledExecutorService scheduler;
+	private final AtomicLong requestIds;
+	private final AtomicInteger serviceIds;
+	private final Map<RequestId, AtomicBoolean> pendingRequests;
+	private final Map<ServiceId, ScheduledFuture<?>> serviceEvents;
+	private final LongAdder allocatedResults;
+	private final LongAdder freedResults;
+	private final LongAdder invalidFrees;
+
+	private LoopbackXfsApi(Builder builder) {
+		messageLoop = builder.messageLoop;
+		version = builder.version;
+		latency = builder.latency;
+		executeEventId = builder.executeEventId;
+		executeEvents = builder.executeEvents;
+		executeEventInterval = builder.executeEventInterval;
+		serviceEventId = builder.serviceEventId;
+		serviceEventInterval = builder.serviceEventInterval;
+		responder = builder.responder;
+		respondToCommands = builder.respondToCommands;
+		memorySystem = new LoopbackMemorySystem();
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "LoopbackXfsApi");
+			thread.setDaemon(true);
+			return thread;
+		});
+		requestIds = new AtomicLong();
+		serviceIds = new AtomicInteger();
+		pendingRequests = new ConcurrentHashMap<>();
+		serviceEvents = new ConcurrentHashMap<>();
+		allocatedResults = new LongAdder();
+		freedResults = new LongAdder();
+		invalidFrees = new LongAdder();
+	}
+
+	private void schedule(Duration delay, Runnable task) {
+		if (delay.isZero()) {
+			scheduler.execute(task);
+		} else {
+			scheduler.schedule(task, delay.toNanos(), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private RequestId nextRequestId() {
+		RequestId result = RequestId.build(requestIds.incrementAndGet());
+		pendingRequests.put(result, new AtomicBoolean(false));
+		return result;
+	}
+
+	private RequestId complete(XfsMessage message, ServiceId serviceId, Object payload) {
+		RequestId requestId = nextRequestId();
+		schedule(latency, () -> postComplete(message, serviceId, requestId, payload));
+		return requestId;
+	}
+
+	private void postComplete(XfsMessage message, ServiceId serviceId, RequestId requestId, Object payload) {
+		AtomicBoolean cancelled = pendingRequests.remove(requestId);
+		int errorCode = cancelled != null && cancelled.get() ? WFS_ERR_CANCELED : 0;
+		post(message, serviceId, requestId, errorCode, 0, errorCode == 0 ? payload : null);
+	}
+
+	private void startServiceEvents(ServiceId serviceId) {
+		if (serviceEventId.isPresent()) {
+			int eventId = (int) serviceEventId.get().getValue();
+			long interval = serviceEventInterval.toNanos();
+			serviceEvents.computeIfAbsent(serviceId,
+					k -> scheduler.scheduleAtFixedRate(() -> post(XfsMessage.SERVICE_EVENT, serviceId,
+							RequestId.build(0L), 0, eventId, responder.serviceEvent(serviceId)), interval, interval,
+							TimeUnit.NANOSECONDS));
+		}
+	}
+
+	private void stopServiceEvents(ServiceId serviceId) {
+		ScheduledFuture<?> future = serviceEvents.remove(serviceId);
+		if (future != null) {
+			future.cancel(false);
+		}
+	}
+
+	public long getAllocatedResults() {
+		return allocatedResults.sum();
+	}
+
+	public long getFreedResults() {
+		return freedResults.sum();
+	}
+
+	public long getInvalidFrees() {
+		return invalidFrees.sum();
+	}
+
+	public long getOutstandingResults() {
+		return allocatedResults.sum() - freedResults.sum();
+	}
+
+	public Address allocateResult(ServiceId serviceId, RequestId requestId, int errorCode, int eventId,
+			Object payload) {
+		Address buffer = payload == null ? null : memorySystem.allocate(payload);
+		WfsResult wfsResult = new WfsResult.Builder().requestId(requestId).serviceId(serviceId).errorCode(errorCode)
+				.eventId(eventId).buffer(buffer).build();
+		Address result = memorySystem.allocate(wfsResult);
+		allocatedResults.increment();
+		return result;
+	}
+
+	public void post(XfsMessage message, ServiceId serviceId, RequestId requestId, int errorCode, int eventId,
+			Object payload) {
+		Address address = allocateResult(serviceId, requestId, errorCode, eventId, payload);
+		messageLoop.post((int) message.getValue(), address.getValue());
+	}
+
+	@Override
+	public MemorySystem getMemorySystem() {
+		return memorySystem;
+	}
+
+	@Override
+	public OpenResponse asyncOpen(OpenRequest request) throws XfsException {
+		ServiceId serviceId = ServiceId.build(serviceIds.incrementAndGet());
+		RequestId requestId = complete(XfsMessage.OPEN_COMPLETE, serviceId, null);
+		WfsVersion wfsVersion = new WfsVersion.Builder().version(version).lowVersion(XfsVersion.V3_00)
+				.highVersion(version).build();
+		return new OpenResponse.Builder().requestId(requestId).serviceId(serviceId).srvcVersion(wfsVersion)
+				.spiVersion(wfsVersion).build();
+	}
+
+	@Override
+	public RequestId asyncClose(ServiceId serviceId, Address hWnd) throws XfsException {
+		stopServiceEvents(serviceId);
+		return complete(XfsMessage.CLOSE_COMPLETE, serviceId, null);
+	}
+
+	@Override
+	public RequestId asyncDeregister(ServiceId serviceId, Set<XfsEventClass> eventClasses, Address hWndReg,
+			Address hWnd) throws XfsException {
+		if (eventClasses.isEmpty() || eventClasses.contains(XfsEventClass.SERVICE_EVENTS)) {
+			stopServiceEvents(serviceId);
+		}
+		return complete(XfsMessage.DEREGISTER_COMPLETE, serviceId, null);
+	}
+
+	@Override
+	public RequestId asyncRegister(ServiceId serviceId, Set<XfsEventClass> eventClasses, Address hWndReg,
+			Address hWnd) throws XfsException {
+		if (eventClasses.contains(XfsEventClass.SERVICE_EVENTS)) {
+			startServiceEvents(serviceId);
+		}
+		return complete(XfsMessage.REGISTER_COMPLETE, serviceId, null);
+	}
+
+	@Override
+	public <E extends Enum<E> & XfsConstant> RequestId asyncExecute(ServiceId serviceId, E command,
+			Optional<?> cmdData, OptionalInt timeOut, Address hWnd) throws XfsException {
+		if (!respondToCommands) {
+			return RequestId.build(requestIds.incrementAndGet());
+		}
+		RequestId requestId = nextRequestId();
+		long interval = executeEventInterval.toNanos();
+		if (executeEventId.isPresent()) {
+			int eventId = (int) executeEventId.get().getValue();
+			for (int i = 0; i < executeEvents; i++) {
+				int index = i;
+				schedule(Duration.ofNanos(interval * i),
+						() -> post(XfsMessage.EXECUTE_EVENT, serviceId, requestId, 0, eventId,
+								responder.executeEvent(serviceId, command, index)));
+			}
+		}
+		schedule(latency.plusNanos(interval * executeEvents), () -> postComplete(XfsMessage.EXECUTE_COMPLETE,
+				serviceId, requestId, responder.execute(serviceId, command, cmdData)));
+		return requestId;
+	}
+
+	@Override
+	public <E extends Enum<E> & XfsConstant> RequestId asyncGetInfo(ServiceId serviceId, E category,
+			Optional<?> queryDetails, OptionalInt timeOut, Address hWnd) throws XfsException {
+		if (!respondToCommands) {
+			return RequestId.build(requestIds.incrementAndGet());
+		}
+		RequestId requestId = nextRequestId();
+		schedule(latency, () -> postComplete(XfsMessage.GETINFO_COMPLETE, serviceId, requestId,
+				responder.getInfo(serviceId, category, queryDetails)));
+		return requestId;
+	}
+
+	@Override
+	public RequestId asyncLock(ServiceId serviceId, OptionalInt timeOut, Address hWnd) throws XfsException {
+		return complete(XfsMessage.LOCK_COMPLETE, serviceId, null);
+	}
+
+	@Override
+	public RequestId asyncUnlock(ServiceId serviceId, Address hWnd) throws XfsException {
+		return complete(XfsMessage.UNLOCK_COMPLETE, serviceId, null);
+	}
+
+	@Override
+	public void cancelAsyncRequest(ServiceId serviceId, RequestId requestId) throws XfsException {
+		AtomicBoolean cancelled = pendingRequests.get(requestId);
+		if (cancelled != null) {
+			cancelled.set(true);
+		}
+	}
+
+	@Override
+	public void freeResult(Address address) throws XfsException {
+		WfsResult wfsResult;
+		try {
+			wfsResult = memorySystem.read(address, WfsResult.class);
+		} catch (IllegalArgumentException e) {
+			invalidFrees.increment();
+			LOG.warn("Invalid WFSFreeResult: {}", address);
+			return;
+		}
+		if (wfsResult.getBuffer() != null) {
+			memorySystem.free(wfsResult.getBuffer());
+		}
+		if (memorySystem.free(address)) {
+			freedResults.increment();
+		} else {
+			invalidFrees.increment();
+		}
+	}
+
+	@Override
+	public void startUp(XfsVersion lowVersion, XfsVersion highVersion) throws XfsException {
+		LOG.info("startUp: lowVersion={},highVersion={}", lowVersion, highVersion);
+	}
+
+	@Override
+	public Address createAppHandle() throws XfsException {
+		return memorySystem.allocate(new Object());
+	}
+
+	@Override
+	public void destroyAppHandle(Address appHandle) throws XfsException {
+		memorySystem.free(appHandle);
+	}
+
+	@Override
+	public void cleanUp() throws XfsException {
+		for (ServiceId each : serviceEvents.keySet()) {
+			stopServiceEvents(each);
+		}
+		LOG.info("cleanUp: allocated={},freed={},invalidFrees={}", getAllocatedResults(), getFreedResults(),
+				getInvalidFrees());
+	}
+}
@@ -0,0 +1,271 @@
+package at.o2xfs.xfs.service.std.metrics;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+
+/**
+ * Counters, gauges and latency histograms of a service manager.
+ * <p>
+ * Once {@link #register(MBeanServer)} is called, the dispatcher itself, every logical service and every command of
+ * a service is published as an MBean in the {@value #DOMAIN} domain, e.g.
+ * {@code at.o2xfs.xfs.service.std:type=CommandLatency,service=CDM30,command=DISPENSE}. Services and commands seen
+ * later are published as they appear.
+ */
+public final class DispatchMetrics implements DispatchMetricsMBean {
+
+	private static final Logger LOG = LogManager.getLogger(DispatchMetrics.class);
+
+	public static final String DOMAIN = "at.o2xfs.xfs.service.std";
+
+	final LongAdder inFlight;
+	final LongAdder intermediateEvents;
+	private final OverflowCounters overflow;
+	private final LongAdder freeResultFailures;
+	private final LongAdder slowListenerCalls;
+	private final LongAdder listenerBacklog;
+	private final LongAdder heldResults;
+	private final Map<String, ServiceMetrics> services;
+	private final Set<ObjectName> registered;
+
+	private volatile IntSupplier eventQueueDepth;
+	private volatile LongSupplier eventQueueAge;
+	private volatile IntSupplier reclaimBacklog;
+	private volatile Optional<MBeanServer> mBeanServer;
+
+	public DispatchMetrics() {
+		inFlight = new LongAdder();
+		intermediateEvents = new LongAdder();
+		overflow = new OverflowCounters();
+		freeResultFailures = new LongAdder();
+		slowListenerCalls = new LongAdder();
+		listenerBacklog = new LongAdder();
+		heldResults = new LongAdder();
+		services = new ConcurrentHashMap<>();
+		registered = ConcurrentHashMap.newKeySet();
+		eventQueueDepth = () -> 0;
+		eventQueueAge = () -> 0L;
+		reclaimBacklog = () -> 0;
+		mBeanServer = Optional.empty();
+	}
+
+	private static ObjectName dispatcherName() throws JMException {
+		return new ObjectName(DOMAIN + ":type=Dispatcher");
+	}
+
+	private static ObjectName serviceName(String logicalName) throws JMException {
+		return new ObjectName(DOMAIN + ":type=Service,service=" + ObjectName.quote(logicalName));
+	}
+
+	private static ObjectName commandName(String logicalName, String command) throws JMException {
+		return new ObjectName(DOMAIN + ":type=CommandLatency,service=" + ObjectName.quote(logicalName) + ",command="
+				+ ObjectName.quote(command));
+	}
+
+	private void register(MBeanServer server, Object mBean, ObjectName name) {
+		try {
+			if (!server.isRegistered(name)) {
+				server.registerMBean(mBean, name);
+				registered.add(name);
+			}
+		} catch (JMException e) {
+			LOG.error(new ParameterizedMessage("Error registering MBean: {}", name), e);
+		}
+	}
+
+	void published(String logicalName, ServiceMetrics service) {
+		if (mBeanServer.isPresent()) {
+			try {
+				register(mBeanServer.get(), service, serviceName(logicalName));
+			} catch (JMException e) {
+				LOG.error(new ParameterizedMessage("Error registering MBean: {}", logicalName), e);
+			}
+		}
+	}
+
+	void published(String logicalName, String command, LatencyHistogram histogram) {
+		if (mBeanServer.isPresent()) {
+			try {
+				register(mBeanServer.get(), histogram, commandName(logicalName, command));
+			} catch (JMException e) {
+				LOG.error(new ParameterizedMessage("Error registering MBean: {}/{}", logicalName, command), e);
+			}
+		}
+	}
+
+	public void bindEventQueue(IntSupplier queueDepth, LongSupplier queueAgeNanos) {
+		eventQueueDepth = queueDepth;
+		eventQueueAge = queueAgeNanos;
+	}
+
+	public void bindReclaimBacklog(IntSupplier reclaimBacklog) {
+		this.reclaimBacklog = reclaimBacklog;
+	}
+
+	public ServiceMetrics service(String logicalName) {
+		ServiceMetrics result = services.get(logicalName);
+		if (result == null) {
+			ServiceMetrics service = new ServiceMetrics(this, logicalName);
+			result = services.putIfAbsent(logicalName, service);
+			if (result == null) {
+				result = service;
+				published(logicalName, service);
+			}
+		}
+		return result;
+	}
+
+	public Map<String, ServiceMetrics> getServices() {
+		return services;
+	}
+
+	public void freeResultFailed() {
+		freeResultFailures.increment();
+	}
+
+	public void slowListenerCall() {
+		slowListenerCalls.increment();
+	}
+
+	/**
+	 * Tracks a callback entering ({@code +1}) or leaving ({@code -1}) a listener mailbox, and whether it holds a
+	 * {@code WFSRESULT} until it has run.
+	 */
+	public void listenerBacklog(int delta, boolean holdsResult) {
+		listenerBacklog.add(delta);
+		if (holdsResult) {
+			heldResults.add(delta);
+		}
+	}
+
+	public synchronized void register(MBeanServer server) throws JMException {
+		if (mBeanServer.isPresent()) {
+			throw new IllegalStateException("Already registered");
+		}
+		mBeanServer = Optional.of(server);
+		register(server, this, dispatcherName());
+		for (Map.Entry<String, ServiceMetrics> service : services.entrySet()) {
+			register(server, service.getValue(), serviceName(service.getKey()));
+			for (Map.Entry<String, LatencyHistogram> command : service.getValue().getCommands().entrySet()) {
+				register(server, command.getValue(), commandName(service.getKey(), command.getKey()));
+			}
+		}
+	}
+
+	public synchronized void unregister() throws JMException {
+		if (mBeanServer.isEmpty()) {
+			return;
+		}
+		MBeanServer server = mBeanServer.get();
+		mBeanServer = Optional.empty();
+		for (ObjectName each : registered) {
+			if (server.isRegistered(each)) {
+				server.unregisterMBean(each);
+			}
+		}
+		registered.clear();
+	}
+
+	@Override
+	public int getEventQueueDepth() {
+		return eventQueueDepth.getAsInt();
+	}
+
+	@Override
+	public long getEventQueueAgeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(eventQueueAge.getAsLong());
+	}
+
+	@Override
+	public long getInFlightRequests() {
+		return inFlight.sum();
+	}
+
+	@Override
+	public long getIntermediateEvents() {
+		return intermediateEvents.sum();
+	}
+
+	@Override
+	public long getFreeResultFailures() {
+		return freeResultFailures.sum();
+	}
+
+	@Override
+	public int getReclaimBacklog() {
+		return reclaimBacklog.getAsInt();
+	}
+
+	@Override
+	public int getServiceCount() {
+		return services.size();
+	}
+
+	@Override
+	public long getSlowListenerCalls() {
+		return slowListenerCalls.sum();
+	}
+
+	@Override
+	public long getListenerBacklog() {
+		return listenerBacklog.sum();
+	}
+
+	/**
+	 * {@code WFSRESULT} buffers held by listener mailboxes until their callbacks have run.
+	 */
+	@Override
+	public long getHeldResults() {
+		return heldResults.sum();
+	}
+
+	/**
+	 * {@code WFSRESULT} buffers not freed yet: queued for dispatch, held by listener mailboxes or waiting to be
+	 * freed.
+	 */
+	@Override
+	public long getOutstandingResults() {
+		long result = getEventQueueDepth() + getReclaimBacklog() + getHeldResults();
+		for (ServiceMetrics each : services.values()) {
+			result += each.getQueueDepth();
+		}
+		return result;
+	}
+
+	public OverflowCounters getOverflow() {
+		return overflow;
+	}
+
+	@Override
+	public long getSpilledEvents() {
+		return overflow.getSpilled();
+	}
+
+	@Override
+	public long getDroppedEvents() {
+		return overflow.getDropped();
+	}
+
+	@Override
+	public long getConflatedEvents() {
+		return overflow.getConflated();
+	}
+
+	@Override
+	public long getBlockedOffers() {
+		return overflow.getBlocked();
+	}
+}
@@ -0,0 +1,34 @@
+package at.o2xfs.xfs.service.std.metrics;
+
+public interface DispatchMetricsMBean {
+
+	int getEventQueueDepth();
+
+	long getEventQueueAgeMillis();
+
+	long getInFlightRequests();
+
+	long getIntermediateEvents();
+
+	long getFreeResultFailures();
+
+	int getReclaimBacklog();
+
+	int getServiceCount();
+
+	long getSlowListenerCalls();
+
+	long getListenerBacklog();
+
+	long getHeldResults();
+
+	long getOutstandingResults();
+
+	long getSpilledEvents();
+
+	long getDroppedEvents();
+
+	long getConflatedEvents();
+
+	long getBlockedOffers();
+}
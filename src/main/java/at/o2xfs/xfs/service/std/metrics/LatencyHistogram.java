@@ -0,0 +1,134 @@
+package at.o2xfs.xfs.service.std.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Fixed memory latency histogram with microsecond resolution.
+ * <p>
+ * Values are counted in log-linear buckets: each power of 2 is split into 16 sub-buckets, which bounds the relative
+ * error of a percentile to 1/16. Values above 2^40 microseconds are counted in the last bucket. Recording is lock
+ * free and does not allocate.
+ */
+public final class LatencyHistogram implements LatencyHistogramMBean {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts;
+	private final LongAdder sum;
+	private final LongAccumulator max;
+
+	public LatencyHistogram() {
+		counts = new AtomicLongArray(BUCKETS);
+		sum = new LongAdder();
+		max = new LongAccumulator(Math::max, 0L);
+	}
+
+	private static int indexOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) Math.max(0L, micros);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long upperBoundOf(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int subBucket = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + subBucket + 1L) << (exponent - SUB_BUCKET_BITS)) - 1L;
+	}
+
+	public void record(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		counts.incrementAndGet(indexOf(micros));
+		sum.add(micros);
+		max.accumulate(micros);
+	}
+
+	public long percentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0L;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0L) {
+			return 0L;
+		}
+		long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * total));
+		long seen = 0L;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				// the last bucket holds every value above the range as well
+				return i == BUCKETS - 1 ? max.get() : Math.min(upperBoundOf(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public long getCount() {
+		long result = 0L;
+		for (int i = 0; i < BUCKETS; i++) {
+			result += counts.get(i);
+		}
+		return result;
+	}
+
+	@Override
+	public long getMeanMicros() {
+		long count = getCount();
+		return count == 0L ? 0L : sum.sum() / count;
+	}
+
+	@Override
+	public long getMaxMicros() {
+		return max.get();
+	}
+
+	@Override
+	public long getP50Micros() {
+		return percentile(50.0);
+	}
+
+	@Override
+	public long getP99Micros() {
+		return percentile(99.0);
+	}
+
+	@Override
+	public long getP999Micros() {
+		return percentile(99.9);
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0L);
+		}
+		sum.reset();
+		max.reset();
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("count", getCount()).append("p50", getP50Micros())
+				.append("p99", getP99Micros()).append("p999", getP999Micros()).append("max", getMaxMicros())
+				.toString();
+	}
+}
@@ -0,0 +1,18 @@
+package at.o2xfs.xfs.service.std.metrics;
+
+public interface LatencyHistogramMBean {
+
+	long getCount();
+
+	long getMeanMicros();
+
+	long getMaxMicros();
+
+	long getP50Micros();
+
+	long getP99Micros();
+
+	long getP999Micros();
+
+	void reset();
+}
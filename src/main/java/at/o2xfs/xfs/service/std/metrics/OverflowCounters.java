@@ -0,0 +1,58 @@
+package at.o2xfs.xfs.service.std.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+public final class OverflowCounters {
+
+	private final LongAdder spilled;
+	private final LongAdder dropped;
+	private final LongAdder conflated;
+	private final LongAdder blocked;
+
+	public OverflowCounters() {
+		spilled = new LongAdder();
+		dropped = new LongAdder();
+		conflated = new LongAdder();
+		blocked = new LongAdder();
+	}
+
+	public void spilled() {
+		spilled.increment();
+	}
+
+	public void dropped() {
+		dropped.increment();
+	}
+
+	public void conflated() {
+		conflated.increment();
+	}
+
+	public void blocked() {
+		blocked.increment();
+	}
+
+	public long getSpilled() {
+		return spilled.sum();
+	}
+
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	public long getConflated() {
+		return conflated.sum();
+	}
+
+	public long getBlocked() {
+		return blocked.sum();
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("spilled", getSpilled()).append("dropped", getDropped())
+				.append("conflated", getConflated()).append("blocked", getBlocked()).toString();
+	}
+}
@@ -0,0 +1,147 @@
+package at.o2xfs.xfs.service.std.metrics;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+public final class ServiceMetrics implements ServiceMetricsMBean {
+
+	private final DispatchMetrics parent;
+	private final String logicalName;
+	private final Map<String, LatencyHistogram> commands;
+	private final LongAdder inFlight;
+	private final LongAdder completed;
+	private final LongAdder failed;
+	private final LongAdder intermediateEvents;
+	private final OverflowCounters overflow;
+
+	private volatile IntSupplier queueDepth;
+	private volatile LongSupplier queueAge;
+
+	ServiceMetrics(DispatchMetrics parent, String logicalName) {
+		this.parent = Objects.requireNonNull(parent);
+		this.logicalName = Objects.requireNonNull(logicalName);
+		commands = new ConcurrentHashMap<>();
+		inFlight = new LongAdder();
+		completed = new LongAdder();
+		failed = new LongAdder();
+		intermediateEvents = new LongAdder();
+		overflow = new OverflowCounters();
+		queueDepth = () -> 0;
+		queueAge = () -> 0L;
+	}
+
+	public void bindQueue(IntSupplier queueDepth, LongSupplier queueAgeNanos) {
+		this.queueDepth = Objects.requireNonNull(queueDepth);
+		this.queueAge = Objects.requireNonNull(queueAgeNanos);
+	}
+
+	public LatencyHistogram command(String command) {
+		LatencyHistogram result = commands.get(command);
+		if (result == null) {
+			LatencyHistogram histogram = new LatencyHistogram();
+			result = commands.putIfAbsent(command, histogram);
+			if (result == null) {
+				result = histogram;
+				parent.published(logicalName, command, histogram);
+			}
+		}
+		return result;
+	}
+
+	public Map<String, LatencyHistogram> getCommands() {
+		return commands;
+	}
+
+	public void requestStarted() {
+		inFlight.increment();
+		parent.inFlight.increment();
+	}
+
+	public void requestCompleted(LatencyHistogram histogram, long nanos, boolean success) {
+		histogram.record(nanos);
+		if (success) {
+			completed.increment();
+		} else {
+			failed.increment();
+		}
+		inFlight.decrement();
+		parent.inFlight.decrement();
+	}
+
+	public void intermediateEvent() {
+		intermediateEvents.increment();
+		parent.intermediateEvents.increment();
+	}
+
+	@Override
+	public String getLogicalName() {
+		return logicalName;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return queueDepth.getAsInt();
+	}
+
+	@Override
+	public long getQueueAgeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(queueAge.getAsLong());
+	}
+
+	@Override
+	public long getInFlightRequests() {
+		return inFlight.sum();
+	}
+
+	@Override
+	public long getCompletedRequests() {
+		return completed.sum();
+	}
+
+	@Override
+	public long getFailedRequests() {
+		return failed.sum();
+	}
+
+	@Override
+	public long getIntermediateEvents() {
+		return intermediateEvents.sum();
+	}
+
+	public OverflowCounters getOverflow() {
+		return overflow;
+	}
+
+	@Override
+	public long getSpilledEvents() {
+		return overflow.getSpilled();
+	}
+
+	@Override
+	public long getDroppedEvents() {
+		return overflow.getDropped();
+	}
+
+	@Override
+	public long getConflatedEvents() {
+		return overflow.getConflated();
+	}
+
+	@Override
+	public long getBlockedOffers() {
+		return overflow.getBlocked();
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this).append("logicalName", logicalName).append("queueDepth", getQueueDepth())
+				.append("inFlight", getInFlightRequests()).append("commands", commands).toString();
+	}
+}
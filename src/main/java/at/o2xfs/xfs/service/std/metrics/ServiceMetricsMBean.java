@@ -0,0 +1,26 @@
+package at.o2xfs.xfs.service.std.metrics;
+
+public interface ServiceMetricsMBean {
+
+	String getLogicalName();
+
+	int getQueueDepth();
+
+	long getQueueAgeMillis();
+
+	long getInFlightRequests();
+
+	long getCompletedRequests();
+
+	long getFailedRequests();
+
+	long getIntermediateEvents();
+
+	long getSpilledEvents();
+
+	long getDroppedEvents();
+
+	long getConflatedEvents();
+
+	long getBlockedOffers();
+}
@@ -0,0 +1,48 @@
+package at.o2xfs.xfs.service.std.queue;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+public class BlockingWaitStrategy implements WaitStrategy {
+
+	private final Lock lock;
+	private final Condition available;
+
+	private volatile boolean waiting = false;
+
+	public BlockingWaitStrategy() {
+		lock = new ReentrantLock();
+		available = lock.newCondition();
+	}
+
+	@Override
+	public void waitFor(BooleanSupplier condition) throws InterruptedException {
+		if (condition.getAsBoolean()) {
+			return;
+		}
+		lock.lockInterruptibly();
+		try {
+			waiting = true;
+			while (!condition.getAsBoolean()) {
+				available.await();
+			}
+		} finally {
+			waiting = false;
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void signalAllWhenBlocking() {
+		if (waiting) {
+			lock.lock();
+			try {
+				available.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
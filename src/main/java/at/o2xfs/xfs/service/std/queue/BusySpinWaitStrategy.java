@@ -0,0 +1,20 @@
+package at.o2xfs.xfs.service.std.queue;
+
+import java.util.function.BooleanSupplier;
+
+public class BusySpinWaitStrategy implements WaitStrategy {
+
+	@Override
+	public void waitFor(BooleanSupplier condition) throws InterruptedException {
+		while (!condition.getAsBoolean()) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	@Override
+	public void signalAllWhenBlocking() {
+	}
+}
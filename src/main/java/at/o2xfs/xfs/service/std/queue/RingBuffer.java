@@ -0,0 +1,132 @@
+package at.o2xfs.xfs.service.std.queue;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Bounded multi-producer/single-consumer ring of preallocated slots.
+ * <p>
+ * Producers claim a sequence with {@link #next()}, fill the slot returned by {@link #get(long)} and make it visible
+ * with {@link #publish(long)}. The single consumer obtains the oldest published slot with {@link #take()} or
+ * {@link #poll()} and hands it back with {@link #release()} once it is done with the slot's contents.
+ */
+public final class RingBuffer<E> {
+
+	private final int mask;
+	private final Object[] entries;
+	private final AtomicLongArray published;
+	private final AtomicLong cursor;
+	private final AtomicLong consumed;
+	private final WaitStrategy waitStrategy;
+
+	public RingBuffer(int capacity, Supplier<E> factory, WaitStrategy waitStrategy) {
+		if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("capacity must be a power of 2: " + capacity);
+		}
+		Objects.requireNonNull(factory);
+		this.waitStrategy = Objects.requireNonNull(waitStrategy);
+		mask = capacity - 1;
+		entries = new Object[capacity];
+		published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			entries[i] = factory.get();
+			published.set(i, -1L);
+		}
+		cursor = new AtomicLong();
+		consumed = new AtomicLong();
+	}
+
+	private int index(long sequence) {
+		return (int) sequence & mask;
+	}
+
+	public int capacity() {
+		return entries.length;
+	}
+
+	@SuppressWarnings("unchecked")
+	public E get(long sequence) {
+		return (E) entries[index(sequence)];
+	}
+
+	public boolean isAvailable(long sequence) {
+		return published.get(index(sequence)) == sequence;
+	}
+
+	public boolean isEmpty() {
+		return !isAvailable(consumed.get());
+	}
+
+	public long next() {
+		long sequence = cursor.getAndIncrement();
+		while (sequence - entries.length >= consumed.get()) {
+			LockSupport.parkNanos(1L);
+		}
+		return sequence;
+	}
+
+	public long tryNext() {
+		long current;
+		do {
+			current = cursor.get();
+			if (current - entries.length >= consumed.get()) {
+				return -1L;
+			}
+		} while (!cursor.compareAndSet(current, current + 1));
+		return current;
+	}
+
+	public void publish(long sequence) {
+		published.set(index(sequence), sequence);
+		waitStrategy.signalAllWhenBlocking();
+	}
+
+	/**
+	 * Returns the next entry to be consumed without consuming it. Only the consumer may rely on the entry, other
+	 * threads may observe it while it is released and reused.
+	 */
+	public E peek() {
+		long sequence = consumed.get();
+		return isAvailable(sequence) ? get(sequence) : null;
+	}
+
+	public E poll() {
+		long sequence = consumed.get();
+		if (!isAvailable(sequence)) {
+			return null;
+		}
+		return get(sequence);
+	}
+
+	public void release() {
+		consumed.lazySet(consumed.get() + 1);
+	}
+
+	public int size() {
+		return (int) Math.max(0L, cursor.get() - consumed.get());
+	}
+
+	public E take() throws InterruptedException {
+		long sequence = consumed.get();
+		if (!isAvailable(sequence)) {
+			waitStrategy.waitFor(() -> isAvailable(sequence));
+		}
+		return get(sequence);
+	}
+
+	/**
+	 * Waits with this ring's wait strategy until {@code condition} holds. For a condition that does not only depend on
+	 * this ring, whoever makes it true has to call {@link #signalAllWhenBlocking()}.
+	 */
+	public void await(BooleanSupplier condition) throws InterruptedException {
+		waitStrategy.waitFor(condition);
+	}
+
+	public void signalAllWhenBlocking() {
+		waitStrategy.signalAllWhenBlocking();
+	}
+}
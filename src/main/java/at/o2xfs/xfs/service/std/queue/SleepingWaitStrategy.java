@@ -0,0 +1,44 @@
+package at.o2xfs.xfs.service.std.queue;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+public class SleepingWaitStrategy implements WaitStrategy {
+
+	private static final int DEFAULT_RETRIES = 200;
+	private static final long DEFAULT_SLEEP_NANOS = 100_000L;
+
+	private final int retries;
+	private final long sleepNanos;
+
+	public SleepingWaitStrategy() {
+		this(DEFAULT_RETRIES, DEFAULT_SLEEP_NANOS);
+	}
+
+	public SleepingWaitStrategy(int retries, long sleepNanos) {
+		this.retries = retries;
+		this.sleepNanos = sleepNanos;
+	}
+
+	@Override
+	public void waitFor(BooleanSupplier condition) throws InterruptedException {
+		int counter = retries;
+		while (!condition.getAsBoolean()) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			if (counter > 100) {
+				counter--;
+			} else if (counter > 0) {
+				counter--;
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(sleepNanos);
+			}
+		}
+	}
+
+	@Override
+	public void signalAllWhenBlocking() {
+	}
+}
@@ -0,0 +1,14 @@
+package at.o2xfs.xfs.service.std.queue;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * How the consumer of a {@link RingBuffer} waits for a condition to hold, such as the next slot being published.
+ * Whoever makes the condition true has to call {@link #signalAllWhenBlocking()} afterwards.
+ */
+public interface WaitStrategy {
+
+	void waitFor(BooleanSupplier condition) throws InterruptedException;
+
+	void signalAllWhenBlocking();
+}
@@ -0,0 +1,27 @@
+package at.o2xfs.xfs.service.std.queue;
+
+import java.util.function.BooleanSupplier;
+
+public class YieldingWaitStrategy implements WaitStrategy {
+
+	private static final int SPIN_TRIES = 100;
+
+	@Override
+	public void waitFor(BooleanSupplier condition) throws InterruptedException {
+		int counter = SPIN_TRIES;
+		while (!condition.getAsBoolean()) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			if (counter > 0) {
+				counter--;
+			} else {
+				Thread.yield();
+			}
+		}
+	}
+
+	@Override
+	public void signalAllWhenBlocking() {
+	}
+}
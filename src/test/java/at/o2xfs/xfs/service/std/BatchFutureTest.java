@@ -0,0 +1,83 @@
+package at.o2xfs.xfs.service.std;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class BatchFutureTest {
+
+	@Test
+	void completesOnceEveryCommandCompleted() throws Exception {
+		BatchFuture batch = new BatchFuture(3);
+		PendingXfsFuture<String> first = new PendingXfsFuture<>();
+		PendingXfsFuture<Integer> second = new PendingXfsFuture<>();
+		PendingXfsFuture<String> third = new PendingXfsFuture<>();
+		batch.submitted(0, first);
+		batch.submitted(1, second);
+		batch.submitted(2, third);
+		assertEquals(Arrays.asList(first, second, third), batch.getFutures());
+
+		third.succeed("c");
+		first.succeed("a");
+		assertFalse(batch.isDone());
+		second.succeed(Integer.valueOf(2));
+		assertTrue(batch.isDone());
+
+		BatchResult result = batch.get();
+		assertEquals(3, result.size());
+		assertTrue(result.isAllSuccessful());
+		assertEquals("a", result.getValue(0, String.class));
+		assertEquals(Integer.valueOf(2), result.getValue(1, Integer.class));
+		assertEquals("c", result.getValue(2, String.class));
+	}
+
+	@Test
+	void failuresDoNotFailTheBatch() throws Exception {
+		BatchFuture batch = new BatchFuture(3);
+		PendingXfsFuture<String> first = new PendingXfsFuture<>();
+		PendingXfsFuture<String> third = new PendingXfsFuture<>();
+		IllegalStateException submitFailure = new IllegalStateException("not submitted");
+		IllegalStateException commandFailure = new IllegalStateException("jammed");
+		batch.submitted(0, first);
+		batch.failed(1, submitFailure);
+		batch.submitted(2, third);
+		first.fail(commandFailure);
+		third.succeed("c");
+
+		BatchResult result = batch.get();
+		assertFalse(result.isAllSuccessful());
+		assertFalse(result.isSuccess(0));
+		assertSame(commandFailure, result.getFailure(0).get());
+		assertThrows(IllegalStateException.class, () -> result.getValue(0, String.class));
+		assertSame(submitFailure, result.getFailure(1).get());
+		assertTrue(result.isSuccess(2));
+		assertEquals("c", result.getValue(2, String.class));
+	}
+
+	@Test
+	void emptyBatchIsDone() throws Exception {
+		BatchFuture batch = new BatchFuture(0);
+		assertTrue(batch.isDone());
+		assertEquals(0, batch.get().size());
+	}
+
+	@Test
+	void cancelCancelsEverySubmittedCommand() {
+		BatchFuture batch = new BatchFuture(3);
+		PendingXfsFuture<String> first = new PendingXfsFuture<>();
+		PendingXfsFuture<String> third = new PendingXfsFuture<>();
+		batch.submitted(0, first);
+		batch.failed(1, new IllegalStateException("not submitted"));
+		batch.submitted(2, third);
+		batch.cancel();
+		assertEquals(1, first.getCancelled());
+		assertEquals(1, third.getCancelled());
+		assertFalse(batch.isDone());
+	}
+}
@@ -0,0 +1,204 @@
+package at.o2xfs.xfs.service.std;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class DeadlineTimerTest {
+
+	private static final Duration TICK = Duration.ofNanos(10L);
+	private static final int WHEEL_SIZE = 4;
+
+	private final AtomicLong clock = new AtomicLong(1000L);
+
+	private DeadlineTimer newTimer() {
+		return new DeadlineTimer(clock::get, TICK, WHEEL_SIZE);
+	}
+
+	private void advanceTo(long offset) {
+		clock.set(1000L + offset);
+	}
+
+	/**
+	 * Advances the clock one nanosecond at a time and returns the offset at which the timeout expired.
+	 */
+	private long expiryOffset(DeadlineTimer timer, AtomicInteger runs, long from, long limit) {
+		for (long offset = from; offset <= limit; offset++) {
+			advanceTo(offset);
+			timer.expireTimeouts();
+			if (runs.get() > 0) {
+				return offset;
+			}
+		}
+		return -1L;
+	}
+
+	@Test
+	void expiresAtTheFirstTickAtOrAfterTheDeadline() {
+		long[][] cases = { { 1L, 10L }, { 5L, 10L }, { 9L, 10L }, { 10L, 10L }, { 11L, 20L }, { 20L, 20L },
+				{ 39L, 40L } };
+		for (long[] each : cases) {
+			clock.set(1000L);
+			DeadlineTimer timer = newTimer();
+			AtomicInteger runs = new AtomicInteger();
+			timer.schedule(runs::incrementAndGet, Duration.ofNanos(each[0]));
+			assertEquals(each[1], expiryOffset(timer, runs, 0L, 100L), "delay " + each[0]);
+			assertEquals(1, runs.get());
+		}
+	}
+
+	@Test
+	void expiresOnTheNextTickWithoutDelay() {
+		DeadlineTimer timer = newTimer();
+		AtomicInteger runs = new AtomicInteger();
+		timer.schedule(runs::incrementAndGet, Duration.ZERO);
+		assertEquals(0, timer.expireTimeouts());
+		advanceTo(10L);
+		assertEquals(1, timer.expireTimeouts());
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	void waitsForTheRemainingRoundsOfTheWheel() {
+		long[][] cases = { { 40L, 40L }, { 41L, 50L }, { 75L, 80L }, { 160L, 160L }, { 415L, 420L } };
+		for (long[] each : cases) {
+			clock.set(1000L);
+			DeadlineTimer timer = newTimer();
+			AtomicInteger runs = new AtomicInteger();
+			timer.schedule(runs::incrementAndGet, Duration.ofNanos(each[0]));
+			assertEquals(each[1], expiryOffset(timer, runs, 0L, 1000L), "delay " + each[0]);
+			for (long offset = each[1]; offset <= each[1] + 10L * WHEEL_SIZE * 2; offset++) {
+				advanceTo(offset);
+				timer.expireTimeouts();
+			}
+			assertEquals(1, runs.get(), "delay " + each[0]);
+		}
+	}
+
+	@Test
+	void schedulesRelativeToTheCurrentTick() {
+		DeadlineTimer timer = newTimer();
+		advanceTo(95L);
+		assertEquals(0, timer.expireTimeouts());
+		AtomicInteger runs = new AtomicInteger();
+		timer.schedule(runs::incrementAndGet, Duration.ofNanos(50L));
+		assertEquals(150L, expiryOffset(timer, runs, 95L, 300L));
+	}
+
+	@Test
+	void expiresEveryPassedTickAtOnce() {
+		DeadlineTimer timer = newTimer();
+		AtomicInteger runs = new AtomicInteger();
+		for (int i = 1; i <= 100; i++) {
+			timer.schedule(runs::incrementAndGet, Duration.ofNanos(i * 7L));
+		}
+		advanceTo(699L);
+		assertEquals(98, timer.expireTimeouts());
+		advanceTo(700L);
+		assertEquals(2, timer.expireTimeouts());
+		assertEquals(100, runs.get());
+	}
+
+	@Test
+	void cancelBeforeTransfer() {
+		DeadlineTimer timer = newTimer();
+		AtomicInteger runs = new AtomicInteger();
+		DeadlineTimer.Timeout timeout = timer.schedule(runs::incrementAndGet, Duration.ofNanos(10L));
+		assertTrue(timeout.cancel());
+		assertTrue(timeout.isCancelled());
+		assertFalse(timeout.cancel());
+		advanceTo(100L);
+		assertEquals(0, timer.expireTimeouts());
+		assertEquals(0, runs.get());
+		assertFalse(timeout.isExpired());
+	}
+
+	@Test
+	void cancelAfterTransfer() {
+		DeadlineTimer timer = newTimer();
+		AtomicInteger runs = new AtomicInteger();
+		DeadlineTimer.Timeout timeout = timer.schedule(runs::incrementAndGet, Duration.ofNanos(50L));
+		DeadlineTimer.Timeout other = timer.schedule(runs::incrementAndGet, Duration.ofNanos(50L));
+		advanceTo(20L);
+		assertEquals(0, timer.expireTimeouts());
+		assertTrue(timeout.cancel());
+		advanceTo(100L);
+		assertEquals(1, timer.expireTimeouts());
+		assertEquals(1, runs.get());
+		assertTrue(other.isExpired());
+		assertTrue(timeout.isCancelled());
+	}
+
+	@Test
+	void cancelAfterExpiry() {
+		DeadlineTimer timer = newTimer();
+		DeadlineTimer.Timeout timeout = timer.schedule(() -> {
+		}, Duration.ofNanos(10L));
+		advanceTo(10L);
+		assertEquals(1, timer.expireTimeouts());
+		assertTrue(timeout.isExpired());
+		assertFalse(timeout.cancel());
+		assertFalse(timeout.isCancelled());
+	}
+
+	@Test
+	void runsTasksOnTheTaskExecutor() {
+		List<Runnable> submitted = new ArrayList<>();
+		DeadlineTimer timer = new DeadlineTimer(clock::get, TICK, WHEEL_SIZE, submitted::add);
+		AtomicInteger runs = new AtomicInteger();
+		timer.schedule(runs::incrementAndGet, Duration.ofNanos(10L));
+		advanceTo(10L);
+		assertEquals(1, timer.expireTimeouts());
+		assertEquals(0, runs.get());
+		assertEquals(1, submitted.size());
+		submitted.get(0).run();
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	void runsTasksInlineWhenTheExecutorRejectsThem() {
+		DeadlineTimer timer = new DeadlineTimer(clock::get, TICK, WHEEL_SIZE, task -> {
+			throw new RejectedExecutionException();
+		});
+		AtomicInteger runs = new AtomicInteger();
+		timer.schedule(runs::incrementAndGet, Duration.ofNanos(10L));
+		advanceTo(10L);
+		assertEquals(1, timer.expireTimeouts());
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	void failingTaskDoesNotStopTheOthers() {
+		DeadlineTimer timer = newTimer();
+		AtomicInteger runs = new AtomicInteger();
+		timer.schedule(() -> {
+			throw new IllegalStateException("expected");
+		}, Duration.ofNanos(10L));
+		timer.schedule(runs::incrementAndGet, Duration.ofNanos(10L));
+		advanceTo(10L);
+		assertEquals(2, timer.expireTimeouts());
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	void taskMayScheduleAnotherTimeout() {
+		DeadlineTimer timer = newTimer();
+		AtomicInteger runs = new AtomicInteger();
+		timer.schedule(() -> timer.schedule(runs::incrementAndGet, Duration.ofNanos(10L)), Duration.ofNanos(10L));
+		advanceTo(10L);
+		assertEquals(1, timer.expireTimeouts());
+		assertEquals(0, runs.get());
+		advanceTo(20L);
+		assertEquals(1, timer.expireTimeouts());
+		assertEquals(1, runs.get());
+	}
+}
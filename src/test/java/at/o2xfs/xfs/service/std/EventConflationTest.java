@@ -0,0 +1,103 @@
+package at.o2xfs.xfs.service.std;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.xfs.api.RequestId;
+import at.o2xfs.xfs.api.ServiceId;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.api.XfsConstant;
+import at.o2xfs.xfs.api.XfsMessage;
+
+class EventConflationTest {
+
+	private enum Event implements XfsConstant {
+
+		CASH_UNIT_INFO_CHANGED(304), ITEMS_TAKEN(309), SAFE_DOOR_OPEN(305);
+
+		private final long value;
+
+		Event(long value) {
+			this.value = value;
+		}
+
+		@Override
+		public long getValue() {
+			return value;
+		}
+	}
+
+	private final EventConflation conflation = new EventConflation.Builder()
+			.conflate(XfsMessage.SERVICE_EVENT, Event.CASH_UNIT_INFO_CHANGED, (memorySystem, buffer) -> number(buffer))
+			.conflate(XfsMessage.USER_EVENT, Event.ITEMS_TAKEN).build();
+
+	/**
+	 * The first byte of the buffer stands in for the cash unit number.
+	 */
+	private static Address address(int number) {
+		return Address.build(new byte[] { (byte) number, 0, 0, 0 });
+	}
+
+	private static Byte number(Address buffer) {
+		return Byte.valueOf(buffer.getValue()[0]);
+	}
+
+	private static WfsResult wfsResult(Event eventId, Address buffer) {
+		return new WfsResult.Builder().serviceId(ServiceId.build(1)).requestId(RequestId.build(0L))
+				.eventId((int) eventId.getValue()).buffer(buffer).build();
+	}
+
+	private EventConflation.Key keyOf(XfsMessage message, Event eventId, Address buffer) {
+		return conflation.keyOf(null, message, wfsResult(eventId, buffer));
+	}
+
+	@Test
+	void sameEventAndKeyConflate() {
+		EventConflation.Key key = keyOf(XfsMessage.SERVICE_EVENT, Event.CASH_UNIT_INFO_CHANGED, address(1));
+		EventConflation.Key same = keyOf(XfsMessage.SERVICE_EVENT, Event.CASH_UNIT_INFO_CHANGED, address(1));
+		assertEquals(key, same);
+		assertEquals(key.hashCode(), same.hashCode());
+		assertNotEquals(key, keyOf(XfsMessage.SERVICE_EVENT, Event.CASH_UNIT_INFO_CHANGED, address(2)));
+
+		Map<EventConflation.Key, String> latest = new HashMap<>();
+		latest.put(key, "first");
+		latest.put(same, "second");
+		assertEquals(1, latest.size());
+		assertEquals("second", latest.get(key));
+	}
+
+	@Test
+	void eventsWithoutKeyExtractorShareOneKey() {
+		EventConflation.Key key = keyOf(XfsMessage.USER_EVENT, Event.ITEMS_TAKEN, address(1));
+		assertEquals(key, keyOf(XfsMessage.USER_EVENT, Event.ITEMS_TAKEN, address(2)));
+		assertNotEquals(key, keyOf(XfsMessage.SERVICE_EVENT, Event.CASH_UNIT_INFO_CHANGED, address(1)));
+	}
+
+	@Test
+	void otherEventsAreDeliveredAsIs() {
+		assertNull(keyOf(XfsMessage.SERVICE_EVENT, Event.SAFE_DOOR_OPEN, address(1)));
+		assertNull(keyOf(XfsMessage.USER_EVENT, Event.CASH_UNIT_INFO_CHANGED, address(1)));
+		assertNull(keyOf(XfsMessage.SYSTEM_EVENT, Event.ITEMS_TAKEN, null));
+		assertTrue(EventConflation.none().isEmpty());
+		assertNull(EventConflation.none().keyOf(null, XfsMessage.SERVICE_EVENT,
+				wfsResult(Event.CASH_UNIT_INFO_CHANGED, null)));
+	}
+
+	@Test
+	void onlyUnsolicitedEventsConflate() {
+		EventConflation.Builder builder = new EventConflation.Builder();
+		assertThrows(IllegalArgumentException.class,
+				() -> builder.conflate(XfsMessage.EXECUTE_EVENT, Event.CASH_UNIT_INFO_CHANGED));
+		assertThrows(IllegalArgumentException.class,
+				() -> builder.conflate(XfsMessage.EXECUTE_COMPLETE, Event.CASH_UNIT_INFO_CHANGED));
+	}
+}
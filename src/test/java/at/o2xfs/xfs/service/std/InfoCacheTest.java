@@ -0,0 +1,107 @@
+package at.o2xfs.xfs.service.std;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import at.o2xfs.xfs.service.api.XfsFuture;
+
+class InfoCacheTest {
+
+	private final List<PendingXfsFuture<String>> loads = new ArrayList<>();
+
+	private PendingXfsFuture<String> load() {
+		PendingXfsFuture<String> result = new PendingXfsFuture<>();
+		loads.add(result);
+		return result;
+	}
+
+	@Test
+	void servesLoadedValueUntilInvalidated() throws Exception {
+		InfoCache<String> cache = new InfoCache<>(Duration.ofMinutes(1L));
+		assertTrue(cache.isEnabled());
+		XfsFuture<? extends String> first = cache.get(this::load);
+		assertSame(loads.get(0), first);
+		loads.get(0).succeed("status");
+
+		XfsFuture<? extends String> cached = cache.get(this::load);
+		assertEquals(1, loads.size());
+		assertEquals("status", cached.get());
+
+		cache.invalidate();
+		cache.get(this::load);
+		assertEquals(2, loads.size());
+	}
+
+	@Test
+	void loadsWhilePending() throws Exception {
+		InfoCache<String> cache = new InfoCache<>(Duration.ofMinutes(1L));
+		cache.get(this::load);
+		cache.get(this::load);
+		assertEquals(2, loads.size());
+		loads.get(0).succeed("status");
+		loads.get(1).succeed("status");
+		assertEquals("status", cache.get(this::load).get());
+		assertEquals(2, loads.size());
+	}
+
+	@Test
+	void resultOvertakenByInvalidationIsNotCached() throws Exception {
+		InfoCache<String> cache = new InfoCache<>(Duration.ofMinutes(1L));
+		XfsFuture<? extends String> result = cache.get(this::load);
+		cache.invalidate();
+		loads.get(0).succeed("outdated");
+		assertEquals("outdated", result.get());
+
+		cache.get(this::load);
+		assertEquals(2, loads.size());
+	}
+
+	@Test
+	void failureIsNotCached() throws Exception {
+		InfoCache<String> cache = new InfoCache<>(Duration.ofMinutes(1L));
+		cache.get(this::load);
+		loads.get(0).fail(new IllegalStateException("device offline"));
+		cache.get(this::load);
+		assertEquals(2, loads.size());
+	}
+
+	@Test
+	void expiresAfterMaxStaleness() throws Exception {
+		InfoCache<String> cache = new InfoCache<>(Duration.ofMillis(1L));
+		cache.get(this::load);
+		loads.get(0).succeed("status");
+		Thread.sleep(5L);
+		cache.get(this::load);
+		assertEquals(2, loads.size());
+	}
+
+	@Test
+	void disabledCacheAlwaysLoads() throws Exception {
+		InfoCache<String> cache = new InfoCache<>(Duration.ZERO);
+		assertFalse(cache.isEnabled());
+		cache.get(this::load);
+		loads.get(0).succeed("status");
+		cache.get(this::load);
+		assertEquals(2, loads.size());
+	}
+
+	@Test
+	void changingMaxStalenessInvalidates() throws Exception {
+		InfoCache<String> cache = new InfoCache<>(Duration.ofMinutes(1L));
+		cache.get(this::load);
+		loads.get(0).succeed("status");
+		cache.setMaxStaleness(Duration.ofMinutes(2L));
+		cache.get(this::load);
+		assertEquals(2, loads.size());
+		assertThrows(IllegalArgumentException.class, () -> cache.setMaxStaleness(Duration.ofMillis(-1L)));
+	}
+}
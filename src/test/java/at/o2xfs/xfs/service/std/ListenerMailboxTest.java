@@ -0,0 +1,299 @@
+package at.o2xfs.xfs.service.std;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.xfs.api.AppDisconnect;
+import at.o2xfs.xfs.api.DeviceStatus;
+import at.o2xfs.xfs.api.HardwareError;
+import at.o2xfs.xfs.api.RequestId;
+import at.o2xfs.xfs.api.ServiceId;
+import at.o2xfs.xfs.api.UndeliverableMessage;
+import at.o2xfs.xfs.service.api.event.SystemEventListener;
+import at.o2xfs.xfs.service.std.loopback.LoopbackMessageLoop;
+import at.o2xfs.xfs.service.std.loopback.LoopbackXfsApi;
+import at.o2xfs.xfs.service.std.metrics.DispatchMetrics;
+
+/**
+ * Mailboxes run on an executor that only runs what the test tells it to, so a mailbox stays full until then.
+ */
+class ListenerMailboxTest {
+
+	private static final class ManualExecutor implements Executor {
+
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+		@Override
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		void runAll() {
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+			}
+		}
+	}
+
+	private static final class Recorder {
+
+		private final List<String> events = new ArrayList<>();
+
+		synchronized void add(String event) {
+			events.add(event);
+		}
+
+		synchronized List<String> getEvents() {
+			return new ArrayList<>(events);
+		}
+	}
+
+	private static final class SystemEvents implements SystemEventListener {
+
+		private final Recorder recorder = new Recorder();
+
+		@Override
+		public void onAppDisconnect(AppDisconnect appDisconnect) {
+			recorder.add("appDisconnect");
+		}
+
+		@Override
+		public void onDeviceStatus(DeviceStatus deviceStatus) {
+			recorder.add("deviceStatus");
+		}
+
+		@Override
+		public void onFraudAttempt(HardwareError hardwareError) {
+			recorder.add("fraudAttempt");
+		}
+
+		@Override
+		public void onHardwareError(HardwareError hardwareError) {
+			recorder.add("hardwareError");
+		}
+
+		@Override
+		public void onLockRequested() {
+			recorder.add("lockRequested");
+		}
+
+		@Override
+		public void onSoftwareError(HardwareError hardwareError) {
+			recorder.add("softwareError");
+		}
+
+		@Override
+		public void onUserError(HardwareError hardwareError) {
+			recorder.add("userError");
+		}
+
+		@Override
+		public void onUndeliverableMessage(UndeliverableMessage undeliverableMessage) {
+			recorder.add("undeliverableMessage");
+		}
+	}
+
+	private final ManualExecutor executor = new ManualExecutor();
+
+	private LoopbackXfsApi xfsApi;
+	private DispatchMetrics metrics;
+	private ResultReclaimer reclaimer;
+
+	@BeforeEach
+	void setUp() {
+		xfsApi = new LoopbackXfsApi.Builder(new LoopbackMessageLoop()).build();
+		metrics = new DispatchMetrics();
+		reclaimer = new ResultReclaimer(xfsApi, metrics, 1024, 64);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		reclaimer.shutdown();
+		LoopbackFixture.assertAllResultsFreed(xfsApi);
+	}
+
+	private ListenerDelivery newDelivery(OverflowPolicy policy, int capacity) {
+		DispatcherConfig config = new DispatcherConfig.Builder().listenerDelivery(ListenerDeliveryMode.EXECUTOR)
+				.listenerExecutor(executor).overflowPolicy(policy).mailboxCapacity(capacity).jmxEnabled(false)
+				.build();
+		return new ListenerDelivery(config, metrics, reclaimer);
+	}
+
+	private static Thread start(String name, Runnable task, AtomicReference<Throwable> failure) {
+		Thread result = new Thread(() -> {
+			try {
+				task.run();
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		}, name);
+		result.setDaemon(true);
+		result.start();
+		return result;
+	}
+
+	private static void awaitWaiting(Thread thread) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+		while (!Thread.State.WAITING.equals(thread.getState())) {
+			if (!thread.isAlive()) {
+				fail(thread.getName() + " did not wait");
+			} else if (System.nanoTime() - deadline > 0L) {
+				fail(thread.getName() + " still " + thread.getState());
+			}
+			Thread.sleep(1L);
+		}
+	}
+
+	/**
+	 * Runs the mailbox until the thread has finished.
+	 */
+	private void runUntilDone(Thread thread, AtomicReference<Throwable> failure) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+		while (thread.isAlive()) {
+			if (System.nanoTime() - deadline > 0L) {
+				fail(thread.getName() + " did not finish");
+			}
+			executor.runAll();
+			thread.join(1L);
+		}
+		executor.runAll();
+		if (failure.get() != null) {
+			fail(failure.get());
+		}
+	}
+
+	@Test
+	void dropsNotificationsOnceFull() {
+		ListenerMailbox<Recorder> mailbox = newDelivery(OverflowPolicy.DROP, 2).mailbox(new Recorder());
+		assertTrue(mailbox.offer(listener -> listener.add("a")));
+		assertTrue(mailbox.offer(listener -> listener.add("b")));
+		assertFalse(mailbox.offer(listener -> listener.add("c")));
+		assertEquals(1L, metrics.getOverflow().getDropped());
+		assertEquals(2, mailbox.getBacklog());
+
+		executor.runAll();
+		assertEquals(Arrays.asList("a", "b"), mailbox.getListener().getEvents());
+		assertEquals(0, mailbox.getBacklog());
+		assertTrue(mailbox.offer(listener -> listener.add("d")));
+		executor.runAll();
+		assertEquals(Arrays.asList("a", "b", "d"), mailbox.getListener().getEvents());
+	}
+
+	@Test
+	void deliverWaitsInsteadOfDropping() throws Exception {
+		ListenerMailbox<Recorder> mailbox = newDelivery(OverflowPolicy.DROP, 2).mailbox(new Recorder());
+		mailbox.offer(listener -> listener.add("a"));
+		mailbox.offer(listener -> listener.add("b"));
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread thread = start("deliver", () -> mailbox.deliver(listener -> listener.add("c")), failure);
+		awaitWaiting(thread);
+		assertEquals(1L, metrics.getOverflow().getBlocked());
+
+		runUntilDone(thread, failure);
+		assertEquals(Arrays.asList("a", "b", "c"), mailbox.getListener().getEvents());
+		assertEquals(0L, metrics.getOverflow().getDropped());
+	}
+
+	@Test
+	void blockPolicyMakesNotificationsWait() throws Exception {
+		ListenerMailbox<Recorder> mailbox = newDelivery(OverflowPolicy.BLOCK, 1).mailbox(new Recorder());
+		assertTrue(mailbox.offer(listener -> listener.add("a")));
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread thread = start("offer", () -> assertTrue(mailbox.offer(listener -> listener.add("b"))), failure);
+		awaitWaiting(thread);
+
+		runUntilDone(thread, failure);
+		assertEquals(Arrays.asList("a", "b"), mailbox.getListener().getEvents());
+		assertEquals(0L, metrics.getOverflow().getDropped());
+	}
+
+	@Test
+	void callbacksOfTheListenerNeverWait() {
+		ListenerMailbox<Recorder> mailbox = newDelivery(OverflowPolicy.DROP, 1).mailbox(new Recorder());
+		AtomicReference<ListenerMailbox<Recorder>> self = new AtomicReference<>(mailbox);
+		mailbox.offer(listener -> {
+			listener.add("a");
+			assertTrue(self.get().offer(each -> each.add("b")));
+			self.get().deliver(each -> each.add("c"));
+			assertTrue(self.get().offer(each -> each.add("d")));
+		});
+		executor.runAll();
+		assertEquals(Arrays.asList("a", "b", "c", "d"), mailbox.getListener().getEvents());
+		assertEquals(0L, metrics.getOverflow().getDropped());
+	}
+
+	@Test
+	void freesTheResultOnceTheCallbackHasRun() {
+		ListenerMailbox<Recorder> mailbox = newDelivery(OverflowPolicy.DROP, 2).mailbox(new Recorder());
+		Address address = xfsApi.allocateResult(ServiceId.build(1), RequestId.build(1L), 0, 0, null);
+		mailbox.deliver(listener -> listener.add("a"), address);
+		assertEquals(1L, xfsApi.getOutstandingResults());
+		executor.runAll();
+		assertEquals(Arrays.asList("a"), mailbox.getListener().getEvents());
+	}
+
+	@Test
+	void inlineDeliveryRunsOnTheCaller() {
+		DispatcherConfig config = new DispatcherConfig.Builder().listenerDelivery(ListenerDeliveryMode.INLINE)
+				.mailboxCapacity(1).jmxEnabled(false).build();
+		ListenerMailbox<Recorder> mailbox = new ListenerDelivery(config, metrics, reclaimer).mailbox(new Recorder());
+		Thread caller = Thread.currentThread();
+		for (int i = 0; i < 3; i++) {
+			assertTrue(mailbox.offer(listener -> {
+				assertSame(caller, Thread.currentThread());
+				listener.add("a");
+			}));
+		}
+		assertEquals(3, mailbox.getListener().getEvents().size());
+		assertEquals(0, mailbox.getBacklog());
+	}
+
+	/**
+	 * Device status notifications may be dropped once a listener falls behind, system errors never.
+	 */
+	@Test
+	void systemErrorsAreNeverDropped() throws Exception {
+		DispatcherConfig config = new DispatcherConfig.Builder().executor(Runnable::run)
+				.listenerDelivery(ListenerDeliveryMode.EXECUTOR).listenerExecutor(executor)
+				.overflowPolicy(OverflowPolicy.DROP).mailboxCapacity(1).jmxEnabled(false).build();
+		try (LoopbackFixture fixture = new LoopbackFixture(config)) {
+			StdXfsService service = fixture.getService();
+			SystemEvents listener = new SystemEvents();
+			service.addSystemEventListener(listener);
+			service.fireDeviceStatus(null);
+			service.fireDeviceStatus(null);
+			DispatchMetrics engineMetrics = fixture.getEngine().getMetrics();
+			assertEquals(1L, engineMetrics.getOverflow().getDropped());
+
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			Thread thread = start("hardwareError", () -> {
+				service.fireHardwareError(null);
+				service.fireSoftwareError(null);
+				service.fireLockRequested();
+			}, failure);
+			awaitWaiting(thread);
+			runUntilDone(thread, failure);
+			assertEquals(Arrays.asList("deviceStatus", "hardwareError", "softwareError", "lockRequested"),
+					listener.recorder.getEvents());
+			assertEquals(1L, engineMetrics.getOverflow().getDropped());
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package at.o2xfs.xfs.service.std;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import at.o2xfs.xfs.service.api.cdm.CdmService;
+import at.o2xfs.xfs.service.std.loopback.LoopbackMessageLoop;
+import at.o2xfs.xfs.service.std.loopback.LoopbackXfsApi;
+
+/**
+ * A CDM service opened over the loopback API, with the timer thread stopped so the test expires timeouts itself.
+ * {@link #close()} stops everything and checks that every {@code WFSRESULT} was freed exactly once.
+ */
+final class LoopbackFixture implements AutoCloseable {
+
+	static final String LOGICAL_NAME = "CDM";
+
+	private final LoopbackMessageLoop messageLoop;
+	private final LoopbackXfsApi xfsApi;
+	private final DispatchEngine engine;
+	private final EventDispatcher eventDispatcher;
+	private final StdXfsService service;
+
+	LoopbackFixture(DispatcherConfig config) throws Exception {
+		messageLoop = new LoopbackMessageLoop();
+		xfsApi = new LoopbackXfsApi.Builder(messageLoop).respondToCommands(false).build();
+		engine = new DispatchEngine(xfsApi, config);
+		engine.getTimer().stop();
+		eventDispatcher = new EventDispatcher(xfsApi, engine);
+		eventDispatcher.start();
+		messageLoop.start(eventDispatcher);
+		eventDispatcher.setWindowHandle(messageLoop.getWindowHandle());
+		service = (StdXfsService) eventDispatcher.open(new OpenParam.Builder(LOGICAL_NAME).build(), CdmService.class)
+				.get();
+	}
+
+	/**
+	 * Checks that every {@code WFSRESULT} allocated through the API was freed, and none of them twice.
+	 */
+	static void assertAllResultsFreed(LoopbackXfsApi xfsApi) {
+		assertEquals(0L, xfsApi.getOutstandingResults(), "outstanding results");
+		assertEquals(0L, xfsApi.getInvalidFrees(), "invalid frees");
+	}
+
+	LoopbackXfsApi getXfsApi() {
+		return xfsApi;
+	}
+
+	DispatchEngine getEngine() {
+		return engine;
+	}
+
+	StdXfsService getService() {
+		return service;
+	}
+
+	@Override
+	public void close() throws Exception {
+		eventDispatcher.stop();
+		engine.shutdown();
+		messageLoop.stop();
+		assertAllResultsFreed(xfsApi);
+	}
+}
@@ -0,0 +1,26 @@
+package at.o2xfs.xfs.service.std;
+
+/**
+ * A future the test completes itself.
+ */
+final class PendingXfsFuture<T> extends AbstractXfsFuture<T> {
+
+	private int cancelled = 0;
+
+	void succeed(T value) {
+		complete(value);
+	}
+
+	void fail(Throwable exception) {
+		completeExceptionally(exception);
+	}
+
+	int getCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public void cancel() {
+		cancelled++;
+	}
+}
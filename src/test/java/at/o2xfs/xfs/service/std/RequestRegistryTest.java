@@ -0,0 +1,344 @@
+package at.o2xfs.xfs.service.std;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.xfs.api.RequestId;
+import at.o2xfs.xfs.api.ServiceId;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.service.std.loopback.LoopbackMessageLoop;
+import at.o2xfs.xfs.service.std.loopback.LoopbackXfsApi;
+import at.o2xfs.xfs.service.std.metrics.DispatchMetrics;
+
+/**
+ * Every {@code WFSRESULT} is freed by whoever the registry says owns it: the caller if a {@code fire} method returns
+ * {@code true}, the registry or the notification otherwise. The loopback API counts what is left over and what is
+ * freed twice.
+ */
+class RequestRegistryTest {
+
+	private static final class Event {
+
+		private final Address address;
+		private final WfsResult wfsResult;
+
+		private Event(Address address, WfsResult wfsResult) {
+			this.address = address;
+			this.wfsResult = wfsResult;
+		}
+	}
+
+	/**
+	 * Records the event IDs it receives, {@link #COMPLETED} for the completion. With a reclaimer, it takes over the
+	 * intermediate events' buffers like a listener mailbox does.
+	 */
+	private static final class Notification implements XfsEventNotification {
+
+		private static final int COMPLETED = -1;
+
+		private final ResultReclaimer mailbox;
+		private final List<Integer> events = new ArrayList<>();
+
+		private Notification(ResultReclaimer mailbox) {
+			this.mailbox = mailbox;
+		}
+
+		@Override
+		public synchronized void fireIntermediateEvent(WfsResult wfsResult) {
+			events.add(wfsResult.getEventId());
+		}
+
+		@Override
+		public boolean fireIntermediateEvent(Address address, WfsResult wfsResult) {
+			fireIntermediateEvent(wfsResult);
+			if (mailbox == null) {
+				return true;
+			}
+			mailbox.free(address);
+			return false;
+		}
+
+		@Override
+		public synchronized void fireOperationCompleteEvent(WfsResult wfsResult) {
+			events.add(COMPLETED);
+		}
+
+		synchronized List<Integer> getEvents() {
+			return new ArrayList<>(events);
+		}
+	}
+
+	private static final ServiceId SERVICE_ID = ServiceId.build(1);
+	private static final Duration TICK = Duration.ofMillis(10L);
+	private static final Duration GRACE_PERIOD = Duration.ofSeconds(1L);
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private LoopbackXfsApi xfsApi;
+	private ResultReclaimer reclaimer;
+	private DeadlineTimer timer;
+	private RequestRegistry registry;
+
+	@BeforeEach
+	void setUp() {
+		xfsApi = new LoopbackXfsApi.Builder(new LoopbackMessageLoop()).build();
+		reclaimer = new ResultReclaimer(xfsApi, new DispatchMetrics(), 1024, 64);
+		timer = new DeadlineTimer(clock::get, TICK, 64);
+		registry = new RequestRegistry(reclaimer, timer, GRACE_PERIOD);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		reclaimer.shutdown();
+		LoopbackFixture.assertAllResultsFreed(xfsApi);
+	}
+
+	private int advance(Duration duration) {
+		clock.addAndGet(duration.toNanos());
+		return timer.expireTimeouts();
+	}
+
+	private Event event(long requestId, int eventId) {
+		Address address = xfsApi.allocateResult(SERVICE_ID, RequestId.build(requestId), 0, eventId, null);
+		WfsResult wfsResult = new WfsResult.Builder().serviceId(SERVICE_ID).requestId(RequestId.build(requestId))
+				.eventId(eventId).build();
+		return new Event(address, wfsResult);
+	}
+
+	/**
+	 * Fires an intermediate event and frees it if the registry hands it back, as the dispatcher does.
+	 */
+	private boolean fireIntermediate(long requestId, int eventId) {
+		Event event = event(requestId, eventId);
+		boolean result = registry.fireIntermediateEvent(event.address, event.wfsResult);
+		if (result) {
+			reclaimer.free(event.address);
+		}
+		return result;
+	}
+
+	private boolean fireComplete(long requestId) {
+		Event event = event(requestId, 0);
+		boolean result = registry.fireOperationCompleteEvent(event.address, event.wfsResult);
+		if (result) {
+			reclaimer.free(event.address);
+		}
+		return result;
+	}
+
+	@Test
+	void deliversEventsOfARegisteredRequest() {
+		Notification notification = new Notification(null);
+		registry.register(RequestId.build(1L), notification);
+		assertTrue(fireIntermediate(1L, 1));
+		assertTrue(fireIntermediate(1L, 2));
+		assertEquals(1, registry.size());
+		assertTrue(fireComplete(1L));
+		assertEquals(Arrays.asList(1, 2, Notification.COMPLETED), notification.getEvents());
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	void replaysEventsThatArrivedBeforeRegister() {
+		assertFalse(fireIntermediate(1L, 1));
+		assertFalse(fireIntermediate(1L, 2));
+		assertEquals(1, registry.size());
+
+		Notification notification = new Notification(null);
+		registry.register(RequestId.build(1L), notification);
+		assertEquals(Arrays.asList(1, 2), notification.getEvents());
+		assertEquals(1, registry.size());
+
+		assertTrue(fireIntermediate(1L, 3));
+		assertTrue(fireComplete(1L));
+		assertEquals(Arrays.asList(1, 2, 3, Notification.COMPLETED), notification.getEvents());
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	void replaysCompletionThatArrivedBeforeRegister() {
+		assertFalse(fireIntermediate(1L, 1));
+		assertFalse(fireComplete(1L));
+
+		Notification notification = new Notification(null);
+		registry.register(RequestId.build(1L), notification);
+		assertEquals(Arrays.asList(1, Notification.COMPLETED), notification.getEvents());
+		assertEquals(0, registry.size());
+
+		assertEquals(1, advance(GRACE_PERIOD), "the reap finds nothing left to free");
+		assertEquals(Arrays.asList(1, Notification.COMPLETED), notification.getEvents());
+	}
+
+	@Test
+	void replayedEventsMayBeHandedOverToAMailbox() {
+		assertFalse(fireIntermediate(1L, 1));
+		Notification notification = new Notification(reclaimer);
+		registry.register(RequestId.build(1L), notification);
+		assertFalse(fireIntermediate(1L, 2));
+		assertTrue(fireComplete(1L));
+		assertEquals(Arrays.asList(1, 2, Notification.COMPLETED), notification.getEvents());
+	}
+
+	@Test
+	void reapsEventsOfARequestThatIsNeverRegistered() {
+		assertFalse(fireIntermediate(1L, 1));
+		assertFalse(fireComplete(1L));
+		assertEquals(0, advance(GRACE_PERIOD.minus(TICK)));
+		assertEquals(1, registry.size());
+		assertEquals(1, advance(TICK));
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	void registerAfterReapStartsOver() {
+		assertFalse(fireIntermediate(1L, 1));
+		advance(GRACE_PERIOD);
+		assertEquals(0, registry.size());
+
+		Notification notification = new Notification(null);
+		registry.register(RequestId.build(1L), notification);
+		assertTrue(fireComplete(1L));
+		assertEquals(Arrays.asList(Notification.COMPLETED), notification.getEvents());
+	}
+
+	@Test
+	void reapRemovesOnlyTheGivenNotification() {
+		Notification notification = new Notification(null);
+		registry.register(RequestId.build(1L), notification);
+		assertFalse(registry.reap(RequestId.build(1L), new Notification(null)));
+		assertTrue(registry.reap(RequestId.build(1L), notification));
+		assertFalse(registry.reap(RequestId.build(1L), notification));
+		assertEquals(0, registry.size());
+
+		assertFalse(fireComplete(1L), "a late completion is parked until the grace period ends");
+		advance(GRACE_PERIOD);
+		assertEquals(0, registry.size());
+		assertEquals(0, notification.getEvents().size());
+	}
+
+	@Test
+	void rejectsDuplicateRegistration() {
+		registry.register(RequestId.build(1L), new Notification(null));
+		assertThrows(IllegalStateException.class, () -> registry.register(RequestId.build(1L), new Notification(null)));
+		assertEquals(1, registry.size());
+	}
+
+	/**
+	 * Registers and fires each request concurrently, so registration may happen before, between or after its events.
+	 * Every request must see its events exactly once and in order.
+	 */
+	@Test
+	void concurrentRegisterAndFire() throws Exception {
+		int requests = 2000;
+		int intermediates = 3;
+		CyclicBarrier barrier = new CyclicBarrier(2);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread firing = new Thread(() -> {
+			try {
+				for (long requestId = 1L; requestId <= requests; requestId++) {
+					barrier.await(5L, TimeUnit.SECONDS);
+					for (int eventId = 0; eventId < intermediates; eventId++) {
+						fireIntermediate(requestId, eventId);
+						if (ThreadLocalRandom.current().nextBoolean()) {
+							Thread.yield();
+						}
+					}
+					fireComplete(requestId);
+				}
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		}, "firing");
+		firing.setDaemon(true);
+		firing.start();
+
+		List<Notification> notifications = new ArrayList<>();
+		for (long requestId = 1L; requestId <= requests; requestId++) {
+			Notification notification = new Notification(requestId % 2L == 0L ? reclaimer : null);
+			notifications.add(notification);
+			barrier.await(5L, TimeUnit.SECONDS);
+			if (ThreadLocalRandom.current().nextBoolean()) {
+				Thread.yield();
+			}
+			registry.register(RequestId.build(requestId), notification);
+		}
+		firing.join(TimeUnit.SECONDS.toMillis(10L));
+		assertFalse(firing.isAlive());
+		if (failure.get() != null) {
+			fail(failure.get());
+		}
+
+		List<Integer> expected = Arrays.asList(0, 1, 2, Notification.COMPLETED);
+		for (int i = 0; i < notifications.size(); i++) {
+			assertEquals(expected, notifications.get(i).getEvents(), "request " + (i + 1));
+		}
+		assertEquals(0, registry.size());
+	}
+
+	/**
+	 * Expires the grace period of parked events while the request is being registered. Whether the events are replayed
+	 * or reaped first, the request must end up registered.
+	 */
+	@Test
+	void concurrentReapAndRegister() throws Exception {
+		int requests = 2000;
+		CyclicBarrier start = new CyclicBarrier(2);
+		CyclicBarrier done = new CyclicBarrier(2);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread reaping = new Thread(() -> {
+			try {
+				for (int i = 0; i < requests; i++) {
+					start.await(5L, TimeUnit.SECONDS);
+					timer.expireTimeouts();
+					done.await(5L, TimeUnit.SECONDS);
+				}
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		}, "reaping");
+		reaping.setDaemon(true);
+		reaping.start();
+
+		for (long requestId = 1L; requestId <= requests; requestId++) {
+			assertFalse(fireIntermediate(requestId, 0));
+			clock.addAndGet(GRACE_PERIOD.toNanos());
+			Notification notification = new Notification(null);
+			start.await(5L, TimeUnit.SECONDS);
+			if (ThreadLocalRandom.current().nextBoolean()) {
+				Thread.yield();
+			}
+			registry.register(RequestId.build(requestId), notification);
+			done.await(5L, TimeUnit.SECONDS);
+
+			assertEquals(1, registry.size(), "request " + requestId);
+			assertTrue(fireComplete(requestId), "request " + requestId);
+			List<Integer> events = notification.getEvents();
+			assertEquals(Notification.COMPLETED, events.get(events.size() - 1).intValue(), "request " + requestId);
+			assertTrue(events.size() <= 2, "request " + requestId);
+			assertEquals(0, registry.size());
+		}
+		reaping.join(TimeUnit.SECONDS.toMillis(5L));
+		assertFalse(reaping.isAlive());
+		if (failure.get() != null) {
+			fail(failure.get());
+		}
+	}
+}
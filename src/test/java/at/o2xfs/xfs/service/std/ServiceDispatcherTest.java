@@ -0,0 +1,166 @@
+package at.o2xfs.xfs.service.std;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import at.o2xfs.xfs.api.XfsMessage;
+import at.o2xfs.xfs.cdm.CdmExecuteCommand;
+import at.o2xfs.xfs.service.api.ExecuteCommand;
+import at.o2xfs.xfs.service.std.loopback.LoopbackXfsApi;
+import at.o2xfs.xfs.service.std.metrics.ServiceMetrics;
+
+/**
+ * Drives request deadlines with a manual clock. Timeout tasks run on the thread calling
+ * {@link DeadlineTimer#expireTimeouts()}, so every timeout is expired by the test itself.
+ */
+class ServiceDispatcherTest {
+
+	private static final ExecuteCommand<CdmExecuteCommand> DISPENSE = new ExecuteCommand.Builder<>(
+			CdmExecuteCommand.DISPENSE).build();
+
+	private static final Duration TICK = Duration.ofMillis(10L);
+	private static final Duration DEADLINE = Duration.ofMillis(100L);
+	private static final Duration GRACE_PERIOD = Duration.ofSeconds(1L);
+	private static final int WFS_ERR_CANCELED = -4;
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private LoopbackFixture fixture;
+	private LoopbackXfsApi xfsApi;
+	private DispatchEngine engine;
+	private StdXfsService service;
+	private ServiceMetrics metrics;
+	private long completedBefore;
+	private long failedBefore;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		DispatcherConfig config = new DispatcherConfig.Builder().executor(Runnable::run).clock(clock::get)
+				.timerTick(TICK).requestDeadline(DEADLINE).orphanGracePeriod(GRACE_PERIOD).jmxEnabled(false).build();
+		fixture = new LoopbackFixture(config);
+		xfsApi = fixture.getXfsApi();
+		engine = fixture.getEngine();
+		service = fixture.getService();
+		metrics = engine.getMetrics().service(LoopbackFixture.LOGICAL_NAME);
+		await(() -> metrics.getInFlightRequests() == 0L, "event registration not completed");
+		// lets the timeouts of opening the service pass, e.g. of completions that raced their registration
+		advance(GRACE_PERIOD.plus(TICK));
+		completedBefore = metrics.getCompletedRequests();
+		failedBefore = metrics.getFailedRequests();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		fixture.close();
+	}
+
+	private int advance(Duration duration) {
+		clock.addAndGet(duration.toNanos());
+		return engine.getTimer().expireTimeouts();
+	}
+
+	private static void await(BooleanSupplier condition, String message) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() - deadline > 0L) {
+				fail(message);
+			}
+			Thread.sleep(1L);
+		}
+	}
+
+	private long completed() {
+		return metrics.getCompletedRequests() - completedBefore;
+	}
+
+	private long failed() {
+		return metrics.getFailedRequests() - failedBefore;
+	}
+
+	private StdXfsFuture<?> dispense() throws Exception {
+		return (StdXfsFuture<?>) service.execute(DISPENSE, null, null);
+	}
+
+	private static CompletableFuture<?> completion(StdXfsFuture<?> future) {
+		return future.toCompletionStage().toCompletableFuture();
+	}
+
+	private void complete(StdXfsFuture<?> future, int errorCode) {
+		xfsApi.post(XfsMessage.EXECUTE_COMPLETE, service.getId(), future.getRequestId(), errorCode, 0, null);
+	}
+
+	@Test
+	void reapsRequestAfterGracePeriod() throws Exception {
+		StdXfsFuture<?> future = dispense();
+		assertEquals(1L, metrics.getInFlightRequests());
+		assertEquals(0, advance(DEADLINE.minus(TICK)));
+		assertFalse(completion(future).isDone());
+
+		assertEquals(1, advance(TICK));
+		assertTrue(completion(future).isCompletedExceptionally());
+		assertEquals(1L, metrics.getInFlightRequests());
+
+		assertEquals(0, advance(GRACE_PERIOD.minus(TICK)));
+		assertEquals(1L, metrics.getInFlightRequests());
+		assertEquals(1, advance(TICK));
+		assertEquals(0L, metrics.getInFlightRequests());
+		assertEquals(1L, failed());
+	}
+
+	@Test
+	void completionAfterReapIsFreed() throws Exception {
+		StdXfsFuture<?> future = dispense();
+		advance(DEADLINE);
+		advance(GRACE_PERIOD);
+		assertEquals(0L, metrics.getInFlightRequests());
+
+		complete(future, WFS_ERR_CANCELED);
+		await(() -> {
+			advance(TICK);
+			return xfsApi.getOutstandingResults() == 0L;
+		}, "late completion not freed");
+		assertEquals(0L, metrics.getInFlightRequests());
+		assertEquals(1L, failed());
+		assertEquals(0L, completed());
+	}
+
+	@Test
+	void completionWithinGracePeriodIsNotReaped() throws Exception {
+		StdXfsFuture<?> future = dispense();
+		assertEquals(1, advance(DEADLINE));
+		assertTrue(completion(future).isCompletedExceptionally());
+
+		complete(future, WFS_ERR_CANCELED);
+		await(() -> metrics.getInFlightRequests() == 0L, "completion not delivered");
+		assertEquals(1L, failed());
+
+		assertEquals(1, advance(GRACE_PERIOD));
+		assertEquals(0L, metrics.getInFlightRequests());
+		assertEquals(1L, failed());
+	}
+
+	@Test
+	void completionCancelsDeadline() throws Exception {
+		StdXfsFuture<?> future = dispense();
+		complete(future, 0);
+		await(() -> completion(future).isDone(), "completion not delivered");
+		assertFalse(completion(future).isCompletedExceptionally());
+
+		assertEquals(0, advance(DEADLINE.plus(GRACE_PERIOD)));
+		assertEquals(0L, metrics.getInFlightRequests());
+		assertEquals(1L, completed());
+		assertEquals(0L, failed());
+	}
+}
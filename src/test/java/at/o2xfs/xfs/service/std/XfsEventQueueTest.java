@@ -0,0 +1,246 @@
+package at.o2xfs.xfs.service.std;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import at.o2xfs.memory.core.Address;
+import at.o2xfs.xfs.api.RequestId;
+import at.o2xfs.xfs.api.ServiceId;
+import at.o2xfs.xfs.api.WfsResult;
+import at.o2xfs.xfs.api.XfsMessage;
+import at.o2xfs.xfs.service.std.loopback.LoopbackMessageLoop;
+import at.o2xfs.xfs.service.std.loopback.LoopbackXfsApi;
+import at.o2xfs.xfs.service.std.metrics.DispatchMetrics;
+import at.o2xfs.xfs.service.std.metrics.OverflowCounters;
+import at.o2xfs.xfs.service.std.queue.BlockingWaitStrategy;
+import at.o2xfs.xfs.service.std.queue.BusySpinWaitStrategy;
+
+class XfsEventQueueTest {
+
+	private static final ServiceId SERVICE_ID = ServiceId.build(1);
+	private static final int CRITICAL_EVENT_ID = 99;
+
+	private LoopbackXfsApi xfsApi;
+	private ResultReclaimer reclaimer;
+	private OverflowCounters counters;
+
+	@BeforeEach
+	void setUp() {
+		xfsApi = new LoopbackXfsApi.Builder(new LoopbackMessageLoop()).build();
+		reclaimer = new ResultReclaimer(xfsApi, new DispatchMetrics(), 1024, 64);
+		counters = new OverflowCounters();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		reclaimer.shutdown();
+		LoopbackFixture.assertAllResultsFreed(xfsApi);
+	}
+
+	private XfsEventQueue newQueue(int capacity, OverflowPolicy policy, int spillCapacity) {
+		return new XfsEventQueue(capacity, new BusySpinWaitStrategy(), policy, spillCapacity, reclaimer, counters,
+				wfsResult -> wfsResult.getEventId() == CRITICAL_EVENT_ID);
+	}
+
+	private Address offer(XfsEventQueue queue, XfsMessage message, long requestId, int eventId) {
+		Address address = xfsApi.allocateResult(SERVICE_ID, RequestId.build(requestId), 0, eventId, null);
+		WfsResult wfsResult = new WfsResult.Builder().serviceId(SERVICE_ID).requestId(RequestId.build(requestId))
+				.eventId(eventId).build();
+		queue.offer(message, address, wfsResult);
+		return address;
+	}
+
+	/**
+	 * Polls the next event, checks it and frees it as the dispatcher would once done with it.
+	 */
+	private void pollAndFree(XfsEventQueue queue, XfsMessage message, long requestId, int eventId) {
+		XfsEvent event = queue.poll();
+		if (event == null) {
+			fail("No event, expected " + message + " of request " + requestId);
+		}
+		assertEquals(message, event.getMessage());
+		assertEquals(RequestId.build(requestId), event.getWfsResult().getRequestId());
+		assertEquals(eventId, event.getWfsResult().getEventId());
+		reclaimer.free(event.getAddress());
+		queue.release(event);
+	}
+
+	@Test
+	void overflowIsPolledAfterTheRing() {
+		XfsEventQueue queue = newQueue(4, OverflowPolicy.SPILL, 16);
+		for (int i = 0; i < 10; i++) {
+			offer(queue, XfsMessage.SERVICE_EVENT, i, 0);
+		}
+		assertEquals(10, queue.size());
+		assertEquals(6L, counters.getSpilled());
+		for (int i = 0; i < 10; i++) {
+			pollAndFree(queue, XfsMessage.SERVICE_EVENT, i, 0);
+		}
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	void offersSpillWhileTheOverflowHoldsEvents() {
+		XfsEventQueue queue = newQueue(4, OverflowPolicy.SPILL, 16);
+		for (int i = 0; i < 6; i++) {
+			offer(queue, XfsMessage.SERVICE_EVENT, i, 0);
+		}
+		pollAndFree(queue, XfsMessage.SERVICE_EVENT, 0, 0);
+		pollAndFree(queue, XfsMessage.SERVICE_EVENT, 1, 0);
+		offer(queue, XfsMessage.SERVICE_EVENT, 6, 0);
+		assertEquals(3L, counters.getSpilled(), "ring slots are free, but events 4 and 5 are still spilled");
+		for (int i = 2; i < 7; i++) {
+			pollAndFree(queue, XfsMessage.SERVICE_EVENT, i, 0);
+		}
+		assertTrue(queue.isEmpty());
+
+		offer(queue, XfsMessage.SERVICE_EVENT, 7, 0);
+		assertEquals(3L, counters.getSpilled(), "the overflow has been drained, the ring is used again");
+		XfsEvent event = queue.poll();
+		assertFalse(event.isSpilled());
+		reclaimer.free(event.getAddress());
+		queue.release(event);
+	}
+
+	@Test
+	void dropsOnlyNonCriticalEvents() {
+		XfsEventQueue queue = newQueue(4, OverflowPolicy.DROP, 16);
+		for (int i = 0; i < 4; i++) {
+			offer(queue, XfsMessage.SERVICE_EVENT, i, 0);
+		}
+		offer(queue, XfsMessage.SERVICE_EVENT, 4, 0);
+		offer(queue, XfsMessage.USER_EVENT, 5, 0);
+		offer(queue, XfsMessage.EXECUTE_EVENT, 6, 0);
+		offer(queue, XfsMessage.SERVICE_EVENT, 7, CRITICAL_EVENT_ID);
+		offer(queue, XfsMessage.EXECUTE_COMPLETE, 8, 0);
+		assertEquals(2L, counters.getDropped());
+		assertEquals(3L, counters.getSpilled());
+
+		for (int i = 0; i < 4; i++) {
+			pollAndFree(queue, XfsMessage.SERVICE_EVENT, i, 0);
+		}
+		pollAndFree(queue, XfsMessage.EXECUTE_EVENT, 6, 0);
+		pollAndFree(queue, XfsMessage.SERVICE_EVENT, 7, CRITICAL_EVENT_ID);
+		pollAndFree(queue, XfsMessage.EXECUTE_COMPLETE, 8, 0);
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	void spillDropsNonCriticalEventsOnceFull() {
+		XfsEventQueue queue = newQueue(4, OverflowPolicy.SPILL, 2);
+		for (int i = 0; i < 7; i++) {
+			offer(queue, XfsMessage.SERVICE_EVENT, i, 0);
+		}
+		assertEquals(2L, counters.getSpilled());
+		assertEquals(1L, counters.getDropped());
+		for (int i = 0; i < 6; i++) {
+			pollAndFree(queue, XfsMessage.SERVICE_EVENT, i, 0);
+		}
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	void conflatesOnlyEventsOfTheSameKind() {
+		XfsEventQueue queue = newQueue(4, OverflowPolicy.CONFLATE, 16);
+		for (int i = 0; i < 4; i++) {
+			offer(queue, XfsMessage.SERVICE_EVENT, i, 0);
+		}
+		offer(queue, XfsMessage.SERVICE_EVENT, 0, 7);
+		offer(queue, XfsMessage.SERVICE_EVENT, 0, 7);
+		offer(queue, XfsMessage.SERVICE_EVENT, 0, 8);
+		Address latest = offer(queue, XfsMessage.SERVICE_EVENT, 0, 7);
+		offer(queue, XfsMessage.EXECUTE_EVENT, 1, 7);
+		offer(queue, XfsMessage.EXECUTE_EVENT, 1, 7);
+		assertEquals(2L, counters.getConflated());
+		assertEquals(4L, counters.getSpilled());
+
+		for (int i = 0; i < 4; i++) {
+			pollAndFree(queue, XfsMessage.SERVICE_EVENT, i, 0);
+		}
+		XfsEvent event = queue.poll();
+		assertSame(latest, event.getAddress(), "the conflated event keeps its place in the queue");
+		reclaimer.free(event.getAddress());
+		queue.release(event);
+		pollAndFree(queue, XfsMessage.SERVICE_EVENT, 0, 8);
+		pollAndFree(queue, XfsMessage.EXECUTE_EVENT, 1, 7);
+		pollAndFree(queue, XfsMessage.EXECUTE_EVENT, 1, 7);
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	void discardFreesRingAndOverflow() {
+		XfsEventQueue queue = newQueue(4, OverflowPolicy.SPILL, 16);
+		for (int i = 0; i < 7; i++) {
+			offer(queue, XfsMessage.SERVICE_EVENT, i, 0);
+		}
+		assertEquals(7, queue.discard());
+		assertTrue(queue.isEmpty());
+		assertEquals(0, queue.size());
+	}
+
+	/**
+	 * Critical events are never dropped, so producers wait for the consumer once both the ring and the overflow are
+	 * full. Each producer's events must come out exactly once and in the order it offered them.
+	 */
+	@Test
+	void keepsTheOrderOfEachProducer() throws Exception {
+		int producers = 4;
+		int events = 20_000;
+		XfsEventQueue queue = new XfsEventQueue(16, new BlockingWaitStrategy(), OverflowPolicy.SPILL, 32, reclaimer,
+				counters, wfsResult -> false);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < producers; i++) {
+			int producer = i;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					for (int value = 0; value < events; value++) {
+						offer(queue, XfsMessage.EXECUTE_EVENT, producer, value);
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}, "producer-" + producer);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+		int[] next = new int[producers];
+		start.countDown();
+		for (int i = 0; i < producers * events; i++) {
+			XfsEvent event = queue.take();
+			int producer = (int) event.getWfsResult().getRequestId().getValue();
+			assertEquals(next[producer]++, event.getWfsResult().getEventId(), "producer " + producer);
+			reclaimer.free(event.getAddress());
+			queue.release(event);
+		}
+		for (Thread each : threads) {
+			each.join(TimeUnit.SECONDS.toMillis(5L));
+			assertFalse(each.isAlive());
+		}
+		if (failure.get() != null) {
+			fail(failure.get());
+		}
+		assertTrue(queue.isEmpty());
+		assertEquals(0L, counters.getDropped());
+		assertTrue(counters.getSpilled() > 0L, "the overflow was never used");
+	}
+}
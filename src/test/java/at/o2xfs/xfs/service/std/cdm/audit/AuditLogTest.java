@@ -0,0 +1,225 @@
+package at.o2xfs.xfs.service.std.cdm.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AuditLogTest {
+
+	private Path path;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		path = Files.createTempFile("audit", ".log");
+		Files.delete(path);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	private void write(int first, int count) throws Exception {
+		try (AuditLog log = new AuditLog(path, 16, 4)) {
+			for (int i = first; i < first + count; i++) {
+				assertTrue(log.append(AuditRecordType.DISPENSE, i, "record " + i));
+			}
+			log.sync().get(5L, TimeUnit.SECONDS);
+			assertEquals(count, log.getWritten());
+		}
+	}
+
+	private List<AuditRecord> read() throws IOException {
+		List<AuditRecord> result = new ArrayList<>();
+		try (AuditLogReader reader = new AuditLogReader(path)) {
+			Optional<AuditRecord> record;
+			while ((record = reader.next()).isPresent()) {
+				result.add(record.get());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the offset of each record, followed by the offset just past the last one.
+	 */
+	private List<Long> offsets() throws IOException {
+		List<Long> result = new ArrayList<>();
+		try (AuditLogReader reader = new AuditLogReader(path)) {
+			result.add(reader.getPosition());
+			while (reader.next().isPresent()) {
+				result.add(reader.getPosition());
+			}
+		}
+		return result;
+	}
+
+	private void truncate(long size) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(size);
+		}
+	}
+
+	private void corrupt(long offset) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer buffer = ByteBuffer.allocate(1);
+			channel.read(buffer, offset);
+			buffer.put(0, (byte) (buffer.get(0) ^ 0x01)).rewind();
+			channel.write(buffer, offset);
+		}
+	}
+
+	private static void assertRecord(AuditRecord record, long sequence, long requestId) {
+		assertEquals(sequence, record.getSequence());
+		assertEquals(requestId, record.getRequestId());
+		assertEquals(AuditRecordType.DISPENSE, record.getType());
+		assertEquals("record " + requestId, record.getText());
+	}
+
+	@Test
+	void readsWhatWasAppended() throws Exception {
+		write(0, 3);
+		List<AuditRecord> records = read();
+		assertEquals(3, records.size());
+		for (int i = 0; i < 3; i++) {
+			assertRecord(records.get(i), i + 1L, i);
+		}
+		List<Long> offsets = offsets();
+		assertEquals(AuditFormat.HEADER_SIZE, offsets.get(0).longValue());
+		assertEquals(Files.size(path), offsets.get(3).longValue());
+	}
+
+	@Test
+	void appendsAfterReopen() throws Exception {
+		write(0, 2);
+		write(2, 2);
+		List<AuditRecord> records = read();
+		assertEquals(4, records.size());
+		for (int i = 0; i < 4; i++) {
+			assertRecord(records.get(i), i + 1L, i);
+		}
+	}
+
+	@Test
+	void recordCutOffMidwayEndsTheLog() throws Exception {
+		write(0, 3);
+		List<Long> offsets = offsets();
+		long[] cuts = { offsets.get(2) + 2L, offsets.get(2) + AuditFormat.RECORD_HEADER_SIZE - 1L,
+				offsets.get(3) - 1L };
+		for (long each : cuts) {
+			truncate(each);
+			List<AuditRecord> records = read();
+			assertEquals(2, records.size(), "cut at " + each);
+			assertRecord(records.get(1), 2L, 1L);
+			assertEquals(offsets.get(2), offsets().get(2), "cut at " + each);
+		}
+	}
+
+	@Test
+	void appendsContinueAfterTheLastIntactRecord() throws Exception {
+		write(0, 3);
+		List<Long> offsets = offsets();
+		truncate(offsets.get(3) - 5L);
+
+		write(3, 1);
+		List<AuditRecord> records = read();
+		assertEquals(3, records.size());
+		assertRecord(records.get(0), 1L, 0L);
+		assertRecord(records.get(1), 2L, 1L);
+		assertRecord(records.get(2), 3L, 3L);
+		assertEquals(Files.size(path), offsets().get(3).longValue());
+	}
+
+	@Test
+	void corruptChecksumEndsTheLog() throws Exception {
+		write(0, 3);
+		List<Long> offsets = offsets();
+		corrupt(offsets.get(2) - 1L);
+		List<AuditRecord> records = read();
+		assertEquals(1, records.size());
+		assertRecord(records.get(0), 1L, 0L);
+
+		write(3, 1);
+		records = read();
+		assertEquals(2, records.size(), "the corrupt record and everything after it are cut off");
+		assertRecord(records.get(0), 1L, 0L);
+		assertRecord(records.get(1), 2L, 3L);
+		assertEquals(Files.size(path), offsets().get(2).longValue());
+	}
+
+	@Test
+	void corruptLengthEndsTheLog() throws Exception {
+		write(0, 2);
+		List<Long> offsets = offsets();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(4).putInt(0, Integer.MAX_VALUE), offsets.get(1));
+		}
+		assertEquals(1, read().size());
+
+		write(2, 1);
+		List<AuditRecord> records = read();
+		assertEquals(2, records.size());
+		assertRecord(records.get(1), 2L, 2L);
+	}
+
+	@Test
+	void trailingZerosAreCutOff() throws Exception {
+		write(0, 2);
+		long size = Files.size(path);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.allocate(4096), size);
+		}
+		assertEquals(2, read().size());
+
+		write(2, 1);
+		assertEquals(3, read().size());
+		assertEquals(Files.size(path), offsets().get(3).longValue());
+	}
+
+	@Test
+	void cutOffHeaderIsRewritten() throws Exception {
+		write(0, 1);
+		truncate(AuditFormat.HEADER_SIZE - 3L);
+		assertThrows(IOException.class, () -> new AuditLogReader(path));
+
+		write(1, 1);
+		List<AuditRecord> records = read();
+		assertEquals(1, records.size());
+		assertRecord(records.get(0), 1L, 1L);
+	}
+
+	@Test
+	void rejectsFileThatIsNoAuditLog() throws Exception {
+		Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+		assertThrows(IOException.class, () -> new AuditLogReader(path));
+		assertThrows(IOException.class, () -> new AuditLog(path));
+	}
+
+	@Test
+	void dropsAppendsAfterClose() throws Exception {
+		AuditLog log = new AuditLog(path, 16, 4);
+		log.close();
+		assertFalse(log.append(AuditRecordType.DISPENSE, 0L, "record 0"));
+		assertEquals(1L, log.getDropped());
+		ExecutionException e = assertThrows(ExecutionException.class, () -> log.sync().get(5L, TimeUnit.SECONDS));
+		assertTrue(e.getCause() instanceof IOException);
+		assertEquals(0, read().size());
+	}
+}
@@ -0,0 +1,115 @@
+package at.o2xfs.xfs.service.std.journal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Uses regions far smaller than a real journal's, so records end up on region boundaries on both sides.
+ */
+class JournalTest {
+
+	private static final int WRITER_REGION_SIZE = 64;
+	private static final int READER_REGION_SIZE = 48;
+
+	private Path path;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		path = Files.createTempFile("journal", ".bin");
+		Files.delete(path);
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	private static byte[] payload(int i) {
+		byte[] result = new byte[i * 7 % 101];
+		for (int j = 0; j < result.length; j++) {
+			result[j] = (byte) (i + j);
+		}
+		return result;
+	}
+
+	private long write(int count) throws IOException {
+		try (JournalWriter writer = new JournalWriter(path, WRITER_REGION_SIZE)) {
+			for (int i = 0; i < count; i++) {
+				writer.append(i % 7, 1000L + i, i, i % 3, -i, i * 10, payload(i));
+			}
+			assertEquals(count, writer.getRecords());
+			return writer.size();
+		}
+	}
+
+	private List<JournalRecord> read() throws IOException {
+		List<JournalRecord> result = new ArrayList<>();
+		try (JournalReader reader = new JournalReader(path, READER_REGION_SIZE)) {
+			Optional<JournalRecord> record;
+			while ((record = reader.next()).isPresent()) {
+				result.add(record.get());
+			}
+		}
+		return result;
+	}
+
+	private static void assertRecord(JournalRecord record, int i) {
+		assertEquals(i % 7, record.getMsg());
+		assertEquals(1000L + i, record.getTimestamp());
+		assertEquals(i, record.getRequestId());
+		assertEquals(i % 3, record.getServiceId());
+		assertEquals(-i, record.getErrorCode());
+		assertEquals(i * 10, record.getEventId());
+		assertArrayEquals(payload(i), record.getPayload());
+	}
+
+	@Test
+	void readsWhatWasWritten() throws Exception {
+		write(50);
+		List<JournalRecord> records = read();
+		assertEquals(50, records.size());
+		for (int i = 0; i < records.size(); i++) {
+			assertRecord(records.get(i), i);
+		}
+	}
+
+	@Test
+	void emptyJournal() throws Exception {
+		write(0);
+		assertEquals(0, read().size());
+	}
+
+	@Test
+	void recordCutOffMidwayEndsTheJournal() throws Exception {
+		long size = write(3);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(size - 1L);
+		}
+		List<JournalRecord> records = read();
+		assertEquals(2, records.size());
+		assertRecord(records.get(1), 1);
+	}
+
+	@Test
+	void rejectsFileThatIsNoJournal() throws Exception {
+		Files.write(path, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+		assertThrows(IOException.class, () -> new JournalReader(path));
+		Files.write(path, new byte[] { 1, 2, 3 });
+		assertThrows(IOException.class, () -> new JournalReader(path));
+		assertThrows(IOException.class, () -> new JournalWriter(path));
+	}
+}
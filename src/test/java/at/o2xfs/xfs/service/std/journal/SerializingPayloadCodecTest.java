@@ -0,0 +1,81 @@
+package at.o2xfs.xfs.service.std.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.junit.jupiter.api.Test;
+
+import at.o2xfs.xfs.api.XfsMessage;
+
+class SerializingPayloadCodecTest {
+
+	static final class Payload implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String name;
+		private final List<Integer> values;
+
+		Payload(String name, List<Integer> values) {
+			this.name = name;
+			this.values = values;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Payload)) {
+				return false;
+			}
+			Payload other = (Payload) obj;
+			return name.equals(other.name) && values.equals(other.values);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(name, values);
+		}
+	}
+
+	private final SerializingPayloadCodec codec = new SerializingPayloadCodec(
+			Collections.<Class<?>> singletonList(Payload.class));
+
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(object);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Test
+	void decodesAllowedTypes() throws Exception {
+		Payload payload = new Payload("cash unit", new ArrayList<>(Arrays.asList(1, 2, 3)));
+		assertEquals(payload, codec.decode(XfsMessage.SERVICE_EVENT, 1, serialize(payload)));
+		List<String> list = Arrays.asList("a", "b");
+		assertEquals(list, codec.decode(XfsMessage.SERVICE_EVENT, 1, serialize(list)));
+		assertNull(codec.decode(XfsMessage.SERVICE_EVENT, 1, new byte[0]));
+	}
+
+	@Test
+	void rejectsOtherTypes() throws Exception {
+		byte[] uri = serialize(URI.create("http://localhost"));
+		assertThrows(IllegalArgumentException.class, () -> codec.decode(XfsMessage.SERVICE_EVENT, 1, uri));
+		byte[] nested = serialize(new ArrayList<>(Arrays.asList(URI.create("http://localhost"))));
+		assertThrows(IllegalArgumentException.class, () -> codec.decode(XfsMessage.SERVICE_EVENT, 1, nested));
+		byte[] payload = serialize(new Payload("cash unit", new ArrayList<>()));
+		SerializingPayloadCodec jdkOnly = new SerializingPayloadCodec(Collections.<Class<?>> emptyList());
+		assertThrows(IllegalArgumentException.class, () -> jdkOnly.decode(XfsMessage.SERVICE_EVENT, 1, payload));
+	}
+}
@@ -0,0 +1,114 @@
+package at.o2xfs.xfs.service.std.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+	private static void record(LatencyHistogram histogram, long micros) {
+		histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+	}
+
+	@Test
+	void emptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0L, histogram.getCount());
+		assertEquals(0L, histogram.getMeanMicros());
+		assertEquals(0L, histogram.getMaxMicros());
+		assertEquals(0L, histogram.getP50Micros());
+		assertEquals(0L, histogram.getP999Micros());
+	}
+
+	@Test
+	void smallValuesAreExact() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1L; i <= 10L; i++) {
+			record(histogram, i);
+		}
+		assertEquals(10L, histogram.getCount());
+		assertEquals(5L, histogram.getMeanMicros());
+		assertEquals(10L, histogram.getMaxMicros());
+		assertEquals(5L, histogram.getP50Micros());
+		assertEquals(10L, histogram.getP99Micros());
+		assertEquals(1L, histogram.percentile(0.0));
+	}
+
+	/**
+	 * A value shares its bucket with the maximum only if it is the maximum, so the percentile of the lowest rank is
+	 * the upper bound of the value's bucket.
+	 */
+	@Test
+	void percentilesAreWithinOneSixteenth() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1L; value < 1L << 41; value += Math.max(1L, value / 7L)) {
+			histogram.reset();
+			record(histogram, value);
+			record(histogram, 1L << 42);
+			long bound = histogram.percentile(50.0);
+			assertTrue(bound >= value && bound <= value + value / 16L, value + " reported as " + bound);
+		}
+	}
+
+	@Test
+	void percentilesOfUniformValues() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long i = 1L; i <= 100_000L; i++) {
+			record(histogram, i);
+		}
+		double[] percentiles = { 50.0, 99.0, 99.9 };
+		long[] expected = { 50_000L, 99_000L, 99_900L };
+		for (int i = 0; i < percentiles.length; i++) {
+			long actual = histogram.percentile(percentiles[i]);
+			assertTrue(actual >= expected[i] && actual <= expected[i] + expected[i] / 16L,
+					expected[i] + " reported as " + actual);
+		}
+		assertEquals(100_000L, histogram.getMaxMicros());
+		assertEquals(50_000L, histogram.getMeanMicros());
+	}
+
+	@Test
+	void valuesAboveTheRangeAreCapped() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		record(histogram, 1L);
+		record(histogram, 1L << 50);
+		assertEquals(2L, histogram.getCount());
+		assertEquals(1L << 50, histogram.getMaxMicros());
+		assertEquals(1L << 50, histogram.percentile(100.0));
+	}
+
+	@Test
+	void resetClearsEverything() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		record(histogram, 1_000L);
+		histogram.reset();
+		assertEquals(0L, histogram.getCount());
+		assertEquals(0L, histogram.getMaxMicros());
+		assertEquals(0L, histogram.getP50Micros());
+	}
+
+	@Test
+	void concurrentRecordingLosesNothing() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			Thread thread = new Thread(() -> {
+				for (long j = 0L; j < 10_000L; j++) {
+					record(histogram, j % 100L);
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread each : threads) {
+			each.join();
+		}
+		assertEquals(40_000L, histogram.getCount());
+		assertEquals(99L, histogram.getMaxMicros());
+	}
+}
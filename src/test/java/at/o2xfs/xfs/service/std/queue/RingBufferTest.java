@@ -0,0 +1,201 @@
+package at.o2xfs.xfs.service.std.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+class RingBufferTest {
+
+	private static final class Slot {
+
+		private int producer;
+		private long value;
+	}
+
+	private static final int PRODUCERS = 4;
+	private static final int VALUES = 100_000;
+
+	private static RingBuffer<Slot> newRing(int capacity, WaitStrategy waitStrategy) {
+		return new RingBuffer<>(capacity, Slot::new, waitStrategy);
+	}
+
+	private static void publish(RingBuffer<Slot> ring, long sequence, int producer, long value) {
+		Slot slot = ring.get(sequence);
+		slot.producer = producer;
+		slot.value = value;
+		ring.publish(sequence);
+	}
+
+	@Test
+	void rejectsCapacityThatIsNoPowerOfTwo() {
+		assertThrows(IllegalArgumentException.class, () -> newRing(0, new BusySpinWaitStrategy()));
+		assertThrows(IllegalArgumentException.class, () -> newRing(6, new BusySpinWaitStrategy()));
+	}
+
+	@Test
+	void wrapsAroundInOrder() {
+		RingBuffer<Slot> ring = newRing(4, new BusySpinWaitStrategy());
+		long expected = 0L;
+		for (long value = 0L; value < 100L; value++) {
+			publish(ring, ring.tryNext(), 0, value);
+			if (value % 3L == 2L) {
+				while (!ring.isEmpty()) {
+					assertEquals(expected++, ring.poll().value);
+					ring.release();
+				}
+			}
+		}
+		while (!ring.isEmpty()) {
+			assertEquals(expected++, ring.poll().value);
+			ring.release();
+		}
+		assertEquals(100L, expected);
+		assertEquals(0, ring.size());
+	}
+
+	@Test
+	void reusesPreallocatedSlots() {
+		RingBuffer<Slot> ring = newRing(2, new BusySpinWaitStrategy());
+		List<Slot> slots = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			long sequence = ring.tryNext();
+			slots.add(ring.get(sequence));
+			ring.publish(sequence);
+			ring.poll();
+			ring.release();
+		}
+		assertSame(slots.get(0), slots.get(2));
+		assertSame(slots.get(1), slots.get(5));
+	}
+
+	@Test
+	void tryNextFailsWhileFull() {
+		RingBuffer<Slot> ring = newRing(4, new BusySpinWaitStrategy());
+		for (int i = 0; i < 4; i++) {
+			publish(ring, ring.tryNext(), 0, i);
+		}
+		assertEquals(-1L, ring.tryNext());
+		assertEquals(4, ring.size());
+		assertEquals(0L, ring.poll().value);
+		assertEquals(-1L, ring.tryNext(), "slot still held by the consumer");
+		ring.release();
+		assertEquals(4L, ring.tryNext());
+	}
+
+	@Test
+	void unpublishedSlotIsNotVisible() {
+		RingBuffer<Slot> ring = newRing(4, new BusySpinWaitStrategy());
+		long first = ring.tryNext();
+		long second = ring.tryNext();
+		publish(ring, second, 0, 2L);
+		assertNull(ring.poll(), "second slot must wait for the first");
+		assertTrue(ring.isEmpty());
+		publish(ring, first, 0, 1L);
+		assertFalse(ring.isEmpty());
+		assertEquals(1L, ring.poll().value);
+		ring.release();
+		assertEquals(2L, ring.peek().value);
+	}
+
+	@Test
+	void multipleProducersWithBlockingWait() throws Exception {
+		stress(BlockingWaitStrategy::new, false);
+	}
+
+	@Test
+	void multipleProducersWithSleepingWait() throws Exception {
+		stress(SleepingWaitStrategy::new, false);
+	}
+
+	@Test
+	void multipleProducersWithYieldingWait() throws Exception {
+		stress(YieldingWaitStrategy::new, true);
+	}
+
+	@Test
+	void multipleProducersWithBusySpinWait() throws Exception {
+		stress(BusySpinWaitStrategy::new, true);
+	}
+
+	/**
+	 * Every producer publishes an increasing sequence of values through a ring much smaller than the total, so it
+	 * wraps around many times. The consumer must see each producer's values exactly once and in order.
+	 */
+	private static void stress(Supplier<WaitStrategy> waitStrategy, boolean tryNext) throws Exception {
+		RingBuffer<Slot> ring = newRing(64, waitStrategy.get());
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> producers = new ArrayList<>();
+		for (int i = 0; i < PRODUCERS; i++) {
+			int producer = i;
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+					for (long value = 0L; value < VALUES; value++) {
+						long sequence;
+						if (tryNext && value % 2L == 0L) {
+							while ((sequence = ring.tryNext()) < 0L) {
+								Thread.yield();
+							}
+						} else {
+							sequence = ring.next();
+						}
+						publish(ring, sequence, producer, value);
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}, "producer-" + producer);
+			thread.setDaemon(true);
+			thread.start();
+			producers.add(thread);
+		}
+		long[] next = new long[PRODUCERS];
+		start.countDown();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30L);
+		for (int i = 0; i < PRODUCERS * VALUES; i++) {
+			Slot slot;
+			while ((slot = ring.poll()) == null) {
+				if (failure.get() != null) {
+					fail(failure.get());
+				}
+				if (System.nanoTime() - deadline > 0L) {
+					fail("Consumed " + i + " of " + PRODUCERS * VALUES + " values");
+				}
+				if (i % 2 == 0) {
+					Thread.yield();
+				} else {
+					slot = ring.take();
+					break;
+				}
+			}
+			assertEquals(next[slot.producer]++, slot.value, "producer " + slot.producer);
+			ring.release();
+		}
+		for (Thread each : producers) {
+			each.join(TimeUnit.SECONDS.toMillis(5L));
+			assertFalse(each.isAlive());
+		}
+		if (failure.get() != null) {
+			fail(failure.get());
+		}
+		for (long each : next) {
+			assertEquals(VALUES, each);
+		}
+		assertTrue(ring.isEmpty());
+		assertEquals(0, ring.size());
+	}
+}